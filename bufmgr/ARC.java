@@ -0,0 +1,269 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha).  Resident pages are kept on
+ * two LRU lists: T1 for pages seen once recently, and T2 for pages seen at
+ * least twice.  Each has a ghost list of the pids it recently evicted, B1
+ * and B2.  A miss that finds its pid on B1 means T1 was too small, so the
+ * target size p of T1 grows; a miss on B2 shrinks it.  Victims come from T1
+ * while it is over its target and from T2 otherwise, so the policy leans
+ * toward recency or frequency as the workload shifts.<br><br>
+ *
+ * The ghost lists hold only pids, and together hold at most one pid per
+ * frame.  Pinned frames are never chosen; when the preferred list is all
+ * pinned, the other one is used.  All methods are synchronized.
+ */
+public class ARC implements ReplacementPolicy {
+
+  /** The buffer manager whose frames are being replaced. */
+  protected BufMgr buf;
+
+  /** Frames holding pages seen once recently, LRU at the tail. */
+  protected FrameList t1;
+
+  /** Frames holding pages seen at least twice recently, LRU at the tail. */
+  protected FrameList t2;
+
+  /** Empty frames. */
+  protected FrameList empty;
+
+  /** Pids recently evicted from T1. */
+  protected GhostList b1;
+
+  /** Pids recently evicted from T2. */
+  protected GhostList b2;
+
+  /** Number of frames (c in the paper). */
+  protected int c;
+
+  /** Target size of T1. */
+  protected int p;
+
+  /** Set by pickVictim when the incoming pid was on a ghost list; the next
+   * pin of that frame puts it on T2. */
+  protected boolean[] ghosthit;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an ARC policy for the given buffer manager.
+   */
+  public ARC(BufMgr buf) {
+    this.buf = buf;
+    c = buf.frametab.length;
+    t1 = new FrameList(c);
+    t2 = new FrameList(c);
+    empty = new FrameList(c);
+    for (int i = 0; i < c; i++) {
+      empty.addLast(i);
+    }
+    b1 = new GhostList(c);
+    b2 = new GhostList(c);
+    ghosthit = new boolean[c];
+    p = 0;
+  }
+
+  public synchronized void pin(int frameno) {
+    empty.remove(frameno);
+    if (ghosthit[frameno]) {
+      ghosthit[frameno] = false;
+      t2.addFirst(frameno);
+    } else {
+      t1.addFirst(frameno);
+    }
+  }
+
+  public synchronized void access(int frameno) {
+    // a second reference makes a page frequent
+    if (t1.remove(frameno)) {
+      t2.addFirst(frameno);
+    } else if (t2.contains(frameno)) {
+      t2.moveToFirst(frameno);
+    }
+  }
+
+  public void unpin(int frameno) {
+  }
+
+  public synchronized void free(int frameno) {
+    t1.remove(frameno);
+    t2.remove(frameno);
+    ghosthit[frameno] = false;
+    if (!empty.contains(frameno)) {
+      empty.addLast(frameno);
+    }
+  }
+
+  /**
+   * Adds or forgets frames; the ghost lists keep to c pids each, and p to c.
+   */
+  public synchronized void resize(int numframes) {
+    for (int frameno = numframes; frameno < c; frameno++) {
+      t1.remove(frameno);
+      t2.remove(frameno);
+      empty.remove(frameno);
+    }
+    t1.resize(numframes);
+    t2.resize(numframes);
+    empty.resize(numframes);
+    for (int frameno = c; frameno < numframes; frameno++) {
+      empty.addLast(frameno);
+    }
+    ghosthit = Arrays.copyOf(ghosthit, numframes);
+    b1.setCapacity(numframes);
+    b2.setCapacity(numframes);
+    c = numframes;
+    p = Math.min(p, c);
+  }
+
+  /**
+   * Adapts p if the incoming pid is on a ghost list, then picks an empty
+   * frame if there is one, or else runs ARC's REPLACE.  The ghost lists and
+   * p change only once a frame is claimed, so a pick that fails (and the
+   * retries of a waiting pin) leaves them as they were.
+   *
+   * @throws IllegalStateException if all frames are pinned
+   */
+  public synchronized int pickVictim(int pid) {
+
+    // learn from the miss: a ghost hit says which list should have been bigger
+    boolean inB1 = b1.contains(pid);
+    boolean inB2 = !inB1 && b2.contains(pid);
+    int target = p;
+    if (inB1) {
+      int delta = Math.max(1, b2.size() / Math.max(1, b1.size()));
+      target = Math.min(c, p + delta);
+    } else if (inB2) {
+      int delta = Math.max(1, b1.size() / Math.max(1, b2.size()));
+      target = Math.max(0, p - delta);
+    }
+
+    // keep the directory within 2c pages, with |T1| + |B1| <= c
+    boolean keepghost = true;
+    GhostList trim = null;
+    if (!inB1 && !inB2) {
+      int total = t1.size() + t2.size() + b1.size() + b2.size();
+      if (t1.size() + b1.size() >= c) {
+        if (t1.size() < c) {
+          trim = b1;
+        } else {
+          // B1 is empty and T1 fills the pool; its LRU page leaves no trace
+          keepghost = false;
+        }
+      } else if (total >= 2 * c) {
+        trim = b2;
+      }
+    }
+
+    // an empty frame costs nothing
+    int frameno = FrameList.NONE;
+    for (int f = empty.first(); f != FrameList.NONE; f = empty.next(f)) {
+      if (buf.frametab[f].tryClaim()) {
+        empty.remove(f);
+        frameno = f;
+        break;
+      }
+    }
+
+    // REPLACE: evict from T1 if it is over target, else from T2
+    GhostList ghosts = null;
+    if (frameno == FrameList.NONE) {
+      boolean fromT1 = (t1.size() > 0)
+          && ((t1.size() > target) || (inB2 && (t1.size() == target))
+              || !keepghost);
+      frameno = claimLast(fromT1 ? t1 : t2);
+      if (frameno == FrameList.NONE) {
+        fromT1 = !fromT1;
+        frameno = claimLast(fromT1 ? t1 : t2);
+      }
+      if (frameno == FrameList.NONE) {
+        throw new IllegalStateException("All frames are pinned");
+      }
+      if (keepghost) {
+        ghosts = fromT1 ? b1 : b2;
+      }
+    }
+
+    // the victim is ours; now update the directory
+    p = target;
+    if (inB1) {
+      b1.remove(pid);
+    } else if (inB2) {
+      b2.remove(pid);
+    }
+    if (trim != null) {
+      trim.removeLast();
+    }
+    if (ghosts != null) {
+      ghosts.add(buf.frametab[frameno].getPage_number());
+    }
+    ghosthit[frameno] = inB1 || inB2;
+    return frameno;
+
+  } // public synchronized int pickVictim(int pid)
+
+  /**
+   * Lists the tail of the list REPLACE takes from now, then the tail of the
+   * other.
+   */
+  public synchronized int getNextVictims(int[] frames) {
+    boolean fromT1 = (t1.size() > 0) && (t1.size() > p);
+    int n = (fromT1 ? t1 : t2).copyFromTail(frames, 0);
+    return (fromT1 ? t2 : t1).copyFromTail(frames, n);
+  }
+
+  /**
+   * Claims the unpinned frame nearest the tail of the given list, and removes
+   * it from the list.
+   *
+   * @return the claimed frame, or NONE if all are pinned
+   */
+  protected int claimLast(FrameList list) {
+    for (int frameno = list.last(); frameno != FrameList.NONE;
+        frameno = list.prev(frameno)) {
+      if (buf.frametab[frameno].tryClaim()) {
+        list.remove(frameno);
+        return frameno;
+      }
+    }
+    return FrameList.NONE;
+  }
+
+  /**
+   * Gets the current target size of T1.
+   */
+  public synchronized int getTarget() {
+    return p;
+  }
+
+  /**
+   * Gets the number of frames on T1.
+   */
+  public synchronized int getT1Size() {
+    return t1.size();
+  }
+
+  /**
+   * Gets the number of frames on T2.
+   */
+  public synchronized int getT2Size() {
+    return t2.size();
+  }
+
+  /**
+   * Gets the number of pids on B1.
+   */
+  public synchronized int getB1Size() {
+    return b1.size();
+  }
+
+  /**
+   * Gets the number of pids on B2.
+   */
+  public synchronized int getB2Size() {
+    return b2.size();
+  }
+
+} // public class ARC implements ReplacementPolicy
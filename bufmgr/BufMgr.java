@@ -1,11 +1,25 @@
 package bufmgr;
 
+import diskmgr.AsyncIO;
 import global.GlobalConst;
 import global.Minibase;
 import global.Page;
 import global.PageId;
 
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * <h3>Minibase Buffer Manager</h3>
@@ -20,10 +34,152 @@ import java.util.HashMap;
  * <li>Getting relevant data
  * </ol>
  * The buffer manager is used by access methods, heap files, and
- * relational operators.
+ * relational operators.<br><br>
+ *
+ * The buffer manager may be shared by many threads.  The page table is split
+ * into stripes by pid hash, and each stripe is guarded by its own monitor;
+ * each frame is guarded by its FrameDesc.  Pinning a page that is already
+ * resident takes only those two latches, so hits on different stripes never
+ * contend.  Only a miss goes to the replacement policy.<br><br>
+ *
+ * Hits, misses, evictions, writes and waits are counted as they happen, in
+ * LongAdders so that counting never contends either; getStats takes a
+ * snapshot, and registerMBean publishes the counters to JMX.
  */
 public class BufMgr implements GlobalConst {
 
+  /** Stripes per processor, used to size the page table by default. */
+  protected static final int STRIPES_PER_CPU = 4;
+
+  /** Default number of page table stripes. */
+  public static final int DEFAULT_STRIPES =
+      STRIPES_PER_CPU * Runtime.getRuntime().availableProcessors();
+
+  /** Longest run of pages flushAllFrames writes at once. */
+  public static final int MAX_FLUSH_RUN = 256;
+
+  /** Longest run of pages read at once. */
+  public static final int MAX_READ_RUN = 256;
+
+  /** Name of the default replacement policy. */
+  public static final String DEFAULT_REPLACER = "Clock";
+
+  /** JMX domain of the buffer managers' MBeans. */
+  public static final String MBEAN_DOMAIN = "minibase";
+
+  /** Longest a waiting pin sleeps before it looks for a frame again, in
+   * milliseconds, in case a frame came free without a signal. */
+  protected static final long PIN_WAIT_POLL = 10;
+
+  /** Longest resize waits for a removed frame to be unpinned, in
+   * milliseconds, before it gives up. */
+  protected static final long RESIZE_TIMEOUT = 1000;
+
+  /** Optimistic reads readPage tries before it pins the page. */
+  protected static final int OPTIMISTIC_TRIES = 3;
+
+  /** Reads a thread makes through readPage for each one that pins the page,
+   * so that the replacement policy hears about a page read only that way,
+   * and it still looks hot. */
+  protected static final int OPTIMISTIC_ACCESS_INTERVAL = 32;
+
+  // --------------------------------------------------------------------------
+
+  /** Frame descriptors, one per frame in the buffer pool.  resize replaces
+   * the array; a frame number learned from the page table or the policy is
+   * always within the current one. */
+  volatile FrameDesc[] frametab;
+
+  /** The buffer pool itself; frame i holds the page described by frametab[i]. */
+  volatile Page[] bufpool;
+
+  /** Off-heap memory behind the frames, or null if each has a byte array. */
+  PageArena arena;
+
+  /** The byte array behind each on-heap frame, mapped to its frame, so that
+   * PIN_ADOPT never gives one array to two frames; null if off-heap. */
+  IdentityHashMap<byte[], Integer> framedata;
+
+  /** The page table (pid to frame number), striped by pid hash.  Each stripe
+   * is also the latch for the pids that hash to it. */
+  PageTable[] pagemap;
+
+  /** Mask selecting a stripe from a pid; the stripe count is a power of 2. */
+  int stripemask;
+
+  /** The replacement policy. */
+  ReplacementPolicy replacer;
+
+  /** The background page cleaner, or null if there is none. */
+  volatile PageCleaner cleaner;
+
+  /** True if sequential PIN_DISKIO pins trigger read-ahead. */
+  volatile boolean readahead = true;
+
+  /** Tells which pages this pool may hold, or null if it may hold any; set
+   * by PooledBufMgr, so that reading ahead stays within the pool's pages. */
+  volatile IntPredicate owner;
+
+  /** Each thread's sequential access detector. */
+  ThreadLocal<ReadAhead> streams = ThreadLocal.withInitial(ReadAhead::new);
+
+  /** Each thread's count of reads through readPage. */
+  ThreadLocal<int[]> optimisticreads = ThreadLocal.withInitial(() -> new int[1]);
+
+  /** Counters of pins that hit, and that missed. */
+  final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+  /** Counters of evictions, and of those that had to write first. */
+  final LongAdder evictions = new LongAdder(),
+      dirtyevictions = new LongAdder();
+
+  /** Counter of pages written without being evicted. */
+  final LongAdder flushes = new LongAdder();
+
+  /** Counter of pins that had to wait for a frame. */
+  final LongAdder pinwaits = new LongAdder();
+
+  /** Total time pins have waited for a frame, in nanoseconds. */
+  final LongAdder pinwaittime = new LongAdder();
+
+  /** How long a pin waits for a frame when all are pinned, in milliseconds,
+   * or 0 to fail at once. */
+  volatile long pintimeout;
+
+  /** Pins waiting for a frame, first come first served. */
+  final ArrayDeque<PinWaiter> waitq = new ArrayDeque<PinWaiter>();
+
+  /** Number of pins in waitq, so unpins can skip it when it is empty. */
+  volatile int numwaiters;
+
+  /** A pin waiting for a frame; it is signalled when it is first in line
+   * and a frame may have come free. */
+  static class PinWaiter {
+    boolean signalled;
+  }
+
+  /** Name this buffer manager is registered with in JMX, or null. */
+  ObjectName mbean;
+
+  /** The miss ratio curve estimator, or null if there is none. */
+  volatile MissRatioCurve estimator;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a buffer manager with no frames of its own, for subclasses
+   * that hand every call on to other buffer managers (see PooledBufMgr).
+   * The pool is empty rather than missing, so a method the subclass does not
+   * override finds no page resident, and a pin fails as if every frame were
+   * pinned.
+   */
+  protected BufMgr() {
+    frametab = new FrameDesc[0];
+    bufpool = new Page[0];
+    stripemask = 0;
+    pagemap = new PageTable[] { new PageTable(1) };
+    replacer = new Clock(this);
+  }
 
   /**
    * Constructs a buffer manager by initializing member data.  
@@ -31,10 +187,161 @@ public class BufMgr implements GlobalConst {
    * @param numframes number of frames in the buffer pool
    */
   public BufMgr(int numframes) {
+    this(numframes, DEFAULT_REPLACER);
+  } // public BufMgr(int numframes)
 
-    throw new UnsupportedOperationException("Not implemented");
+  /**
+   * Constructs a buffer manager with the given replacement policy.
+   * 
+   * @param numframes number of frames in the buffer pool
+   * @param replacer name of the replacement policy (see newReplacer)
+   */
+  public BufMgr(int numframes, String replacer) {
+    this(numframes, DEFAULT_STRIPES, replacer);
+  } // public BufMgr(int numframes, String replacer)
 
-  } // public BufMgr(int numframes)
+  /**
+   * Constructs a buffer manager with the given number of page table stripes.
+   * 
+   * @param numframes number of frames in the buffer pool
+   * @param numstripes number of page table stripes (rounded up to a power of 2)
+   * @param replacer name of the replacement policy (see newReplacer)
+   * @throws IllegalArgumentException if numframes, numstripes or replacer
+   * is invalid
+   */
+  public BufMgr(int numframes, int numstripes, String replacer) {
+    this(numframes, numstripes, replacer, false);
+  } // public BufMgr(int numframes, int numstripes, String replacer)
+
+  /**
+   * Constructs a buffer manager whose frames may live off the Java heap.
+   * Off-heap frames are views over one arena of direct memory (see
+   * PageArena), so pinned pages must be read and written through the Page
+   * accessors rather than getData.
+   * 
+   * @param numframes number of frames in the buffer pool
+   * @param numstripes number of page table stripes (rounded up to a power of 2)
+   * @param replacer name of the replacement policy (see newReplacer)
+   * @param offheap true to keep the frames' contents off the Java heap
+   * @throws IllegalArgumentException if numframes, numstripes or replacer
+   * is invalid
+   */
+  public BufMgr(int numframes, int numstripes, String replacer,
+      boolean offheap) {
+
+    // validate the arguments
+    if (numframes < 1) {
+      throw new IllegalArgumentException("Invalid number of frames");
+    }
+    if (numstripes < 1) {
+      throw new IllegalArgumentException("Invalid number of stripes");
+    }
+
+    // allocate the frames and their descriptors
+    if (offheap) {
+      arena = new PageArena(numframes);
+    }
+    frametab = new FrameDesc[numframes];
+    bufpool = new Page[numframes];
+    for (int i = 0; i < numframes; i++) {
+      frametab[i] = new FrameDesc();
+      bufpool[i] = offheap ? arena.newPage(i) : new Page();
+    }
+    if (!offheap) {
+      framedata = new IdentityHashMap<byte[], Integer>(numframes);
+      for (int i = 0; i < numframes; i++) {
+        framedata.put(bufpool[i].getData(), i);
+      }
+    }
+
+    // allocate the page table stripes
+    int stripes = Integer.highestOneBit(numstripes);
+    if (stripes < numstripes) {
+      stripes <<= 1;
+    }
+    stripemask = stripes - 1;
+    pagemap = new PageTable[stripes];
+    for (int i = 0; i < stripes; i++) {
+      // leave room for an uneven spread; a stripe grows if it must
+      pagemap[i] = new PageTable(2 * numframes / stripes + 1);
+    }
+
+    this.replacer = newReplacer(replacer);
+
+  } // public BufMgr(int numframes, int numstripes, String replacer,
+    //   boolean offheap)
+
+  /**
+   * Creates the replacement policy with the given name; names are not case
+   * sensitive.<br>
+   * "Clock": the CLOCK (second chance) algorithm.<br>
+   * "LRUK": LRU-K with K=2.<br>
+   * "2Q": scan-resistant 2Q, with the default queue sizes.<br>
+   * "ARC": the Adaptive Replacement Cache.<br>
+   * "TinyLFU": CLOCK behind a W-TinyLFU admission window.<br>
+   * "Midpoint": LRU with midpoint insertion into an old sublist.
+   * 
+   * @throws IllegalArgumentException if the name is unknown
+   */
+  protected ReplacementPolicy newReplacer(String name) {
+    if (name.equalsIgnoreCase("Clock")) {
+      return new Clock(this);
+    }
+    if (name.equalsIgnoreCase("LRUK")) {
+      return new LRUK(this, 2);
+    }
+    if (name.equalsIgnoreCase("2Q")) {
+      return new TwoQ(this);
+    }
+    if (name.equalsIgnoreCase("ARC")) {
+      return new ARC(this);
+    }
+    if (name.equalsIgnoreCase("TinyLFU")) {
+      return new TinyLFU(this);
+    }
+    if (name.equalsIgnoreCase("Midpoint")) {
+      return new MidpointLRU(this);
+    }
+    throw new IllegalArgumentException("Unknown replacement policy: " + name);
+  }
+
+  /**
+   * True if the frames' contents are kept off the Java heap.
+   */
+  public boolean isOffHeap() {
+    return arena != null;
+  }
+
+  /**
+   * Turns sequential read-ahead on or off; it is on by default.
+   */
+  public void setReadAhead(boolean readahead) {
+    this.readahead = readahead;
+  }
+
+  /**
+   * True if sequential PIN_DISKIO pins trigger read-ahead.
+   */
+  public boolean isReadAhead() {
+    return readahead;
+  }
+
+  /**
+   * Gets the replacement policy, i.e. to adjust its settings.
+   */
+  public ReplacementPolicy getReplacer() {
+    return replacer;
+  }
+
+  /**
+   * Gets the page table stripe (and latch) for the given pid.
+   */
+  PageTable stripeOf(int pid) {
+    // spread the bits so that runs of pids land on different stripes; this
+    // must not be the hash the PageTable itself uses
+    int h = pid * 0x85EBCA6B;
+    return pagemap[(h ^ (h >>> 15)) & stripemask];
+  }
 
   /**
    * The result of this call is that disk page number pageno should reside in
@@ -48,8 +355,10 @@ public class BufMgr implements GlobalConst {
    * 	writes the frame's contents to disk if valid and dirty
    * 	if (contents == PIN_DISKIO)
    * 		read disk page pageno into chosen frame
-   * 	else (contents == PIN_MEMCPY)
+   * 	else if (contents == PIN_MEMCPY)
    * 		copy mempage into chosen frame
+   * 	else if (contents == PIN_ADOPT)
+   * 		make mempage's byte array the chosen frame's
    * 	[omitted from the above is maintenance of the frame table and hash map]
    * </pre>		
    * @param pageno identifies the page to pin
@@ -60,44 +369,962 @@ public class BufMgr implements GlobalConst {
    * If PIN_DISKIO, read the page from disk into the frame.<br>  
    * If PIN_MEMCPY, copy mempage into the frame.<br>  
    * If PIN_NOOP, copy nothing into the frame - the frame contents are irrelevant.<br>
-   * Note: In the cases of PIN_MEMCPY and PIN_NOOP, disk I/O is avoided.
-   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned.
-   * @throws IllegalStateException if all pages are pinned (i.e. pool is full)
+   * If PIN_ADOPT, like PIN_MEMCPY, but on a miss the frame takes over mempage's
+   * byte array rather than copying it; the caller must not share that array
+   * with other pages.  Views, arrays already behind a frame, and off-heap
+   * pools are copied instead, as is a page that is already resident.<br>
+   * Note: In the cases of PIN_MEMCPY, PIN_NOOP and PIN_ADOPT, disk I/O is avoided.
+   * When a thread pins consecutive pages with PIN_DISKIO, the pages after
+   * them are read ahead in large reads (see ReadAhead and setReadAhead).
+   * @throws IllegalArgumentException if PIN_MEMCPY or PIN_ADOPT and the page
+   * is pinned.
+   * @throws IllegalStateException if all pages are pinned (i.e. pool is full),
+   * and, if there is a pin timeout, stay so until it passes
    */
   public void pinPage(PageId pageno, Page mempage, int contents) {
 
-	throw new UnsupportedOperationException("Not implemented");
+    int pid = pageno.pid;
+
+    // pin the page itself first, so its read doesn't wait behind a window
+    ReadAhead ra = null;
+    if ((contents == PIN_DISKIO) && readahead) {
+      ra = streams.get();
+    }
+    pinFrame(pageno, mempage, contents, ra);
+
+    // watch for sequential scans, and read the pages after them ahead
+    if (ra != null) {
+      int count = ra.access(pid,
+          Math.min(frametab.length / 4, replacer.getReadAheadLimit()));
+      if (count > 0) {
+        int start = ra.start(pid);
+        loadRun(start, count);
+        ra.read(start, count);
+      }
+    }
 
   } // public void pinPage(PageId pageno, Page page, int contents)
+
+  /**
+   * Pins the page as pinPage does, once any read-ahead is done.
+   * 
+   * @param ra the calling thread's read-ahead detector, to be told when a
+   * page read ahead is used, or null
+   */
+  void pinFrame(PageId pageno, Page mempage, int contents, ReadAhead ra) {
+
+    int pid = pageno.pid;
+    PageTable stripe = stripeOf(pid);
+    MissRatioCurve mrc = estimator;
+    if (mrc != null) {
+      mrc.reference(pid);
+    }
+    boolean waited = false;
+    while (true) {
+
+      // look for the page in the pool; this is the whole hit path
+      FrameDesc evicting = null;
+      int hit = -1;
+      synchronized (stripe) {
+        int frameno = stripe.get(pid);
+        if (frameno != PageTable.NOT_FOUND) {
+          FrameDesc fdesc = frametab[frameno];
+          boolean memcpy = (contents == PIN_MEMCPY) || (contents == PIN_ADOPT);
+          if (memcpy && (fdesc.getPin_count() > 0)) {
+            throw new IllegalArgumentException(
+                "Page is pinned; PIN_MEMCPY not allowed");
+          }
+          if (fdesc.tryPin()) {
+            if (memcpy) {
+              // no one else has it pinned, so no one holds the latch
+              fdesc.latch(true);
+              bufpool[frameno].copyPage(mempage);
+              fdesc.unlatch(true);
+            }
+            mempage.setPage(bufpool[frameno]);
+            hit = frameno;
+          } else {
+            evicting = fdesc;
+          }
+        }
+      }
+      if (hit != -1) {
+        hits.increment();
+        if (frametab[hit].takePrefetched()) {
+          // reading it ahead was the page's first reference
+          if (ra != null) {
+            ra.used++;
+          }
+        } else {
+          replacer.access(hit);
+        }
+        return;
+      }
+
+      // the frame is on its way out; wait for the evicting thread to finish
+      if (evicting != null) {
+        if (!waited) {
+          pinwaits.increment();
+          waited = true;
+        }
+        evicting.awaitUnclaimed(PIN_WAIT_POLL);
+        continue;
+      }
+
+      // claim a victim frame, and fill it while no one else can see it
+      int frameno = claimVictim(pid);
+      evict(frameno);
+      Page frame = bufpool[frameno];
+      if (contents == PIN_DISKIO) {
+        readFrame(pageno, frame);
+      } else if (contents == PIN_MEMCPY) {
+        frame.copyPage(mempage);
+      } else if (contents == PIN_ADOPT) {
+        adopt(frameno, mempage);
+      }
+
+      // publish the frame, unless another thread brought the page in first
+      boolean published = false;
+      synchronized (stripe) {
+        if (!stripe.containsKey(pid)) {
+          frametab[frameno].assign(pid);
+          stripe.put(pid, frameno);
+          mempage.setPage(frame);
+          published = true;
+        }
+      }
+      if (published) {
+        misses.increment();
+        replacer.pin(frameno);
+        return;
+      }
+      replacer.free(frameno);
+      frametab[frameno].release();
+      frameReleased();
+
+    } // while
+
+  } // void pinFrame(PageId pageno, Page mempage, int contents, ReadAhead ra)
+
+  /**
+   * Claims a victim frame from the replacement policy for the given page.
+   * If every frame is pinned, this fails at once, unless a pin timeout is
+   * set (see setPinTimeout); then it waits in line for an unpin.  While any
+   * pin is waiting, new pins wait behind it rather than take the next frame
+   * that comes free.  A frame held for a write is not pinned, so if the only
+   * unpinned frames are held, this waits for a write to finish even without
+   * a timeout.
+   * 
+   * @throws IllegalStateException if all frames are pinned, and stay so
+   * until the timeout
+   */
+  int claimVictim(int pid) {
+    if ((numwaiters == 0) || (pintimeout <= 0)) {
+      try {
+        return replacer.pickVictim(pid);
+      } catch (IllegalStateException exc) {
+        if ((pintimeout <= 0) && !isAnyHeld()) {
+          throw exc;
+        }
+      }
+    }
+    return waitForVictim(pid);
+  }
+
+  /**
+   * True if some unpinned frame is held for a write, and so will be free to
+   * claim once the write is done.
+   */
+  boolean isAnyHeld() {
+    for (FrameDesc fdesc : frametab) {
+      if ((fdesc.getPin_count() == 0) && fdesc.isHeld()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Waits in line until a frame comes free, and claims it.  Without a pin
+   * timeout, this waits only while some frame is held for a write.
+   * 
+   * @throws IllegalStateException if the timeout passes first, or every
+   * frame is pinned and there is no timeout, or the thread is interrupted
+   */
+  int waitForVictim(int pid) {
+
+    long start = System.nanoTime();
+    long timeout = pintimeout;
+    long deadline = start + timeout * 1000000;
+    PinWaiter me = new PinWaiter();
+    synchronized (waitq) {
+      waitq.addLast(me);
+      numwaiters++;
+    }
+    pinwaits.increment();
+    try {
+      while (true) {
+
+        // wait for a signal, or now and then look anyway if first in line
+        synchronized (me) {
+          while (!me.signalled) {
+            long left = deadline - System.nanoTime();
+            if ((timeout > 0) && (left <= 0)) {
+              throw new IllegalStateException(
+                  "All frames are pinned; timed out waiting for one");
+            }
+            try {
+              me.wait((timeout > 0)
+                  ? Math.min(left / 1000000 + 1, PIN_WAIT_POLL)
+                  : PIN_WAIT_POLL);
+            } catch (InterruptedException exc) {
+              Thread.currentThread().interrupt();
+              throw new IllegalStateException(
+                  "Interrupted waiting for a frame");
+            }
+            synchronized (waitq) {
+              if (waitq.peekFirst() == me) {
+                me.signalled = true;
+              }
+            }
+          }
+          me.signalled = false;
+        }
+
+        // someone may have taken the frame first; then wait again
+        try {
+          return replacer.pickVictim(pid);
+        } catch (IllegalStateException exc) {
+          if ((timeout <= 0) && !isAnyHeld()) {
+            throw exc;
+          }
+        }
+
+      } // while
+    } finally {
+      synchronized (waitq) {
+        waitq.remove(me);
+        numwaiters--;
+      }
+      pinwaittime.add(System.nanoTime() - start);
+      // the next in line may find a frame too; if not, it waits again
+      frameReleased();
+    }
+
+  } // int waitForVictim(int pid)
+
+  /**
+   * Lets go of a frame held for a write (see holdDirty), and signals the
+   * first pin in line, which may be waiting for it.
+   */
+  void unhold(FrameDesc fdesc) {
+    fdesc.unhold();
+    frameReleased();
+  }
+
+  /**
+   * Signals the first pin in line, if any, that a frame may have come free.
+   */
+  void frameReleased() {
+    if (numwaiters == 0) {
+      return;
+    }
+    PinWaiter first;
+    synchronized (waitq) {
+      first = waitq.peekFirst();
+    }
+    if (first != null) {
+      synchronized (first) {
+        first.signalled = true;
+        first.notify();
+      }
+    }
+  }
+
+  /**
+   * Sets how long a pin waits for a frame when every frame is pinned, in
+   * milliseconds.  By default (0), pinPage and newPage fail at once with an
+   * IllegalStateException; with a timeout, they wait in line for unpins, and
+   * fail only if the timeout passes first.
+   * 
+   * @throws IllegalArgumentException if millis is negative
+   */
+  public void setPinTimeout(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Invalid pin timeout");
+    }
+    pintimeout = millis;
+  }
+
+  /**
+   * Gets how long a pin waits for a frame, in milliseconds (0 if it fails
+   * at once).
+   */
+  public long getPinTimeout() {
+    return pintimeout;
+  }
+
+  /**
+   * Pins a run of consecutive disk pages, as pinPage with PIN_DISKIO would
+   * one at a time.  The pages of the run that are not in the pool are read
+   * with as few multi-page reads as possible; nothing outside the run is read.
+   * 
+   * @param first identifies the first page of the run
+   * @param n number of pages in the run
+   * @param out output parameters referring to the frames of the pages
+   * @throws IllegalArgumentException if n or out is invalid
+   * @throws IllegalStateException if there are not enough unpinned frames;
+   * then nothing is left pinned
+   */
+  public void pinRun(PageId first, int n, Page[] out) {
+
+    if ((n < 1) || (out.length < n)) {
+      throw new IllegalArgumentException("Invalid run; pinRun aborted");
+    }
+
+    // read what's missing, then pin each page
+    loadRun(first.pid, n);
+    int pinned = 0;
+    try {
+      for (; pinned < n; pinned++) {
+        pinFrame(new PageId(first.pid + pinned), out[pinned], PIN_DISKIO, null);
+      }
+    } finally {
+      if (pinned < n) {
+        for (int i = 0; i < pinned; i++) {
+          unpinPage(new PageId(first.pid + i), UNPIN_CLEAN);
+        }
+      }
+    }
+
+  } // public void pinRun(PageId first, int n, Page[] out)
+
+  /**
+   * Reads the given pages into the pool ahead of their use, without pinning
+   * them.  The pids are sorted, and each run of consecutive missing pages is
+   * read with one multi-page read.  Pages read this way are as cold to the
+   * replacement policy as pages read ahead of a scan, and at most half the
+   * pool (less if the policy has a lower read-ahead limit) is used; the pids
+   * past that are ignored, not counting duplicates and negative pids, which
+   * are dropped.
+   * 
+   * @param pids identify the pages to read, in order of importance
+   * @return the number of pages read
+   */
+  public int prefetch(PageId... pids) {
+
+    // take the first distinct pids that fit, and sort them
+    int limit = Math.min(frametab.length / 2, replacer.getReadAheadLimit());
+    int[] sorted = new int[Math.max(0, Math.min(pids.length, limit))];
+    PageTable seen = new PageTable(sorted.length);
+    int count = 0;
+    for (int i = 0; (i < pids.length) && (count < sorted.length); i++) {
+      int pid = pids[i].pid;
+      if ((pid >= 0) && !seen.containsKey(pid)) {
+        seen.put(pid, i);
+        sorted[count++] = pid;
+      }
+    }
+    Arrays.sort(sorted, 0, count);
+
+    // read each run of consecutive pids
+    int loaded = 0;
+    int i = 0;
+    while (i < count) {
+      int j = i + 1;
+      while ((j < count) && (sorted[j] == sorted[j - 1] + 1)) {
+        j++;
+      }
+      loaded += loadRun(sorted[i], sorted[j - 1] - sorted[i] + 1);
+      i = j;
+    }
+    return loaded;
+
+  } // public int prefetch(PageId... pids)
+
+  /**
+   * Reads the pages of the given run that are not in the pool, leaving them
+   * unpinned.  Each run of missing pages is read with one multi-page read, into
+   * frames from the replacement policy, which treats them as read ahead (see
+   * ReplacementPolicy.prefetch).  The run is cut short rather than wait on a
+   * write: reading stops after the first dirty victim, or when every frame
+   * is pinned.  It also stops at the first page that belongs to another
+   * pool (see owns), so no page is ever in two pools.<br><br>
+   * 
+   * With an asynchronous I/O engine (see DiskMgr.startAsyncIO), the reads
+   * are only submitted, and the caller goes on while they run; see
+   * submitRun.
+   * 
+   * @param firstpid first page of the run
+   * @param n number of pages in the run; pages past the end of the database
+   * are ignored
+   * @return the number of pages read, or submitted
+   */
+  int loadRun(int firstpid, int n) {
+
+    // frames are short; they go to the waiting pins first
+    if (numwaiters > 0) {
+      return 0;
+    }
+    int end = (int) Math.min((long) firstpid + n,
+        Minibase.DiskManager.getNumDBPages());
+    int[] frames = new int[Math.min(n, MAX_READ_RUN)];
+    int loaded = 0;
+    int pid = Math.max(firstpid, 0);
+    while (pid < end) {
+
+      // skip what is already resident, up to another pool's pages
+      if (!owns(pid)) {
+        break;
+      }
+      if (isResident(pid)) {
+        pid++;
+        continue;
+      }
+
+      // claim frames for the missing pages that follow
+      int runlen = 0;
+      boolean stop = false;
+      while (!stop && (pid + runlen < end) && (runlen < frames.length)
+          && ((runlen == 0)
+              || (owns(pid + runlen) && !isResident(pid + runlen)))) {
+        int frameno;
+        try {
+          frameno = replacer.pickVictim(pid + runlen);
+        } catch (IllegalStateException exc) {
+          break;
+        }
+        stop = frametab[frameno].getDirty();
+        evict(frameno);
+        frames[runlen++] = frameno;
+      }
+      if (runlen == 0) {
+        break;
+      }
+      AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+      if (aio != null) {
+        loaded += submitRun(aio, pid, frames, runlen);
+        pid += runlen;
+        if (runlen < frames.length && (pid < end) && !isResident(pid)) {
+          break;
+        }
+        continue;
+      }
+
+      // read them all at once
+      if (runlen == 1) {
+        Minibase.DiskManager.read_page(new PageId(pid), bufpool[frames[0]]);
+      } else {
+        Page[] pages = new Page[runlen];
+        for (int i = 0; i < runlen; i++) {
+          pages[i] = bufpool[frames[i]];
+        }
+        Minibase.DiskManager.read_pages(new PageId(pid), pages);
+      }
+
+      // publish them, unless another thread got there first; the pin keeps
+      // a frame from being claimed before the policy knows about it
+      for (int i = 0; i < runlen; i++) {
+        FrameDesc fdesc = frametab[frames[i]];
+        PageTable stripe = stripeOf(pid + i);
+        boolean published = false;
+        synchronized (stripe) {
+          if (!stripe.containsKey(pid + i)) {
+            fdesc.assign(pid + i);
+            fdesc.setPrefetched();
+            stripe.put(pid + i, frames[i]);
+            published = true;
+          }
+        }
+        if (published) {
+          replacer.prefetch(frames[i]);
+          fdesc.unpin(false);
+          loaded++;
+        } else {
+          replacer.free(frames[i]);
+          fdesc.release();
+        }
+        frameReleased();
+      }
+      pid += runlen;
+      if (runlen < frames.length && (pid < end) && !isResident(pid)) {
+        // out of frames, or stopped at a dirty one
+        break;
+      }
+
+    } // while
+    return loaded;
+
+  } // int loadRun(int firstpid, int n)
+
+  /**
+   * Submits reads of a run of pages into claimed frames, and publishes each
+   * frame when its read completes.  The pages go into the page table at
+   * once, on frames still claimed, so that a pin of one waits for its read
+   * as it would for an eviction, rather than reading it again; the pages
+   * another thread got in first are skipped.
+   * 
+   * @return the number of pages submitted
+   */
+  int submitRun(AsyncIO aio, int firstpid, int[] frames, int runlen) {
+
+    // put the pages in the page table
+    boolean[] published = new boolean[runlen];
+    for (int i = 0; i < runlen; i++) {
+      PageTable stripe = stripeOf(firstpid + i);
+      synchronized (stripe) {
+        if (!stripe.containsKey(firstpid + i)) {
+          stripe.put(firstpid + i, frames[i]);
+          published[i] = true;
+        }
+      }
+      if (!published[i]) {
+        replacer.free(frames[i]);
+        frametab[frames[i]].release();
+        frameReleased();
+      }
+    }
+
+    // submit each stretch of them at once, so that the engine merges it
+    int submitted = 0;
+    int i = 0;
+    while (i < runlen) {
+      if (!published[i]) {
+        i++;
+        continue;
+      }
+      int j = i + 1;
+      while ((j < runlen) && published[j]) {
+        j++;
+      }
+      Page[] pages = new Page[j - i];
+      for (int k = 0; k < pages.length; k++) {
+        pages[k] = bufpool[frames[i + k]];
+      }
+      List<CompletableFuture<Page>> reads = null;
+      try {
+        reads = aio.read(new PageId(firstpid + i), pages);
+      } catch (IllegalStateException exc) {
+        // the engine was stopped meanwhile
+      }
+      for (int k = i; k < j; k++) {
+        final int pid = firstpid + k;
+        final int frameno = frames[k];
+        if (reads == null) {
+          finishLoad(pid, frameno, false);
+        } else {
+          reads.get(k - i).whenComplete(
+              (page, exc) -> finishLoad(pid, frameno, exc == null));
+          submitted++;
+        }
+      }
+      i = j;
+    }
+    return submitted;
+
+  } // int submitRun(AsyncIO aio, int firstpid, int[] frames, int runlen)
+
+  /**
+   * Publishes a frame whose page was read by submitRun, or, if the read
+   * failed, takes the page back out of the page table and frees the frame.
+   */
+  void finishLoad(int pid, int frameno, boolean read) {
+
+    FrameDesc fdesc = frametab[frameno];
+    PageTable stripe = stripeOf(pid);
+    synchronized (stripe) {
+      if (read) {
+        fdesc.assign(pid);
+        fdesc.setPrefetched();
+      } else {
+        stripe.remove(pid);
+      }
+    }
+    if (read) {
+      replacer.prefetch(frameno);
+      fdesc.unpin(false);
+    } else {
+      replacer.free(frameno);
+      fdesc.release();
+    }
+    frameReleased();
+
+  } // void finishLoad(int pid, int frameno, boolean read)
+
+  /**
+   * Reads a page into a claimed frame, through the disk manager's
+   * asynchronous I/O engine if it has one, where the read is ordered and
+   * merged with the others in flight; either way, the caller waits for it.
+   */
+  void readFrame(PageId pageno, Page frame) {
+    AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+    if (aio != null) {
+      aio.read(pageno, frame).join();
+    } else {
+      Minibase.DiskManager.read_page(pageno, frame);
+    }
+  }
+
+  /**
+   * Writes a page from a claimed frame, as readFrame reads one.
+   */
+  void writeFrame(PageId pageno, Page frame) {
+    AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+    if (aio != null) {
+      aio.write(pageno, frame).join();
+    } else {
+      Minibase.DiskManager.write_page(pageno, frame);
+    }
+  }
+
+  /**
+   * True if the given page may be read into this pool (see PooledBufMgr).
+   */
+  boolean owns(int pid) {
+    IntPredicate owner = this.owner;
+    return (owner == null) || owner.test(pid);
+  }
+
+  /**
+   * True if the given page is in the pool.
+   */
+  boolean isResident(int pid) {
+    PageTable stripe = stripeOf(pid);
+    synchronized (stripe) {
+      return stripe.containsKey(pid);
+    }
+  }
+
+  /**
+   * Fills a claimed frame from the given page, by taking over its byte array
+   * if that is safe, or else by copying.
+   */
+  void adopt(int frameno, Page mempage) {
+
+    if ((framedata != null) && !mempage.isView()) {
+      byte[] data = mempage.getData();
+      synchronized (framedata) {
+        if (!framedata.containsKey(data)) {
+          framedata.remove(bufpool[frameno].getData());
+          framedata.put(data, frameno);
+          bufpool[frameno].setData(data);
+          return;
+        }
+      }
+    }
+    bufpool[frameno].copyPage(mempage);
+
+  } // void adopt(int frameno, Page mempage)
+
+  /**
+   * Empties a frame claimed from the replacement policy: writes its contents
+   * to disk if dirty, and removes its page from the page table.  The page stays
+   * visible (and unpinnable) until it has been written.
+   */
+  void evict(int frameno) {
+
+    FrameDesc fdesc = frametab[frameno];
+    int oldpid = fdesc.getPage_number();
+    if (oldpid == INVALID_PAGEID) {
+      return;
+    }
+
+    // write the old contents first, so a reader of oldpid can't see stale data
+    evictions.increment();
+    if (fdesc.getDirty()) {
+      writeFrame(new PageId(oldpid), bufpool[frameno]);
+      fdesc.setDirty(false);
+      dirtyevictions.increment();
+
+      // the cleaner fell behind
+      PageCleaner pc = cleaner;
+      if (pc != null) {
+        pc.wake();
+      }
+    }
+    PageTable stripe = stripeOf(oldpid);
+    synchronized (stripe) {
+      stripe.remove(oldpid);
+    }
+    fdesc.setpage_number(INVALID_PAGEID);
+
+  } // void evict(int frameno)
   
   /**
    * Unpins a disk page from the buffer pool, decreasing its pin count.
    * 
    * @param pageno identifies the page to unpin
    * @param dirty UNPIN_DIRTY if the page was modified, UNPIN_CLEAN otherwise
-   * @throws IllegalArgumentException if the page is not in the buffer pool
-   *  or not pinned
+   * @throws IllegalArgumentException if the page is not in the buffer pool,
+   *  not pinned, or latched by the caller's last pin
    */
   public void unpinPage(PageId pageno, boolean dirty) {
 
-    throw new UnsupportedOperationException("Not implemented");
+    PageTable stripe = stripeOf(pageno.pid);
+    boolean released;
+    synchronized (stripe) {
+      int frameno = stripe.get(pageno.pid);
+      if (frameno == PageTable.NOT_FOUND) {
+        throw new IllegalArgumentException(
+            "Page not in the buffer pool; unpin aborted");
+      }
+      FrameDesc fdesc = frametab[frameno];
+      if ((fdesc.getPin_count() == 1) && fdesc.isLatched()) {
+        // only the caller has it pinned, and so latched
+        throw new IllegalArgumentException(
+            "Page still latched; unpin aborted");
+      }
+      if (!fdesc.unpin(dirty)) {
+        throw new IllegalArgumentException("Page not pinned; unpin aborted");
+      }
+      replacer.unpin(frameno);
+      released = (fdesc.getPin_count() == 0);
+    }
+    if (released) {
+      frameReleased();
+    }
 
   } // public void unpinPage(PageId pageno, boolean dirty)
+
+  /**
+   * Pins a disk page as pinPage does, then latches it in the given mode,
+   * waiting for threads that hold it in a conflicting mode.  A shared latch
+   * lets the caller read the page alongside other readers; an exclusive latch
+   * lets it change the page, and keeps out readers, including those reading
+   * it optimistically (see readPage).  The latch is not reentrant: a thread
+   * must not latch a page it already holds.
+   * 
+   * @param latch LATCH_NONE, LATCH_SHARED or LATCH_EXCLUSIVE
+   * @throws IllegalArgumentException if the latch mode is invalid, or as
+   * pinPage
+   * @throws IllegalStateException as pinPage
+   */
+  public void pinPage(PageId pageno, Page mempage, int contents, int latch) {
+    boolean exclusive = isExclusive(latch);
+    pinPage(pageno, mempage, contents);
+    if (latch != LATCH_NONE) {
+      pinnedFrame(pageno).latch(exclusive);
+    }
+  }
+
+  /**
+   * Lets go of the page's latch, as unlatchPage does, then unpins it.
+   * 
+   * @param latch the mode the page was latched in, or LATCH_NONE
+   * @throws IllegalArgumentException if the page is not latched in that
+   * mode, or as unpinPage
+   */
+  public void unpinPage(PageId pageno, boolean dirty, int latch) {
+    if (latch != LATCH_NONE) {
+      unlatchPage(pageno, latch);
+    }
+    unpinPage(pageno, dirty);
+  }
+
+  /**
+   * Latches a pinned page in the given mode, waiting for threads that hold it
+   * in a conflicting mode.
+   * 
+   * @param latch LATCH_SHARED or LATCH_EXCLUSIVE
+   * @throws IllegalArgumentException if the page is not pinned, or the latch
+   * mode is invalid
+   */
+  public void latchPage(PageId pageno, int latch) {
+    if (latch == LATCH_NONE) {
+      throw new IllegalArgumentException("Invalid latch mode; latch aborted");
+    }
+    pinnedFrame(pageno).latch(isExclusive(latch));
+  }
+
+  /**
+   * Latches a pinned page in the given mode, unless another thread holds it
+   * in a conflicting mode.
+   * 
+   * @param latch LATCH_SHARED or LATCH_EXCLUSIVE
+   * @return false if the page could not be latched without waiting
+   * @throws IllegalArgumentException if the page is not pinned, or the latch
+   * mode is invalid
+   */
+  public boolean tryLatch(PageId pageno, int latch) {
+    if (latch == LATCH_NONE) {
+      throw new IllegalArgumentException("Invalid latch mode; latch aborted");
+    }
+    return pinnedFrame(pageno).tryLatch(isExclusive(latch));
+  }
+
+  /**
+   * Turns the caller's shared latch on a page into an exclusive one, if no
+   * other thread holds it shared.  Upgrades never wait, since two readers
+   * waiting to upgrade would wait for each other; a caller that fails keeps
+   * its shared latch, and may let go of it and latch the page exclusive
+   * (after which it must check again what it read).
+   * 
+   * @return false if other threads hold the page shared
+   * @throws IllegalArgumentException if the page is not pinned, or not
+   * latched shared
+   */
+  public boolean upgradeLatch(PageId pageno) {
+    FrameDesc fdesc = pinnedFrame(pageno);
+    if (!fdesc.isLatched()) {
+      throw new IllegalArgumentException("Page not latched; upgrade aborted");
+    }
+    return fdesc.tryUpgrade();
+  }
+
+  /**
+   * Lets go of a pinned page's latch; the page stays pinned.
+   * 
+   * @param latch the mode the page was latched in
+   * @throws IllegalArgumentException if the page is not pinned or not
+   * latched in that mode
+   */
+  public void unlatchPage(PageId pageno, int latch) {
+    if (latch == LATCH_NONE) {
+      throw new IllegalArgumentException("Invalid latch mode; unlatch aborted");
+    }
+    if (!pinnedFrame(pageno).unlatch(isExclusive(latch))) {
+      throw new IllegalArgumentException("Page not latched; unlatch aborted");
+    }
+  }
+
+  /**
+   * Tells whether a latch mode is exclusive.
+   * 
+   * @throws IllegalArgumentException if the latch mode is invalid
+   */
+  static boolean isExclusive(int latch) {
+    if ((latch != LATCH_NONE) && (latch != LATCH_SHARED)
+        && (latch != LATCH_EXCLUSIVE)) {
+      throw new IllegalArgumentException("Invalid latch mode: " + latch);
+    }
+    return (latch == LATCH_EXCLUSIVE);
+  }
+
+  /**
+   * Runs the given read function on the page's frame without pinning it, and
+   * returns what it returns.  If the page is in the pool, the frame's latch
+   * is stamped before the function runs and validated after, and the result
+   * is kept only if no eviction or writer latched the frame exclusive in
+   * between; otherwise the read is tried again.  After a few tries, or if the
+   * page is not in the pool, the page is pinned and latched shared.  An
+   * optimistic read touches no shared state, so many threads can read a hot
+   * page (e.g. the first page of the database) without contending.  Since
+   * the policy can't safely be told about a frame no one pins, every
+   * OPTIMISTIC_ACCESS_INTERVAL-th read of each thread pins the page instead,
+   * as a hit that the policy sees.<br><br>
+   * 
+   * The function may see a page that is changing under it, so it must not
+   * trust what it reads to be consistent (an exception it throws then is
+   * taken as a failed try), must not write the page, and must not keep it.
+   * A thread must not read a page it holds latched exclusive.
+   * 
+   * @param pageno identifies the page to read
+   * @param reader reads the page and returns what it found
+   * @throws IllegalStateException if the page must be pinned and all pages
+   * are pinned
+   */
+  public <T> T readPage(PageId pageno, Function<Page, T> reader) {
+
+    // read it where it is, if nothing changes it meanwhile
+    int pid = pageno.pid;
+    PageTable stripe = stripeOf(pid);
+    int tries = 0;
+    if (++optimisticreads.get()[0] % OPTIMISTIC_ACCESS_INTERVAL == 0) {
+      tries = OPTIMISTIC_TRIES;
+    }
+    for (; tries < OPTIMISTIC_TRIES; tries++) {
+      int frameno = stripe.peek(pid);
+      FrameDesc[] frametab = this.frametab;
+      Page[] bufpool = this.bufpool;
+      if ((frameno < 0) || (frameno >= frametab.length)
+          || (frameno >= bufpool.length)) {
+        break;
+      }
+      FrameDesc fdesc = frametab[frameno];
+      long stamp = fdesc.tryOptimisticRead();
+      if ((stamp == 0) || (fdesc.getPage_number() != pid)) {
+        continue;
+      }
+      T result;
+      try {
+        result = reader.apply(bufpool[frameno]);
+      } catch (RuntimeException exc) {
+        if (fdesc.validate(stamp)) {
+          throw exc;
+        }
+        continue;
+      }
+      if (fdesc.validate(stamp)) {
+        hits.increment();
+        MissRatioCurve mrc = estimator;
+        if (mrc != null) {
+          mrc.reference(pid);
+        }
+        return result;
+      }
+    }
+
+    // pin it, and read it alongside other readers
+    Page page = new Page();
+    pinPage(pageno, page, PIN_DISKIO, LATCH_SHARED);
+    try {
+      return reader.apply(page);
+    } finally {
+      unpinPage(pageno, UNPIN_CLEAN, LATCH_SHARED);
+    }
+
+  } // public <T> T readPage(PageId pageno, Function<Page, T> reader)
+
+  /**
+   * Gets the descriptor of a pinned page's frame.
+   * 
+   * @throws IllegalArgumentException if the page is not pinned
+   */
+  FrameDesc pinnedFrame(PageId pageno) {
+    PageTable stripe = stripeOf(pageno.pid);
+    synchronized (stripe) {
+      int frameno = stripe.get(pageno.pid);
+      if (frameno == PageTable.NOT_FOUND) {
+        throw new IllegalArgumentException("Page not in the buffer pool");
+      }
+      FrameDesc fdesc = frametab[frameno];
+      if (fdesc.getPin_count() <= 0) {
+        throw new IllegalArgumentException("Page not pinned");
+      }
+      return fdesc;
+    }
+  }
   
   /**
    * Allocates a run of new disk pages and pins the first one in the buffer pool.
-   * The pin will be made using PIN_MEMCPY.  Watch out for disk page leaks.
+   * The pin will be made using PIN_ADOPT, so firstpg's memory usually becomes
+   * the frame's without a copy.  Watch out for disk page leaks.
    * 
    * @param firstpg input and output: holds the contents of the first allocated page
    * and refers to the frame where it resides
    * @param run_size input: number of pages to allocate
    * @return page id of the first allocated page
    * @throws IllegalArgumentException if firstpg is already pinned
-   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded),
+   * and, if there is a pin timeout, stay so until it passes
    */
   public PageId newPage(Page firstpg, int run_size) {
 
-    throw new UnsupportedOperationException("Not implemented");
+    // fail before allocating, so a full pool doesn't leak disk pages; a
+    // pin that may wait for a frame deallocates the run if it times out
+    if ((pintimeout <= 0) && (getNumUnpinned() == 0)) {
+      throw new IllegalStateException("All frames are pinned; newPage aborted");
+    }
+
+    // allocate the run and pin its first page
+    PageId firstpid = Minibase.DiskManager.allocate_page(run_size);
+    try {
+      pinPage(firstpid, firstpg, PIN_ADOPT);
+    } catch (RuntimeException exc) {
+      Minibase.DiskManager.deallocate_page(firstpid, run_size);
+      throw exc;
+    }
+    return firstpid;
 
   } // public PageId newPage(Page firstpg, int run_size)
 
@@ -109,45 +1336,623 @@ public class BufMgr implements GlobalConst {
    */
   public void freePage(PageId pageno) {
 
-    throw new UnsupportedOperationException("Not implemented");
+    // remove the page from the pool, if it is there
+    PageTable stripe = stripeOf(pageno.pid);
+    while (true) {
+      FrameDesc fdesc;
+      synchronized (stripe) {
+        int frameno = stripe.get(pageno.pid);
+        if (frameno == PageTable.NOT_FOUND) {
+          break;
+        }
+        fdesc = frametab[frameno];
+        if (fdesc.getPin_count() > 0) {
+          throw new IllegalArgumentException("Page is pinned; free aborted");
+        }
+        if (fdesc.tryClaim()) {
+          stripe.remove(pageno.pid);
+          replacer.free(frameno);
+          fdesc.release();
+          frameReleased();
+          break;
+        }
+      }
+      // claimed by an evicting thread, or held for a write; let it finish
+      fdesc.awaitClaimable(PIN_WAIT_POLL);
+    }
+
+    Minibase.DiskManager.deallocate_page(pageno);
 
   } // public void freePage(PageId firstid)
 
+  /**
+   * Tells the buffer manager that the given page may now belong in another
+   * pool (see PooledBufMgr), so a copy cached anywhere else must go.  A
+   * single pool has nowhere else to keep it, so this does nothing.
+   *
+   * @throws IllegalStateException if a copy elsewhere stayed pinned
+   */
+  public void reroute(PageId pageno) {
+  }
+
+  /**
+   * Removes the given page from the pool, if it is there, without freeing it
+   * on disk; a dirty page is written first.  A pinned page is waited out for
+   * up to RESIZE_TIMEOUT.
+   *
+   * @throws IllegalStateException if the page stayed pinned
+   */
+  void dropPage(int pid) {
+
+    PageTable stripe = stripeOf(pid);
+    long deadline = System.nanoTime() + RESIZE_TIMEOUT * 1000000;
+    boolean interrupted = false;
+    try {
+      while (true) {
+        int frameno;
+        synchronized (stripe) {
+          frameno = stripe.get(pid);
+          if (frameno == PageTable.NOT_FOUND) {
+            return;
+          }
+          if (!frametab[frameno].tryClaim()) {
+            frameno = -1;
+          }
+        }
+        if (frameno != -1) {
+          evict(frameno);
+          replacer.free(frameno);
+          frametab[frameno].release();
+          frameReleased();
+          return;
+        }
+        if (System.nanoTime() - deadline > 0) {
+          throw new IllegalStateException(
+              "Page " + pid + " stayed pinned; drop aborted");
+        }
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  } // void dropPage(int pid)
+
   /**
    * Write all valid and dirty frames to disk.
    * Note flushing involves only writing, not unpinning or freeing
-   * or the like.
+   * or the like.<br><br>
    * 
+   * The dirty frames are written in pid order, and each run of consecutive
+   * pids (up to MAX_FLUSH_RUN pages) goes to disk in one gather write, so a
+   * checkpoint is mostly sequential I/O.  With an asynchronous I/O engine,
+   * the runs are all submitted before any is waited for.  Last, the disk
+   * manager forces the file out to the device.
    */
   public void flushAllFrames() {
 
-    throw new UnsupportedOperationException("Not implemented");
+    // list the dirty frames, each packed as its pid then its frame number
+    long[] dirty = new long[frametab.length];
+    int count = 0;
+    for (int i = 0; i < frametab.length; i++) {
+      int pid = frametab[i].getPage_number();
+      if ((pid != INVALID_PAGEID) && frametab[i].getDirty()) {
+        dirty[count++] = ((long) pid << 32) | i;
+      }
+    }
+    Arrays.sort(dirty, 0, count);
+
+    // write them out a run at a time
+    int[] pids = new int[MAX_FLUSH_RUN];
+    int[] frames = new int[MAX_FLUSH_RUN];
+    int runlen = 0;
+    List<CompletableFuture<?>> writes = new ArrayList<CompletableFuture<?>>();
+    for (int i = 0; i < count; i++) {
+      int pid = (int) (dirty[i] >>> 32);
+      int frameno = (int) dirty[i];
+      if ((runlen > 0)
+          && ((pid != pids[runlen - 1] + 1) || (runlen == MAX_FLUSH_RUN))) {
+        writeRun(pids, frames, runlen, writes);
+        runlen = 0;
+      }
+      if (holdDirty(pid, frameno)) {
+        pids[runlen] = pid;
+        frames[runlen] = frameno;
+        runlen++;
+      }
+    }
+    if (runlen > 0) {
+      writeRun(pids, frames, runlen, writes);
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+    Minibase.DiskManager.force();
 
   } // public void flushAllFrames()
 
   /**
-   * Write a page in the buffer pool to disk, if dirty.
+   * Holds the given frame for writing if it still holds the given page and
+   * the page is dirty, and clears its dirty bit; a concurrent unpin may set
+   * it again.  The holder must let go with unhold, since a pin that finds
+   * only held frames waits for one (see claimVictim).
+   * 
+   * @return false if the frame need not be written
+   */
+  boolean holdDirty(int pid, int frameno) {
+
+    PageTable stripe = stripeOf(pid);
+    synchronized (stripe) {
+      // the pool may have shrunk since the frame was listed
+      if (stripe.get(pid) != frameno) {
+        return false;
+      }
+      FrameDesc fdesc = frametab[frameno];
+      if (!fdesc.getDirty() || !fdesc.tryHold()) {
+        return false;
+      }
+      fdesc.setDirty(false);
+      return true;
+    }
+
+  } // boolean holdDirty(int pid, int frameno)
+
+  /**
+   * Writes a run of held frames, holding consecutive pages, and lets them go.
+   * With an asynchronous I/O engine, the run is only submitted; the frames
+   * are let go when it completes, and the list gets a future for that.
+   */
+  void writeRun(int[] pids, int[] frames, int runlen,
+      List<CompletableFuture<?>> writes) {
+
+    AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+    if (aio != null) {
+      Page[] pages = new Page[runlen];
+      for (int i = 0; i < runlen; i++) {
+        pages[i] = bufpool[frames[i]];
+      }
+      int[] held = Arrays.copyOf(frames, runlen);
+      List<CompletableFuture<Page>> done;
+      try {
+        done = aio.write(new PageId(pids[0]), pages);
+      } catch (RuntimeException exc) {
+        for (int frameno : held) {
+          frametab[frameno].setDirty(true);
+          unhold(frametab[frameno]);
+        }
+        throw exc;
+      }
+      writes.add(CompletableFuture.allOf(
+          done.toArray(new CompletableFuture<?>[0])).whenComplete((v, exc) -> {
+        if (exc == null) {
+          flushes.add(runlen);
+        }
+        for (int frameno : held) {
+          if (exc != null) {
+            frametab[frameno].setDirty(true);
+          }
+          unhold(frametab[frameno]);
+        }
+      }));
+      return;
+    }
+    try {
+      if (runlen == 1) {
+        Minibase.DiskManager.write_page(new PageId(pids[0]), bufpool[frames[0]]);
+      } else {
+        Page[] pages = new Page[runlen];
+        for (int i = 0; i < runlen; i++) {
+          pages[i] = bufpool[frames[i]];
+        }
+        Minibase.DiskManager.write_pages(new PageId(pids[0]), pages);
+      }
+      flushes.add(runlen);
+    } finally {
+      for (int i = 0; i < runlen; i++) {
+        unhold(frametab[frames[i]]);
+      }
+    }
+
+  } // void writeRun(int[] pids, int[] frames, int runlen, ...)
+
+  /**
+   * Write a page in the buffer pool to disk, if dirty.  The write is done
+   * holding the frame (see holdDirty), not the page's stripe, so pins of
+   * other pages on the stripe don't wait for the disk.  If another thread
+   * is writing the page, this waits for that write.
    * 
    * @throws IllegalArgumentException if the page is not in the buffer pool
    */
   public void flushPage(PageId pageno) {
-	  
-	throw new UnsupportedOperationException("Not implemented");
-    
+
+    int frameno;
+    PageTable stripe = stripeOf(pageno.pid);
+    synchronized (stripe) {
+      frameno = stripe.get(pageno.pid);
+      if (frameno == PageTable.NOT_FOUND) {
+        throw new IllegalArgumentException(
+            "Page not in the buffer pool; flush aborted");
+      }
+    }
+    flushFrame(pageno.pid, frameno);
+
+  }
+
+  /**
+   * Writes the given frame to disk if it is dirty and still holds the given
+   * page.  Holding the frame keeps it from being evicted and refilled in the
+   * middle of the write.
+   */
+  void flushFrame(int pid, int frameno) {
+
+    // wait out another thread's write of the page, then hold it ourselves
+    PageTable stripe = stripeOf(pid);
+    FrameDesc fdesc;
+    while (true) {
+      synchronized (stripe) {
+        if (stripe.get(pid) != frameno) {
+          return;
+        }
+        fdesc = frametab[frameno];
+        if (!fdesc.isHeld()) {
+          if (!holdDirty(pid, frameno)) {
+            return;
+          }
+          break;
+        }
+      }
+      fdesc.awaitUnheld(PIN_WAIT_POLL);
+    }
+    try {
+      Minibase.DiskManager.write_page(new PageId(pid), bufpool[frameno]);
+      flushes.increment();
+    } catch (RuntimeException exc) {
+      fdesc.setDirty(true);
+      throw exc;
+    } finally {
+      unhold(fdesc);
+    }
+
+  }
+
+  /**
+   * Changes the number of frames in the buffer pool, while it is in use.
+   * Growing adds empty frames, and never blocks pins.  Shrinking removes the
+   * frames at the end of the pool: each is taken out of circulation, waited
+   * out if it is pinned, written if it is dirty, and dropped, so its page
+   * simply leaves the pool.  Pages in the remaining frames are not touched.
+   * A removed frame can still be pinned until it is taken, so a frame that
+   * stays pinned for RESIZE_TIMEOUT fails the shrink, and the frames taken
+   * so far go back into circulation, empty.  An off-heap pool keeps the
+   * memory of removed frames for later growth.
+   * 
+   * @param numframes the new number of frames
+   * @throws IllegalArgumentException if numframes is less than 1
+   * @throws IllegalStateException if a frame to be removed stayed pinned;
+   * then the pool keeps its size
+   * @throws UnsupportedOperationException if the replacement policy cannot
+   * be resized; then the pool keeps its size
+   */
+  public synchronized void resize(int numframes) {
+
+    if (numframes < 1) {
+      throw new IllegalArgumentException("Invalid number of frames");
+    }
+    int oldframes = frametab.length;
+    if (numframes > oldframes) {
+
+      // build the new frames, then publish them; the policy hears last, so
+      // nothing hands out a new frame before the arrays hold it
+      FrameDesc[] oldtab = frametab;
+      Page[] oldpool = bufpool;
+      FrameDesc[] newtab = Arrays.copyOf(frametab, numframes);
+      Page[] newpool = Arrays.copyOf(bufpool, numframes);
+      if (arena != null) {
+        arena.grow(numframes);
+      }
+      for (int i = oldframes; i < numframes; i++) {
+        newtab[i] = new FrameDesc();
+        newpool[i] = (arena != null) ? arena.newPage(i) : new Page();
+      }
+      if (framedata != null) {
+        synchronized (framedata) {
+          for (int i = oldframes; i < numframes; i++) {
+            framedata.put(newpool[i].getData(), i);
+          }
+        }
+      }
+      bufpool = newpool;
+      frametab = newtab;
+      try {
+        replacer.resize(numframes);
+      } catch (UnsupportedOperationException exc) {
+        // the policy never handed out the new frames, so no one holds them
+        if (framedata != null) {
+          synchronized (framedata) {
+            for (int i = oldframes; i < numframes; i++) {
+              framedata.remove(newpool[i].getData());
+            }
+          }
+        }
+        frametab = oldtab;
+        bufpool = oldpool;
+        throw exc;
+      }
+      restartEstimator();
+      frameReleased();
+
+    } else if (numframes < oldframes) {
+
+      // take the frames out of circulation and empty them, waiting out pins
+      long deadline = System.nanoTime() + RESIZE_TIMEOUT * 1000000;
+      boolean interrupted = false;
+      try {
+        for (int i = numframes; i < oldframes; i++) {
+          FrameDesc fdesc = frametab[i];
+          while (!fdesc.tryRetire()) {
+            if (System.nanoTime() - deadline > 0) {
+              fdesc.unretire();
+              restoreFrames(numframes, i);
+              throw new IllegalStateException(
+                  "Frame " + i + " stayed pinned; resize aborted");
+            }
+            try {
+              Thread.sleep(1);
+            } catch (InterruptedException exc) {
+              interrupted = true;
+            }
+          }
+          evict(i);
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      // forget them
+      try {
+        replacer.resize(numframes);
+      } catch (UnsupportedOperationException exc) {
+        restoreFrames(numframes, oldframes);
+        throw exc;
+      }
+      if (framedata != null) {
+        synchronized (framedata) {
+          for (int i = numframes; i < oldframes; i++) {
+            framedata.remove(bufpool[i].getData());
+          }
+        }
+      }
+      frametab = Arrays.copyOf(frametab, numframes);
+      bufpool = Arrays.copyOf(bufpool, numframes);
+      restartEstimator();
+
+    }
+
+  } // public synchronized void resize(int numframes)
+
+  /**
+   * Puts frames taken out of circulation by a failed shrink back in, empty.
+   */
+  void restoreFrames(int first, int end) {
+    for (int i = first; i < end; i++) {
+      FrameDesc fdesc = frametab[i];
+      fdesc.unretire();
+      replacer.free(i);
+      fdesc.release();
+    }
+    frameReleased();
+  }
+
+  /**
+   * Starts a background page cleaner with the default watermarks.
+   */
+  public void startCleaner() {
+    startCleaner(PageCleaner.DEFAULT_LOW_WATERMARK,
+        PageCleaner.DEFAULT_HIGH_WATERMARK);
+  }
+
+  /**
+   * Starts a background page cleaner, which keeps the frames the replacement
+   * policy will pick next clean, and writes dirty frames whenever more than
+   * the high watermark are dirty until no more than the low one are.
+   * 
+   * @param low fraction of the frames that may stay dirty after a sweep
+   * @param high fraction of the frames that may be dirty before a sweep
+   * @throws IllegalArgumentException unless 0 <= low <= high <= 1
+   * @throws IllegalStateException if a cleaner is already running
+   */
+  public synchronized void startCleaner(double low, double high) {
+    if (cleaner != null) {
+      throw new IllegalStateException("Page cleaner already running");
+    }
+    PageCleaner pc = new PageCleaner(this, low, high);
+    pc.start();
+    cleaner = pc;
+  }
+
+  /**
+   * Stops the background page cleaner, if there is one, and waits for it
+   * to finish its current write.
+   */
+  public synchronized void stopCleaner() {
+    if (cleaner != null) {
+      cleaner.shutdown();
+      cleaner = null;
+    }
+  }
+
+  /**
+   * Gets the background page cleaner, or null if there is none.
+   */
+  public PageCleaner getCleaner() {
+    return cleaner;
+  }
+
+  /**
+   * Starts estimating the hit ratio at other pool sizes, with the default
+   * sample size and rate.
+   */
+  public MissRatioCurve startEstimator() {
+    return startEstimator(MissRatioCurve.DEFAULT_SAMPLES,
+        MissRatioCurve.DEFAULT_MAX_RATE);
+  }
+
+  /**
+   * Starts estimating the hit ratio the pool would have at other sizes, from
+   * the pins from now on (see MissRatioCurve); an estimator already running
+   * is replaced.
+   * 
+   * @param maxsamples the maximum number of pages sampled at once
+   * @param maxrate the highest sampling rate, between 0 and 1
+   * @return the estimator
+   * @throws IllegalArgumentException if maxsamples or maxrate is invalid
+   */
+  public synchronized MissRatioCurve startEstimator(int maxsamples,
+      double maxrate) {
+    estimator = new MissRatioCurve("bufmgr", frametab.length, maxsamples,
+        maxrate);
+    return estimator;
+  }
+
+  /**
+   * Replaces the estimator, if there is one, with one for the current size.
+   */
+  void restartEstimator() {
+    MissRatioCurve mrc = estimator;
+    if (mrc != null) {
+      MissRatioCurve fresh = new MissRatioCurve(mrc.name, frametab.length,
+          mrc.maxsamples, mrc.maxrate);
+      fresh.setLogInterval(mrc.loginterval);
+      estimator = fresh;
+    }
+  }
+
+  /**
+   * Stops estimating the hit ratio at other pool sizes.
+   */
+  public synchronized void stopEstimator() {
+    estimator = null;
+  }
+
+  /**
+   * Gets the miss ratio curve estimator, or null if there is none.
+   */
+  public MissRatioCurve getEstimator() {
+    return estimator;
   }
 
-   /**
+  /**
+   * Takes a snapshot of the counters (see BufStats).
+   */
+  public BufStats getStats() {
+    int pinned = 0;
+    int dirty = 0;
+    FrameDesc[] frametab = this.frametab;
+    for (FrameDesc fdesc : frametab) {
+      if (fdesc.getPin_count() > 0) {
+        pinned++;
+      }
+      if (fdesc.getDirty()) {
+        dirty++;
+      }
+    }
+    return new BufStats(hits.sum(), misses.sum(), evictions.sum(),
+        dirtyevictions.sum(), flushes.sum(), pinwaits.sum(),
+        pinwaittime.sum() / 1000000, frametab.length, pinned, dirty);
+  }
+
+  /**
+   * Sets the event counters back to zero.  Events counted during the reset
+   * may or may not be kept.
+   */
+  public void resetStats() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+    dirtyevictions.reset();
+    flushes.reset();
+    pinwaits.reset();
+    pinwaittime.reset();
+  }
+
+  /**
+   * Publishes the counters to the platform MBean server, as a BufMgrMXBean
+   * named "minibase:type=BufMgr,name=" and the given name (quoted).  Whatever
+   * was registered under that name before is replaced, and so is this buffer
+   * manager's earlier registration, if any.
+   * 
+   * @return the name registered
+   * @throws IllegalStateException if the MBean server refuses the bean
+   */
+  public synchronized ObjectName registerMBean(String name) {
+    try {
+      unregisterMBean();
+      ObjectName oname = new ObjectName(MBEAN_DOMAIN + ":type=BufMgr,name="
+          + ObjectName.quote(name));
+      register(oname, this);
+      mbean = oname;
+      return oname;
+    } catch (JMException exc) {
+      throw new IllegalStateException("Cannot register buffer manager MBean",
+          exc);
+    }
+  }
+
+  /**
+   * Registers the MBean of the given buffer manager under the given name,
+   * replacing whatever was there.
+   */
+  static void register(ObjectName oname, BufMgr buf) throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(oname)) {
+      server.unregisterMBean(oname);
+    }
+    server.registerMBean(new BufMgrMonitor(buf), oname);
+  }
+
+  /**
+   * Removes this buffer manager's MBean from the platform MBean server, if
+   * it is registered.
+   */
+  public synchronized void unregisterMBean() {
+    if (mbean == null) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(mbean)) {
+        server.unregisterMBean(mbean);
+      }
+    } catch (JMException exc) {
+      // someone else removed it first
+    }
+    mbean = null;
+  }
+
+  /**
    * Gets the total number of buffer frames.
    */
   public int getNumFrames() {
-    throw new UnsupportedOperationException("Not implemented");
+    return frametab.length;
   }
 
   /**
    * Gets the total number of unpinned buffer frames.
    */
   public int getNumUnpinned() {
-    throw new UnsupportedOperationException("Not implemented");
+    int count = 0;
+    for (FrameDesc fdesc : frametab) {
+      if (fdesc.getPin_count() == 0) {
+        count++;
+      }
+    }
+    return count;
   }
 
 } // public class BufMgr implements GlobalConst
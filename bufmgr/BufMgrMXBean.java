@@ -0,0 +1,46 @@
+package bufmgr;
+
+/**
+ * The management interface of a buffer manager, as published to JMX by
+ * BufMgr.registerMBean.  The attributes are read from a BufStats snapshot,
+ * which reads that come close together share.
+ */
+public interface BufMgrMXBean {
+
+  /** Gets the number of pins that found the page in the pool. */
+  long getHits();
+
+  /** Gets the number of pins that had to fill a frame. */
+  long getMisses();
+
+  /** Gets the fraction of pins that were hits. */
+  double getHitRatio();
+
+  /** Gets the number of pages removed from the pool to make room. */
+  long getEvictions();
+
+  /** Gets the number of evicted pages that had to be written first. */
+  long getDirtyEvictions();
+
+  /** Gets the number of pages written without being evicted. */
+  long getFlushes();
+
+  /** Gets the number of pins that had to wait for a frame. */
+  long getPinWaits();
+
+  /** Gets the total time pins waited for a frame, in milliseconds. */
+  long getPinWaitTime();
+
+  /** Gets the number of frames in the pool. */
+  int getNumFrames();
+
+  /** Gets the number of frames pinned at least once. */
+  int getNumPinned();
+
+  /** Gets the number of frames holding a dirty page. */
+  int getNumDirty();
+
+  /** Sets the event counters back to zero. */
+  void resetStats();
+
+} // public interface BufMgrMXBean
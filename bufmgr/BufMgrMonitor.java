@@ -0,0 +1,96 @@
+package bufmgr;
+
+/**
+ * The MXBean registered for a buffer manager; it holds no counters of its
+ * own, and reads the attributes from the buffer manager's getStats.  A JMX
+ * client reads the attributes one at a time, and getStats scans every
+ * frame, so one snapshot is shared by the reads that come within
+ * SNAPSHOT_AGE of it; they also agree with each other that way.
+ */
+class BufMgrMonitor implements BufMgrMXBean {
+
+  /** Longest a snapshot is shared between attribute reads, in milliseconds. */
+  protected static final long SNAPSHOT_AGE = 100;
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager being watched. */
+  protected BufMgr buf;
+
+  /** The last snapshot taken, or null if it must be taken again. */
+  protected BufStats snapshot;
+
+  /** When the last snapshot was taken, in nanoseconds. */
+  protected long taken;
+
+  /**
+   * Constructs a monitor for the given buffer manager.
+   */
+  BufMgrMonitor(BufMgr buf) {
+    this.buf = buf;
+  }
+
+  /**
+   * Gets the shared snapshot, taking a new one if it is too old.
+   */
+  protected synchronized BufStats stats() {
+    long now = System.nanoTime();
+    if ((snapshot == null) || (now - taken > SNAPSHOT_AGE * 1000000)) {
+      snapshot = buf.getStats();
+      taken = now;
+    }
+    return snapshot;
+  }
+
+  public long getHits() {
+    return stats().getHits();
+  }
+
+  public long getMisses() {
+    return stats().getMisses();
+  }
+
+  public double getHitRatio() {
+    return stats().getHitRatio();
+  }
+
+  public long getEvictions() {
+    return stats().getEvictions();
+  }
+
+  public long getDirtyEvictions() {
+    return stats().getDirtyEvictions();
+  }
+
+  public long getFlushes() {
+    return stats().getFlushes();
+  }
+
+  public long getPinWaits() {
+    return stats().getPinWaits();
+  }
+
+  public long getPinWaitTime() {
+    return stats().getPinWaitTime();
+  }
+
+  public int getNumFrames() {
+    return stats().getNumFrames();
+  }
+
+  public int getNumPinned() {
+    return stats().getNumPinned();
+  }
+
+  public int getNumDirty() {
+    return stats().getNumDirty();
+  }
+
+  public void resetStats() {
+    buf.resetStats();
+    synchronized (this) {
+      snapshot = null;
+    }
+  }
+
+} // class BufMgrMonitor implements BufMgrMXBean
@@ -0,0 +1,169 @@
+package bufmgr;
+
+/**
+ * A snapshot of a buffer manager's counters (see BufMgr.getStats).  The
+ * event counts run from the buffer manager's creation or its last
+ * resetStats; the frame counts are as of the snapshot.  A pin of a page that
+ * is in the pool is a hit, and one that must fill a frame is a miss; a page
+ * read ahead and then pinned counts as a hit.  Writes are split into dirty
+ * evictions, which a miss waits for, and flushes, which it doesn't
+ * (flushPage, flushAllFrames and the page cleaner).  Pin waits count the
+ * pins that found their page being evicted or, with a pin timeout, every
+ * frame pinned; only the latter add to the wait time.<br><br>
+ *
+ * The counters are read one at a time while the pool is in use, so a
+ * snapshot is not exact across counters, but each one is.
+ */
+public class BufStats {
+
+  /** Pins that found the page in the pool. */
+  protected final long hits;
+
+  /** Pins that had to fill a frame. */
+  protected final long misses;
+
+  /** Pages removed from the pool to make room. */
+  protected final long evictions;
+
+  /** Evicted pages that had to be written first. */
+  protected final long dirtyevictions;
+
+  /** Pages written without being evicted. */
+  protected final long flushes;
+
+  /** Pins that had to wait for a frame. */
+  protected final long pinwaits;
+
+  /** Total time pins waited for a frame, in milliseconds. */
+  protected final long pinwaittime;
+
+  /** Frames in the pool. */
+  protected final int numframes;
+
+  /** Frames pinned at least once. */
+  protected final int pinned;
+
+  /** Frames holding a dirty page. */
+  protected final int dirty;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a snapshot from the given counts.
+   */
+  BufStats(long hits, long misses, long evictions, long dirtyevictions,
+      long flushes, long pinwaits, long pinwaittime, int numframes, int pinned,
+      int dirty) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.dirtyevictions = dirtyevictions;
+    this.flushes = flushes;
+    this.pinwaits = pinwaits;
+    this.pinwaittime = pinwaittime;
+    this.numframes = numframes;
+    this.pinned = pinned;
+    this.dirty = dirty;
+  }
+
+  /**
+   * Adds the counts of two snapshots, i.e. of two pools.
+   */
+  BufStats plus(BufStats other) {
+    return new BufStats(hits + other.hits, misses + other.misses,
+        evictions + other.evictions, dirtyevictions + other.dirtyevictions,
+        flushes + other.flushes, pinwaits + other.pinwaits,
+        pinwaittime + other.pinwaittime, numframes + other.numframes,
+        pinned + other.pinned, dirty + other.dirty);
+  }
+
+  /**
+   * Gets the number of pins that found the page in the pool.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of pins that had to fill a frame.
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the fraction of pins that were hits, or 0 if there were none.
+   */
+  public double getHitRatio() {
+    long pins = hits + misses;
+    return (pins == 0) ? 0 : (double) hits / pins;
+  }
+
+  /**
+   * Gets the number of pages removed from the pool to make room.
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Gets the number of evicted pages that had to be written first.
+   */
+  public long getDirtyEvictions() {
+    return dirtyevictions;
+  }
+
+  /**
+   * Gets the number of pages written without being evicted.
+   */
+  public long getFlushes() {
+    return flushes;
+  }
+
+  /**
+   * Gets the number of pins that had to wait for a frame.
+   */
+  public long getPinWaits() {
+    return pinwaits;
+  }
+
+  /**
+   * Gets the total time pins waited for a frame, in milliseconds.
+   */
+  public long getPinWaitTime() {
+    return pinwaittime;
+  }
+
+  /**
+   * Gets the number of frames in the pool.
+   */
+  public int getNumFrames() {
+    return numframes;
+  }
+
+  /**
+   * Gets the number of frames pinned at least once.
+   */
+  public int getNumPinned() {
+    return pinned;
+  }
+
+  /**
+   * Gets the number of frames holding a dirty page.
+   */
+  public int getNumDirty() {
+    return dirty;
+  }
+
+  /**
+   * Returns a one-line summary of the counters.
+   */
+  public String toString() {
+    return String.format("hits=%d misses=%d hitratio=%.4f evictions=%d"
+        + " dirtyevictions=%d flushes=%d pinwaits=%d pinwaittime=%dms"
+        + " frames=%d pinned=%d dirty=%d", hits, misses, getHitRatio(),
+        evictions, dirtyevictions, flushes, pinwaits, pinwaittime, numframes,
+        pinned, dirty);
+  }
+
+} // public class BufStats
@@ -1,29 +1,96 @@
 package bufmgr;
 
-public class Clock {
+public class Clock implements ReplacementPolicy {
 	 BufMgr buf;
+
+	    /** The clock hand: the next frame to look at. */
+	    int hand;
+
 	    public Clock(BufMgr buf) {
 	        this.buf = buf;
+	        this.hand = 0;
+	    }
+
+	    public void pin(int frameno) {
+	        buf.frametab[frameno].setReference_bit(true);
 	    }
-	    
-	    public int pickVictim() {
-	        
-	        for (int i = 0; i <= 1; i++) {
-	            for (FrameDesc frame : buf.frametab) {
-	                
-	                if (frame.getPage_number() == -1) {
-	                    return buf.pagemap.get(frame.getPage_number());
+
+	    public void prefetch(int frameno) {
+	        // cold: the hand takes it on its next pass unless it is used again
+	        buf.frametab[frameno].setReference_bit(false);
+	    }
+
+	    public void access(int frameno) {
+	        buf.frametab[frameno].setReference_bit(true);
+	    }
+
+	    public void unpin(int frameno) {
+	    }
+
+	    public void free(int frameno) {
+	        buf.frametab[frameno].setReference_bit(false);
+	    }
+
+	    public synchronized void resize(int numframes) {
+	        if (hand >= numframes) {
+	            hand = 0;
+	        }
+	    }
+
+	    public int getHand() {
+	        return hand;
+	    }
+
+	    /**
+	     * True if the hand may pick the given frame; a subclass can confine
+	     * the clock to part of the pool.
+	     */
+	    protected boolean eligible(int frameno) {
+	        return true;
+	    }
+
+	    /**
+	     * Picks an unpinned frame to replace and claims it for the caller.
+	     * The hand keeps its place between calls, so each frame gets a full
+	     * revolution to be referenced again, and a miss costs only the frames
+	     * the hand passes.  Two revolutions are enough: the first clears every
+	     * reference bit it meets.  Pinning a resident page only sets its
+	     * reference bit, so the sweep is the only place that needs this lock.
+	     *
+	     * @return the index of the claimed frame
+	     * @throws IllegalStateException if all frames are pinned
+	     */
+	    public synchronized int pickVictim(int pid) {
+
+	        FrameDesc[] frametab = buf.frametab;
+	        int numframes = frametab.length;
+	        if (hand >= numframes) {
+	            hand = 0;
+	        }
+	        for (int count = 0; count < 2 * numframes; count++) {
+	            int frameno = hand;
+	            hand = (hand + 1 == numframes) ? 0 : hand + 1;
+	            FrameDesc frame = frametab[frameno];
+	            if (!eligible(frameno)) {
+	                continue;
+	            }
+
+	            // an empty frame needs no second chance
+	            if (frame.getPage_number() == -1) {
+	                if (frame.tryClaim()) {
+	                    return frameno;
 	                }
+	                continue;
+	            }
 
-	                if (frame.getPin_count() == 0) {
-	                    if (frame.getReference_bit()) {
-	                        frame.setReference_bit(false); 
-	                    } else {
-	                        return buf.pagemap.get(frame.getPage_number());
-	                    }
+	            if (frame.getPin_count() == 0) {
+	                if (frame.getReference_bit()) {
+	                    frame.setReference_bit(false);
+	                } else if (frame.tryClaim()) {
+	                    return frameno;
 	                }
 	            }
 	        }
-	        throw new IllegalStateException();
+	        throw new IllegalStateException("All frames are pinned");
 	    }
 }
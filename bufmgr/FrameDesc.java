@@ -1,17 +1,35 @@
 package bufmgr;
-import global.GlobalConst;
-import global.Minibase;
-import global.Page;
-import global.PageId;
-import java.util.HashMap;
 
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Describes one frame of the buffer pool.  The descriptor's own monitor is
+ * the frame latch: every change to the pin count goes through it, so a
+ * frame can be pinned by one thread while another is looking for a victim.
+ * A pin count of -1 means the frame has been claimed by a thread that is
+ * evicting it, and cannot be pinned until it is released.  A thread that
+ * finds the frame claimed or held for a write waits on the same monitor,
+ * which is notified whenever the frame is let go.<br><br>
+ *
+ * The latch guards the frame's contents.  A pinned frame may be latched
+ * shared by any number of readers or exclusive by one writer; a claimed
+ * frame is held exclusive by the evicting thread.  A reader that does not
+ * pin the frame can instead read it optimistically, and validate its stamp
+ * afterward: the stamp is valid only if no one latched the frame exclusive
+ * in between.  The latch is not reentrant and has no owner, so a thread must
+ * not latch a frame it already holds.
+ */
 public class FrameDesc {
 
-	
-	private int page_number;
-    private boolean dirty;
-    private int pin_count;
+    private volatile int page_number;
+    private volatile boolean dirty;
+    private volatile int pin_count;
     private boolean reference_bit;
+    private boolean writing;
+    private volatile boolean prefetched;
+    private boolean retiring;
+    private final StampedLock latch = new StampedLock();
+    private volatile long readstamp;
 
     FrameDesc() {
         this.page_number = -1;
@@ -19,50 +37,319 @@ public class FrameDesc {
         this.pin_count = 0;
         this.reference_bit = false;
     }
-   
+
     int getPage_number() {
         return this.page_number;
     }
-    
+
     void setpage_number(int pageno) {
         this.page_number = pageno;
     }
 
-   
+
     void setDirty(boolean toSet) {
         this.dirty = toSet;
     }
-   
+
     boolean getDirty() {
         return dirty;
     }
 
-    
-    void increment_pin_count() {
-        this.pin_count++;
-    }
 
-   
-    void decrement_pin_count() {
-        if (pin_count > 0) {
-            this.pin_count--;
-        }
-    }
-
-    
     int getPin_count() {
         return this.pin_count;
     }
 
-    
+
     void setReference_bit(boolean toSet) {
         this.reference_bit = toSet;
     }
 
-    
+
     boolean getReference_bit() {
         return reference_bit;
     }
-}
-	
 
+    /**
+     * Adds a pin unless the frame is being evicted.
+     *
+     * @return false if the frame is claimed by an evicting thread
+     */
+    synchronized boolean tryPin() {
+        if (pin_count < 0) {
+            return false;
+        }
+        this.pin_count++;
+        return true;
+    }
+
+    /**
+     * Removes a pin, marking the frame dirty first if requested.
+     *
+     * @return false if the frame was not pinned
+     */
+    synchronized boolean unpin(boolean toSet) {
+        if (pin_count <= 0) {
+            return false;
+        }
+        if (toSet) {
+            this.dirty = true;
+        }
+        this.pin_count--;
+        return true;
+    }
+
+    /**
+     * Claims an unpinned frame for eviction; no one else can pin it until
+     * it is assigned a new page or released.
+     *
+     * @return false if the frame is pinned, held, already claimed or being
+     * removed from the pool
+     */
+    synchronized boolean tryClaim() {
+        if ((pin_count != 0) || writing || retiring
+            || (latch.tryWriteLock() == 0)) {
+            return false;
+        }
+        this.pin_count = -1;
+        return true;
+    }
+
+    /**
+     * Marks the frame as being removed from the pool, so that no one else
+     * can claim it, and claims it if it is not pinned.  Once marked, the frame
+     * can still be pinned and unpinned until it is claimed.
+     *
+     * @return false if the frame is pinned, held or claimed; call again
+     */
+    synchronized boolean tryRetire() {
+        this.retiring = true;
+        if ((pin_count != 0) || writing || (latch.tryWriteLock() == 0)) {
+            return false;
+        }
+        this.pin_count = -1;
+        return true;
+    }
+
+    /**
+     * Takes back the mark set by tryRetire, so that the frame can be claimed
+     * again once it is released (if tryRetire claimed it) or unpinned.
+     */
+    synchronized void unretire() {
+        this.retiring = false;
+        notifyAll();
+    }
+
+    /**
+     * Holds the frame's page in place while it is written, without pinning
+     * it; the frame cannot be claimed until unhold is called.
+     *
+     * @return false if the frame is claimed or already held
+     */
+    synchronized boolean tryHold() {
+        if ((pin_count < 0) || writing) {
+            return false;
+        }
+        this.writing = true;
+        return true;
+    }
+
+    /**
+     * True if the frame is held by tryHold.
+     */
+    synchronized boolean isHeld() {
+        return writing;
+    }
+
+    /**
+     * Lets go of a frame held by tryHold.
+     */
+    synchronized void unhold() {
+        this.writing = false;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the frame is not claimed, or for at most the given time;
+     * the caller looks again either way.
+     *
+     * @throws IllegalStateException if the thread is interrupted
+     */
+    synchronized void awaitUnclaimed(long millis) {
+        if (pin_count < 0) {
+            await(millis);
+        }
+    }
+
+    /**
+     * Waits until the frame is not held for a write, or for at most the
+     * given time; the caller looks again either way.
+     *
+     * @throws IllegalStateException if the thread is interrupted
+     */
+    synchronized void awaitUnheld(long millis) {
+        if (writing) {
+            await(millis);
+        }
+    }
+
+    /**
+     * Waits until an unpinned frame could be claimed, i.e. it is not claimed,
+     * held or being removed from the pool, or for at most the given time;
+     * the caller looks again either way.
+     *
+     * @throws IllegalStateException if the thread is interrupted
+     */
+    synchronized void awaitClaimable(long millis) {
+        if ((pin_count < 0) || writing || retiring) {
+            await(millis);
+        }
+    }
+
+    /**
+     * Waits on the frame's monitor, which the caller holds.
+     */
+    private void await(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a frame");
+        }
+    }
+
+    /**
+     * Gives up a claim on a frame that still holds its page, e.g. when a
+     * policy decides not to evict it after all.
+     */
+    synchronized void unclaim() {
+        if (pin_count == -1) {
+            this.pin_count = 0;
+            latch.tryUnlockWrite();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands a claimed frame over to the given page, pinned once.
+     */
+    synchronized void assign(int pageno) {
+        this.page_number = pageno;
+        this.dirty = false;
+        this.pin_count = 1;
+        this.prefetched = false;
+        latch.tryUnlockWrite();
+        notifyAll();
+    }
+
+    /**
+     * Marks the frame's page as read ahead of its first use.
+     */
+    void setPrefetched() {
+        this.prefetched = true;
+    }
+
+    /**
+     * Clears the read-ahead mark, on the first use of the page.
+     *
+     * @return true if the page was read ahead and not used until now
+     */
+    synchronized boolean takePrefetched() {
+        if (!prefetched) {
+            return false;
+        }
+        this.prefetched = false;
+        return true;
+    }
+
+    /**
+     * Returns a claimed frame to the pool as an empty frame.
+     */
+    synchronized void release() {
+        this.page_number = -1;
+        this.dirty = false;
+        this.reference_bit = false;
+        this.pin_count = 0;
+        this.prefetched = false;
+        latch.tryUnlockWrite();
+        notifyAll();
+    }
+
+    /**
+     * Starts an optimistic read of the frame's contents.
+     *
+     * @return a stamp to validate after reading, or 0 if the frame is
+     * latched exclusive
+     */
+    long tryOptimisticRead() {
+        return latch.tryOptimisticRead();
+    }
+
+    /**
+     * Checks that no one latched the frame exclusive since the stamp was
+     * taken, i.e. that what was read since then is consistent.
+     */
+    boolean validate(long stamp) {
+        return latch.validate(stamp);
+    }
+
+    /**
+     * Latches the pinned frame, waiting for writers (or, for an exclusive
+     * latch, readers) to finish.
+     *
+     * @param exclusive true to latch exclusive, false to latch shared
+     */
+    void latch(boolean exclusive) {
+        if (exclusive) {
+            latch.writeLock();
+        } else {
+            this.readstamp = latch.readLock();
+        }
+    }
+
+    /**
+     * Latches the pinned frame if no one holds it in a conflicting mode.
+     *
+     * @return false if the latch is not free
+     */
+    boolean tryLatch(boolean exclusive) {
+        if (exclusive) {
+            return latch.tryWriteLock() != 0;
+        }
+        long stamp = latch.tryReadLock();
+        if (stamp == 0) {
+            return false;
+        }
+        this.readstamp = stamp;
+        return true;
+    }
+
+    /**
+     * Turns the caller's shared latch into an exclusive one, if no one else
+     * holds it shared.  Any stamp taken while any reader held the latch
+     * matches it until the last reader lets go, so the last one stored will
+     * do.
+     *
+     * @return false if other readers hold the latch; the caller still holds
+     * it shared
+     */
+    boolean tryUpgrade() {
+        return latch.tryConvertToWriteLock(readstamp) != 0;
+    }
+
+    /**
+     * Lets go of a latch.
+     *
+     * @return false if the frame was not latched in that mode
+     */
+    boolean unlatch(boolean exclusive) {
+        return exclusive ? latch.tryUnlockWrite() : latch.tryUnlockRead();
+    }
+
+    /**
+     * Tells whether anyone holds the latch.
+     */
+    boolean isLatched() {
+        return latch.isWriteLocked() || latch.isReadLocked();
+    }
+}
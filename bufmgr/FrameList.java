@@ -0,0 +1,176 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * A doubly-linked list of frame numbers, linked through arrays indexed by
+ * frame number, so moving a frame costs no allocation.  The head is the most
+ * recently inserted end.  A frame may be on a given list at most once.
+ * FrameList is not thread-safe; the policies that use it are synchronized.
+ */
+class FrameList {
+
+  /** Link value for "no frame". */
+  static final int NONE = -1;
+
+  /** Next frame toward the tail, by frame number. */
+  private int[] next;
+
+  /** Next frame toward the head, by frame number. */
+  private int[] prev;
+
+  /** True for the frames on this list. */
+  private boolean[] member;
+
+  /** Most and least recently inserted frames. */
+  private int head, tail;
+
+  /** Number of frames on the list. */
+  private int size;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an empty list for a pool of the given size.
+   */
+  FrameList(int numframes) {
+    next = new int[numframes];
+    prev = new int[numframes];
+    member = new boolean[numframes];
+    head = tail = NONE;
+    size = 0;
+  }
+
+  /**
+   * True if the given frame is on the list.
+   */
+  boolean contains(int frameno) {
+    return member[frameno];
+  }
+
+  /**
+   * Gets the number of frames on the list.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Gets the frame at the head of the list, or NONE.
+   */
+  int first() {
+    return head;
+  }
+
+  /**
+   * Gets the frame at the tail of the list, or NONE.
+   */
+  int last() {
+    return tail;
+  }
+
+  /**
+   * Gets the frame after the given one, toward the tail, or NONE.
+   */
+  int next(int frameno) {
+    return next[frameno];
+  }
+
+  /**
+   * Gets the frame before the given one, toward the head, or NONE.
+   */
+  int prev(int frameno) {
+    return prev[frameno];
+  }
+
+  /**
+   * Inserts a frame at the head; it must not already be on the list.
+   */
+  void addFirst(int frameno) {
+    prev[frameno] = NONE;
+    next[frameno] = head;
+    if (head != NONE) {
+      prev[head] = frameno;
+    } else {
+      tail = frameno;
+    }
+    head = frameno;
+    member[frameno] = true;
+    size++;
+  }
+
+  /**
+   * Inserts a frame at the tail; it must not already be on the list.
+   */
+  void addLast(int frameno) {
+    next[frameno] = NONE;
+    prev[frameno] = tail;
+    if (tail != NONE) {
+      next[tail] = frameno;
+    } else {
+      head = frameno;
+    }
+    tail = frameno;
+    member[frameno] = true;
+    size++;
+  }
+
+  /**
+   * Removes a frame from the list, if it is there.
+   *
+   * @return true if the frame was on the list
+   */
+  boolean remove(int frameno) {
+    if (!member[frameno]) {
+      return false;
+    }
+    if (prev[frameno] != NONE) {
+      next[prev[frameno]] = next[frameno];
+    } else {
+      head = next[frameno];
+    }
+    if (next[frameno] != NONE) {
+      prev[next[frameno]] = prev[frameno];
+    } else {
+      tail = prev[frameno];
+    }
+    member[frameno] = false;
+    size--;
+    return true;
+  }
+
+  /**
+   * Moves a frame on the list to the head.
+   */
+  void moveToFirst(int frameno) {
+    if (head != frameno) {
+      remove(frameno);
+      addFirst(frameno);
+    }
+  }
+
+  /**
+   * Copies frames from the tail toward the head into the given array, from
+   * index n on, until the list or the array runs out.
+   *
+   * @return the index after the last frame copied
+   */
+  int copyFromTail(int[] frames, int n) {
+    for (int frameno = tail; (frameno != NONE) && (n < frames.length);
+        frameno = prev[frameno]) {
+      frames[n++] = frameno;
+    }
+    return n;
+  }
+
+  /**
+   * Changes the size of the pool the list can hold; frames beyond the new
+   * size must have been removed first.
+   */
+  void resize(int numframes) {
+    next = Arrays.copyOf(next, numframes);
+    prev = Arrays.copyOf(prev, numframes);
+    member = Arrays.copyOf(member, numframes);
+  }
+
+} // class FrameList
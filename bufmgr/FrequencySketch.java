@@ -0,0 +1,103 @@
+package bufmgr;
+
+/**
+ * A count-min sketch of how often each page id has been seen recently, used
+ * by TinyLFU to decide which of two pages is worth more.  Counters are 4 bits
+ * wide, sixteen to a long, and each pid is counted in four of them; the
+ * estimate is the smallest.  After a number of samples proportional to the
+ * table size, every counter is halved, so old popularity fades.<br><br>
+ *
+ * Updates are not synchronized.  A race can lose an increment, which only
+ * makes an estimate a little low; that is cheaper than a lock on every hit.
+ */
+class FrequencySketch {
+
+  /** Seeds for the four hash functions. */
+  private static final int[] SEEDS = { 0x97CB3127, 0xB4B82E9B, 0xC2B2AE35,
+      0x85EBCA6B };
+
+  /** Mask of the low bit of every 4-bit counter in a long. */
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  /** Mask clearing the high bit of every counter, after a shift right. */
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  /** The counters, sixteen to a long. */
+  private final long[] table;
+
+  /** Number of counters minus 1; the number of counters is a power of 2. */
+  private final int mask;
+
+  /** Number of increments between agings. */
+  private final int samplesize;
+
+  /** Number of increments since the last aging. */
+  private int samples;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a sketch sized for the given number of distinct hot pages.
+   */
+  FrequencySketch(int expected) {
+    int longs = Integer.highestOneBit(Math.max(1, expected) - 1 | 1) << 1;
+    table = new long[longs];
+    mask = longs * 16 - 1;
+    samplesize = 10 * Math.max(1, expected);
+  }
+
+  /**
+   * Gets the counter index for the given pid in the given row.
+   */
+  private int indexOf(int pid, int row) {
+    int h = (pid + SEEDS[row]) * SEEDS[row];
+    h ^= h >>> 16;
+    return h & mask;
+  }
+
+  /**
+   * Estimates how many times the given pid has been seen.
+   */
+  int frequency(int pid) {
+    int freq = 15;
+    for (int row = 0; row < 4; row++) {
+      int index = indexOf(pid, row);
+      int count = (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 15L);
+      freq = Math.min(freq, count);
+    }
+    return freq;
+  }
+
+  /**
+   * Counts one sighting of the given pid, aging the sketch when it is due.
+   */
+  void increment(int pid) {
+    boolean added = false;
+    for (int row = 0; row < 4; row++) {
+      int index = indexOf(pid, row);
+      int shift = (index & 15) << 2;
+      long word = table[index >>> 4];
+      if (((word >>> shift) & 15L) != 15L) {
+        table[index >>> 4] = word + (1L << shift);
+        added = true;
+      }
+    }
+    if (added && (++samples >= samplesize)) {
+      reset();
+    }
+  }
+
+  /**
+   * Halves every counter.
+   */
+  private void reset() {
+    int odd = 0;
+    for (int i = 0; i < table.length; i++) {
+      odd += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    // truncation lost half a count from every odd counter
+    samples = (samples >>> 1) - (odd >>> 2);
+  }
+
+} // class FrequencySketch
@@ -0,0 +1,177 @@
+package bufmgr;
+
+/**
+ * A bounded list of page ids of pages that have left the buffer pool, used
+ * by policies that remember recent history.  Only the pids are kept; slots
+ * are linked through int arrays and found through a PageTable, so adding,
+ * finding and removing a pid cost no allocation.  When the list is full,
+ * adding a pid drops the oldest one.  GhostList is not thread-safe.
+ */
+class GhostList {
+
+  /** Link value for "no slot". */
+  private static final int NONE = -1;
+
+  /** The pid held in each slot. */
+  private int[] pids;
+
+  /** Next slot toward the oldest end, and toward the newest end. */
+  private int[] next, prev;
+
+  /** Slot of each pid on the list. */
+  private PageTable slots;
+
+  /** Newest and oldest slots. */
+  private int head, tail;
+
+  /** Head of the chain of unused slots (linked through next). */
+  private int unused;
+
+  /** Number of pids on the list, and the most it may hold. */
+  private int size, capacity;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an empty list holding at most the given number of pids.
+   */
+  GhostList(int capacity) {
+    pids = new int[Math.max(1, capacity)];
+    next = new int[pids.length];
+    prev = new int[pids.length];
+    slots = new PageTable(pids.length);
+    for (int i = 0; i < pids.length; i++) {
+      next[i] = i + 1;
+    }
+    next[pids.length - 1] = NONE;
+    unused = 0;
+    head = tail = NONE;
+    size = 0;
+    this.capacity = capacity;
+  }
+
+  /**
+   * True if the given pid is on the list.
+   */
+  boolean contains(int pid) {
+    return slots.containsKey(pid);
+  }
+
+  /**
+   * Gets the number of pids on the list.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Gets the most pids the list may hold.
+   */
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds a pid as the newest on the list, dropping the oldest if the list is
+   * full.  A pid already on the list is moved to the newest end.
+   */
+  void add(int pid) {
+    if (capacity == 0) {
+      return;
+    }
+    remove(pid);
+    while (size >= capacity) {
+      removeLast();
+    }
+    int slot = unused;
+    unused = next[slot];
+    pids[slot] = pid;
+    prev[slot] = NONE;
+    next[slot] = head;
+    if (head != NONE) {
+      prev[head] = slot;
+    } else {
+      tail = slot;
+    }
+    head = slot;
+    slots.put(pid, slot);
+    size++;
+  }
+
+  /**
+   * Removes a pid from the list, if it is there.
+   *
+   * @return true if the pid was on the list
+   */
+  boolean remove(int pid) {
+    int slot = slots.remove(pid);
+    if (slot == PageTable.NOT_FOUND) {
+      return false;
+    }
+    unlink(slot);
+    return true;
+  }
+
+  /**
+   * Removes the oldest pid from the list.
+   *
+   * @return the pid removed, or -1 if the list was empty
+   */
+  int removeLast() {
+    if (tail == NONE) {
+      return -1;
+    }
+    int pid = pids[tail];
+    slots.remove(pid);
+    unlink(tail);
+    return pid;
+  }
+
+  /**
+   * Changes the most pids the list may hold, dropping the oldest as needed.
+   */
+  void setCapacity(int capacity) {
+    while (size > capacity) {
+      removeLast();
+    }
+    if (capacity > pids.length) {
+      // rebuild with room for the new capacity, oldest first
+      int[] old = new int[size];
+      for (int i = 0, slot = tail; slot != NONE; slot = prev[slot]) {
+        old[i++] = pids[slot];
+      }
+      GhostList bigger = new GhostList(capacity);
+      for (int pid : old) {
+        bigger.add(pid);
+      }
+      pids = bigger.pids;
+      next = bigger.next;
+      prev = bigger.prev;
+      slots = bigger.slots;
+      head = bigger.head;
+      tail = bigger.tail;
+      unused = bigger.unused;
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Unlinks a slot and returns it to the unused chain.
+   */
+  private void unlink(int slot) {
+    if (prev[slot] != NONE) {
+      next[prev[slot]] = next[slot];
+    } else {
+      head = next[slot];
+    }
+    if (next[slot] != NONE) {
+      prev[next[slot]] = prev[slot];
+    } else {
+      tail = prev[slot];
+    }
+    next[slot] = unused;
+    unused = slot;
+    size--;
+  }
+
+} // class GhostList
@@ -0,0 +1,170 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum).  The policy remembers the
+ * times of the last K references to each frame's page, and evicts the page
+ * whose K-th most recent reference is oldest.  Pages referenced fewer than K
+ * times count as infinitely old, and among those the least recently used
+ * goes first, so a page touched once by a scan leaves before a page that is
+ * used over and over.<br><br>
+ *
+ * Times are logical: a counter bumped on every reference.  All methods are
+ * synchronized, and pickVictim looks at every frame.
+ */
+public class LRUK implements ReplacementPolicy {
+
+  /** The buffer manager whose frames are being replaced. */
+  protected BufMgr buf;
+
+  /** Number of references remembered per frame. */
+  protected int k;
+
+  /** Reference history; hist[f * k + i] is the time of frame f's (i+1)-th
+   * most recent reference, or 0 if it has not been referenced that often. */
+  protected long[] hist;
+
+  /** Logical time of the last reference. */
+  protected long now;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an LRU-K policy for the given buffer manager.
+   *
+   * @throws IllegalArgumentException if k is less than 1
+   */
+  public LRUK(BufMgr buf, int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("Invalid K for LRU-K");
+    }
+    this.buf = buf;
+    this.k = k;
+    this.hist = new long[buf.frametab.length * k];
+    this.now = 0;
+  }
+
+  public synchronized void pin(int frameno) {
+    // a new page starts with a history of its own
+    int base = frameno * k;
+    for (int i = 1; i < k; i++) {
+      hist[base + i] = 0;
+    }
+    hist[base] = ++now;
+  }
+
+  public synchronized void access(int frameno) {
+    int base = frameno * k;
+    for (int i = k - 1; i > 0; i--) {
+      hist[base + i] = hist[base + i - 1];
+    }
+    hist[base] = ++now;
+  }
+
+  public void unpin(int frameno) {
+  }
+
+  public synchronized void free(int frameno) {
+    int base = frameno * k;
+    for (int i = 0; i < k; i++) {
+      hist[base + i] = 0;
+    }
+  }
+
+  public synchronized void resize(int numframes) {
+    hist = Arrays.copyOf(hist, numframes * k);
+  }
+
+  /**
+   * Picks the unpinned frame with the largest backward K-distance, after any
+   * empty frame, and claims it.  A frame that can't be claimed (e.g. it is
+   * held for a write) is passed over for the next best one.
+   *
+   * @throws IllegalStateException if all frames are pinned
+   */
+  public synchronized int pickVictim(int pid) {
+
+    // the history covers exactly the frames the policy knows about
+    FrameDesc[] frametab = buf.frametab;
+    int numframes = hist.length / k;
+    boolean[] skipped = null;
+    while (true) {
+
+      // find the unpinned frame whose K-th reference is oldest
+      int victim = -1;
+      long victimKth = Long.MAX_VALUE;
+      long victimLast = Long.MAX_VALUE;
+      for (int frameno = 0; frameno < numframes; frameno++) {
+        FrameDesc frame = frametab[frameno];
+        if ((frame.getPin_count() != 0)
+            || ((skipped != null) && skipped[frameno])) {
+          continue;
+        }
+        if ((frame.getPage_number() == -1) && frame.tryClaim()) {
+          return frameno;
+        }
+        long kth = hist[frameno * k + k - 1];
+        long last = hist[frameno * k];
+        if ((kth < victimKth) || ((kth == victimKth) && (last < victimLast))) {
+          victim = frameno;
+          victimKth = kth;
+          victimLast = last;
+        }
+      }
+
+      if (victim == -1) {
+        throw new IllegalStateException("All frames are pinned");
+      }
+      if (frametab[victim].tryClaim()) {
+        return victim;
+      }
+
+      // pinned, held or claimed while we were looking; rank the others
+      if (skipped == null) {
+        skipped = new boolean[numframes];
+      }
+      skipped[victim] = true;
+
+    } // while
+
+  } // public synchronized int pickVictim(int pid)
+
+  /**
+   * Lists the unpinned pages with the largest backward K-distances, largest
+   * first, by insertion into the array; it is meant for a few frames.
+   */
+  public synchronized int getNextVictims(int[] frames) {
+    FrameDesc[] frametab = buf.frametab;
+    int numframes = Math.min(hist.length / k, frametab.length);
+    int n = 0;
+    for (int frameno = 0; frameno < numframes; frameno++) {
+      if ((frametab[frameno].getPin_count() != 0)
+          || (frametab[frameno].getPage_number() == -1)) {
+        continue;
+      }
+      int i = n;
+      while ((i > 0) && before(frameno, frames[i - 1])) {
+        if (i < frames.length) {
+          frames[i] = frames[i - 1];
+        }
+        i--;
+      }
+      if (i < frames.length) {
+        frames[i] = frameno;
+        n = Math.min(n + 1, frames.length);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * True if pickVictim would take frame a before frame b.
+   */
+  protected boolean before(int a, int b) {
+    long akth = hist[a * k + k - 1];
+    long bkth = hist[b * k + k - 1];
+    return (akth < bkth) || ((akth == bkth) && (hist[a * k] < hist[b * k]));
+  }
+
+} // public class LRUK implements ReplacementPolicy
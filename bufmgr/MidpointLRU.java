@@ -0,0 +1,284 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * LRU with midpoint insertion, as in InnoDB.  The LRU list is split into a
+ * young sublist at the front and an old sublist behind it.  A page read into
+ * the pool goes to the head of the old sublist (the midpoint), not the head
+ * of the whole list, and is evicted from the old tail if it is not used
+ * again.  A hit on an old page makes it young only if the page has been in
+ * the pool for at least the dwell time; the burst of hits a scan makes on
+ * each page comes sooner than that, so a scan only ever churns the old
+ * sublist, and the young pages survive it.  Young pages are kept in LRU order,
+ * and the young tail moves back to the old head whenever the old sublist falls
+ * below its share of the pool.<br><br>
+ *
+ * Counters of pages made young, hits that did not make a page young, and
+ * pages made old are kept for tuning.  All methods are synchronized.
+ */
+public class MidpointLRU implements ReplacementPolicy {
+
+  /** Default share of the resident pages for the old sublist. */
+  public static final double DEFAULT_OLD_FRACTION = 3.0 / 8;
+
+  /** Default time a page must stay in the pool before a hit makes it young,
+   * in milliseconds; InnoDB's innodb_old_blocks_time defaults to the same. */
+  public static final long DEFAULT_DWELL_TIME = 1000;
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager whose frames are being replaced. */
+  protected BufMgr buf;
+
+  /** Frames holding young pages, least recently used at the tail. */
+  protected FrameList young;
+
+  /** Frames holding old pages, newest at the head (the midpoint). */
+  protected FrameList old;
+
+  /** Empty frames. */
+  protected FrameList empty;
+
+  /** When each frame's page was read in, in nanoseconds. */
+  protected long[] loaded;
+
+  /** Share of the resident pages for the old sublist. */
+  protected double oldfraction;
+
+  /** Dwell time, in nanoseconds. */
+  protected long dwell;
+
+  /** Number of pages made young. */
+  protected long madeyoung;
+
+  /** Number of hits on old pages that came too soon to make them young. */
+  protected long notmadeyoung;
+
+  /** Number of pages moved from the young tail to the old head. */
+  protected long madeold;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a midpoint LRU policy with the default settings.
+   */
+  public MidpointLRU(BufMgr buf) {
+    this(buf, DEFAULT_OLD_FRACTION, DEFAULT_DWELL_TIME);
+  }
+
+  /**
+   * Constructs a midpoint LRU policy with the given settings.
+   *
+   * @param oldfraction share of the resident pages for the old sublist
+   * @param dwelltime milliseconds a page must stay before it can be made young
+   * @throws IllegalArgumentException if oldfraction is not between 0 and 1,
+   * or dwelltime is negative
+   */
+  public MidpointLRU(BufMgr buf, double oldfraction, long dwelltime) {
+    this.buf = buf;
+    int numframes = buf.frametab.length;
+    young = new FrameList(numframes);
+    old = new FrameList(numframes);
+    empty = new FrameList(numframes);
+    for (int i = 0; i < numframes; i++) {
+      empty.addLast(i);
+    }
+    loaded = new long[numframes];
+    setOldFraction(oldfraction);
+    setDwellTime(dwelltime);
+  }
+
+  public synchronized void pin(int frameno) {
+    empty.remove(frameno);
+    old.addFirst(frameno);
+    loaded[frameno] = System.nanoTime();
+  }
+
+  public synchronized void access(int frameno) {
+    if (young.contains(frameno)) {
+      young.moveToFirst(frameno);
+    } else if (old.contains(frameno)) {
+      if (System.nanoTime() - loaded[frameno] >= dwell) {
+        old.remove(frameno);
+        young.addFirst(frameno);
+        madeyoung++;
+        balance();
+      } else {
+        notmadeyoung++;
+      }
+    }
+  }
+
+  public void unpin(int frameno) {
+  }
+
+  public synchronized void free(int frameno) {
+    young.remove(frameno);
+    old.remove(frameno);
+    if (!empty.contains(frameno)) {
+      empty.addLast(frameno);
+    }
+  }
+
+  /**
+   * Picks an empty frame if there is one; otherwise the unpinned page nearest
+   * the old tail, or the young tail if every old page is pinned.
+   *
+   * @throws IllegalStateException if all frames are pinned
+   */
+  public synchronized int pickVictim(int pid) {
+
+    // an empty frame costs nothing
+    for (int frameno = empty.first(); frameno != FrameList.NONE;
+        frameno = empty.next(frameno)) {
+      if (buf.frametab[frameno].tryClaim()) {
+        empty.remove(frameno);
+        return frameno;
+      }
+    }
+
+    // the whole list's tail is the old tail
+    int frameno = claimLast(old);
+    if (frameno == FrameList.NONE) {
+      frameno = claimLast(young);
+    }
+    if (frameno == FrameList.NONE) {
+      throw new IllegalStateException("All frames are pinned");
+    }
+    balance();
+    return frameno;
+
+  } // public synchronized int pickVictim(int pid)
+
+  /**
+   * Moves pages from the young tail to the old head until the old sublist has
+   * its share of the resident pages.
+   */
+  protected void balance() {
+    int target = (int) (oldfraction * (young.size() + old.size()));
+    while ((old.size() < target) && (young.size() > 0)) {
+      int frameno = young.last();
+      young.remove(frameno);
+      old.addFirst(frameno);
+      madeold++;
+    }
+  }
+
+  /**
+   * Lists the old tail, then the young tail.
+   */
+  public synchronized int getNextVictims(int[] frames) {
+    return young.copyFromTail(frames, old.copyFromTail(frames, 0));
+  }
+
+  /**
+   * Claims the unpinned frame nearest the tail of the given list, and removes
+   * it from the list.
+   *
+   * @return the claimed frame, or NONE if all are pinned
+   */
+  protected int claimLast(FrameList list) {
+    for (int frameno = list.last(); frameno != FrameList.NONE;
+        frameno = list.prev(frameno)) {
+      if (buf.frametab[frameno].tryClaim()) {
+        list.remove(frameno);
+        return frameno;
+      }
+    }
+    return FrameList.NONE;
+  }
+
+  public synchronized void resize(int numframes) {
+    int oldframes = loaded.length;
+    for (int frameno = numframes; frameno < oldframes; frameno++) {
+      young.remove(frameno);
+      old.remove(frameno);
+      empty.remove(frameno);
+    }
+    young.resize(numframes);
+    old.resize(numframes);
+    empty.resize(numframes);
+    for (int frameno = oldframes; frameno < numframes; frameno++) {
+      empty.addLast(frameno);
+    }
+    loaded = Arrays.copyOf(loaded, numframes);
+    balance();
+  }
+
+  /**
+   * Gets the share of the resident pages for the old sublist.
+   */
+  public synchronized double getOldFraction() {
+    return oldfraction;
+  }
+
+  /**
+   * Sets the share of the resident pages for the old sublist.
+   *
+   * @throws IllegalArgumentException if oldfraction is not between 0 and 1
+   */
+  public synchronized void setOldFraction(double oldfraction) {
+    if ((oldfraction < 0) || (oldfraction > 1)) {
+      throw new IllegalArgumentException("Invalid old sublist fraction");
+    }
+    this.oldfraction = oldfraction;
+    balance();
+  }
+
+  /**
+   * Gets the dwell time, in milliseconds.
+   */
+  public synchronized long getDwellTime() {
+    return dwell / 1000000;
+  }
+
+  /**
+   * Sets the dwell time, in milliseconds.
+   *
+   * @throws IllegalArgumentException if dwelltime is negative
+   */
+  public synchronized void setDwellTime(long dwelltime) {
+    if (dwelltime < 0) {
+      throw new IllegalArgumentException("Invalid dwell time");
+    }
+    this.dwell = dwelltime * 1000000;
+  }
+
+  /**
+   * Gets the number of pages made young.
+   */
+  public synchronized long getMadeYoung() {
+    return madeyoung;
+  }
+
+  /**
+   * Gets the number of hits on old pages that came too soon to make them
+   * young.
+   */
+  public synchronized long getNotMadeYoung() {
+    return notmadeyoung;
+  }
+
+  /**
+   * Gets the number of pages moved from the young sublist to the old one.
+   */
+  public synchronized long getMadeOld() {
+    return madeold;
+  }
+
+  /**
+   * Gets the number of frames on the young sublist.
+   */
+  public synchronized int getYoungSize() {
+    return young.size();
+  }
+
+  /**
+   * Gets the number of frames on the old sublist.
+   */
+  public synchronized int getOldSize() {
+    return old.size();
+  }
+
+} // public class MidpointLRU implements ReplacementPolicy
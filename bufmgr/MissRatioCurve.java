@@ -0,0 +1,368 @@
+package bufmgr;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * Estimates, online, the hit ratio the buffer pool would have at other
+ * sizes, from the stream of pids that pinPage sees.  This is SHARDS
+ * (Waldspurger et al., FAST '15) with a fixed sample size: a pid is sampled
+ * if a hash of it falls below a threshold, so a sampled page is sampled on
+ * every reference, and for each sampled reference the reuse distance (the
+ * number of distinct sampled pages referenced since the page's last
+ * reference) is found with a Fenwick tree over reference times, and scaled
+ * up by the sampling rate.  An LRU pool of c frames hits exactly the
+ * references whose distance is below c, so a histogram of the distances
+ * gives the whole curve.  When more than the maximum number of pages are
+ * sampled, the one with the highest hash is dropped and the threshold is
+ * lowered to its hash, so memory stays fixed and the rate adapts to the
+ * working set.<br><br>
+ *
+ * The histogram covers pools from a quarter of the size the estimator was
+ * created for up to four times that size (MIN_SCALE to MAX_SCALE); the
+ * buffer manager starts a new one when the pool is resized.  The curve is
+ * LRU's, which CLOCK and the other policies only approximate.  A pin that is
+ * not sampled costs one hash and one compare; sampled ones are recorded
+ * under the estimator's monitor, so the cost follows the rate, which never
+ * exceeds the one given at the start (DEFAULT_MAX_RATE).  A database of
+ * fewer pages than the maximum sample over that rate is sampled thinly, and
+ * needs a higher rate for a smooth curve.  Every log interval, a summary is
+ * logged at INFO level to the "bufmgr" logger.
+ */
+public class MissRatioCurve {
+
+  /** Smallest pool size estimated, as a multiple of the current size. */
+  public static final double MIN_SCALE = 0.25;
+
+  /** Largest pool size estimated, as a multiple of the current size. */
+  public static final double MAX_SCALE = 4;
+
+  /** Default maximum number of pages sampled at once. */
+  public static final int DEFAULT_SAMPLES = 8192;
+
+  /** Default highest sampling rate, i.e. before the sample fills up. */
+  public static final double DEFAULT_MAX_RATE = 1.0 / 128;
+
+  /** Default time between log lines, in milliseconds. */
+  public static final long DEFAULT_LOG_INTERVAL = 60000;
+
+  /** Number of histogram buckets. */
+  protected static final int BUCKETS = 1024;
+
+  /** Range of the sampling hash; the threshold is out of this. */
+  protected static final int HASH_SPACE = 1 << 24;
+
+  /** The logger for the periodic summary. */
+  protected static final Logger LOG = Logger.getLogger("bufmgr");
+
+  // --------------------------------------------------------------------------
+
+  /** Name shown in the log line, e.g. the pool's. */
+  protected String name;
+
+  /** Pool size the curve is scaled to. */
+  protected int numframes;
+
+  /** Width of a histogram bucket, in frames; a whole number, so that small
+   * pools get an exact curve. */
+  protected double width;
+
+  /** Count of the sampled references in each distance bucket, in units. */
+  protected double[] hist;
+
+  /** Count of all sampled references, including first ones, in units. */
+  protected double total;
+
+  /** What a sampled reference adds to the counts.  When the rate drops,
+   * the counts so far should shrink with it; this grows instead. */
+  protected double unit = 1;
+
+  /** Number of references sampled. */
+  protected long sampled;
+
+  /** Maximum number of pages sampled at once. */
+  protected int maxsamples;
+
+  /** The sampling rate started with. */
+  protected double maxrate;
+
+  /** A pid is sampled if its hash is below this. */
+  protected volatile int threshold;
+
+  /** Each sampled pid's last reference time. */
+  protected PageTable lasttime;
+
+  /** The pid referenced at each time, to renumber the times. */
+  protected int[] pidat;
+
+  /** Fenwick tree with a 1 at each sampled pid's last reference time. */
+  protected int[] tree;
+
+  /** The next reference time. */
+  protected int clock;
+
+  /** The sampled pids, packed as hash then pid, highest hash first. */
+  protected PriorityQueue<Long> byhash =
+      new PriorityQueue<Long>((a, b) -> Long.compare(b, a));
+
+  /** Time between log lines, in milliseconds, or 0 for none. */
+  protected long loginterval = DEFAULT_LOG_INTERVAL;
+
+  /** When the next log line is due, in System.nanoTime. */
+  protected long nextlog;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an estimator for a pool of the given size.
+   *
+   * @param name name shown in the log line
+   * @param numframes the current pool size
+   * @param maxsamples the maximum number of pages sampled at once
+   * @param maxrate the sampling rate to start with, between 0 and 1; the
+   * cost of the estimator is about proportional to it
+   * @throws IllegalArgumentException if numframes or maxsamples is less
+   * than 1, or maxrate is out of range
+   */
+  public MissRatioCurve(String name, int numframes, int maxsamples,
+      double maxrate) {
+    if ((numframes < 1) || (maxsamples < 1)) {
+      throw new IllegalArgumentException("Invalid estimator size");
+    }
+    if (!(maxrate > 0) || (maxrate > 1)) {
+      throw new IllegalArgumentException("Invalid sampling rate");
+    }
+    this.name = name;
+    this.maxrate = maxrate;
+    threshold = Math.max(1, (int) (maxrate * HASH_SPACE));
+    this.numframes = numframes;
+    this.maxsamples = maxsamples;
+    width = Math.max(1, Math.ceil(MAX_SCALE * numframes / BUCKETS));
+    hist = new double[BUCKETS];
+    lasttime = new PageTable(2 * maxsamples);
+    pidat = new int[2 * maxsamples + 2];
+    tree = new int[pidat.length + 1];
+    nextlog = System.nanoTime() + loginterval * 1000000;
+  }
+
+  /**
+   * Hashes a pid for sampling; this must not be a hash the page table uses.
+   */
+  protected static int hash(int pid) {
+    int h = pid * 0x9E3779B9;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h >>> 8;
+  }
+
+  /**
+   * Records a reference to the given page.
+   */
+  public void reference(int pid) {
+    int h = hash(pid);
+    if (h < threshold) {
+      sample(pid, h);
+    }
+  }
+
+  /**
+   * Records a reference to a sampled page.
+   */
+  protected synchronized void sample(int pid, int h) {
+
+    // the threshold may have dropped since the caller looked
+    if (h >= threshold) {
+      return;
+    }
+    total += unit;
+    sampled++;
+
+    // find the reuse distance, if the page was seen before
+    int last = lasttime.get(pid);
+    if (last != PageTable.NOT_FOUND) {
+      int distance = lasttime.size() - prefix(last);
+      int bucket = (int) (distance / getSampleRate() / width);
+      if (bucket < BUCKETS) {
+        hist[bucket] += unit;
+      }
+      add(last, -1);
+      lasttime.remove(pid);
+    } else {
+      byhash.add(((long) h << 32) | pid);
+    }
+
+    // make this its last reference
+    if (clock == pidat.length) {
+      renumber();
+    }
+    pidat[clock] = pid;
+    lasttime.put(pid, clock);
+    add(clock, 1);
+    clock++;
+
+    // drop the highest hashes, and lower the rate, if too many are sampled
+    while (lasttime.size() > maxsamples) {
+      int top = (int) (byhash.peek() >>> 32);
+      unit *= (double) threshold / top;
+      threshold = top;
+      while (!byhash.isEmpty() && ((int) (byhash.peek() >>> 32) >= top)) {
+        int victim = (int) (long) byhash.poll();
+        add(lasttime.remove(victim), -1);
+      }
+    }
+
+    // log the curve now and then
+    if (loginterval > 0) {
+      long now = System.nanoTime();
+      if (now - nextlog >= 0) {
+        nextlog = now + loginterval * 1000000;
+        LOG.info(toString());
+      }
+    }
+
+  } // protected synchronized void sample(int pid, int h)
+
+  /**
+   * Gives the sampled pages the times 0 to n-1, in the order of their last
+   * references, when the clock has run out.
+   */
+  protected void renumber() {
+    int n = 0;
+    for (int t = 0; t < clock; t++) {
+      if (lasttime.get(pidat[t]) == t) {
+        pidat[n] = pidat[t];
+        lasttime.put(pidat[n], n);
+        n++;
+      }
+    }
+    clock = n;
+    Arrays.fill(tree, 0);
+    for (int t = 0; t < n; t++) {
+      add(t, 1);
+    }
+  }
+
+  /**
+   * Adds to the count at the given time in the Fenwick tree.
+   */
+  protected void add(int time, int delta) {
+    for (int i = time + 1; i < tree.length; i += i & -i) {
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Counts the sampled pages last referenced at or before the given time.
+   */
+  protected int prefix(int time) {
+    int sum = 0;
+    for (int i = time + 1; i > 0; i -= i & -i) {
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Estimates the hit ratio of an LRU pool of the given size, between a
+   * quarter of and four times the size the estimator was created for (sizes
+   * outside that are clamped).
+   *
+   * @return the estimate, or 0 if nothing has been sampled yet
+   */
+  public synchronized double getHitRatio(int frames) {
+    if (total == 0) {
+      return 0;
+    }
+    double size = Math.max(MIN_SCALE * numframes,
+        Math.min(MAX_SCALE * numframes, frames));
+
+    // whole buckets below the size, and a share of the one it falls in
+    double hits = 0;
+    double edge = size / width;
+    int full = Math.min((int) edge, BUCKETS);
+    for (int i = 0; i < full; i++) {
+      hits += hist[i];
+    }
+    if (full < BUCKETS) {
+      hits += hist[full] * (edge - full);
+    }
+    return hits / total;
+  }
+
+  /**
+   * Estimates the miss ratio of an LRU pool of the given size (see
+   * getHitRatio).
+   */
+  public double getMissRatio(int frames) {
+    return 1 - getHitRatio(frames);
+  }
+
+  /**
+   * Gets the pool sizes the log line reports: from MIN_SCALE to MAX_SCALE
+   * times the current size, doubling each time.
+   */
+  public int[] getSizes() {
+    int[] sizes = new int[5];
+    double scale = MIN_SCALE;
+    for (int i = 0; i < sizes.length; i++, scale *= 2) {
+      sizes[i] = Math.max(1, (int) Math.round(scale * numframes));
+    }
+    return sizes;
+  }
+
+  /**
+   * Gets the pool size the curve is scaled to.
+   */
+  public int getNumFrames() {
+    return numframes;
+  }
+
+  /**
+   * Gets the current sampling rate, i.e. the fraction of pages sampled.
+   */
+  public double getSampleRate() {
+    return (double) threshold / HASH_SPACE;
+  }
+
+  /**
+   * Gets the number of references sampled.
+   */
+  public synchronized long getSampled() {
+    return sampled;
+  }
+
+  /**
+   * Forgets all references, keeping the sampling rate.
+   */
+  public synchronized void reset() {
+    Arrays.fill(hist, 0);
+    total = 0;
+    sampled = 0;
+  }
+
+  /**
+   * Sets the time between log lines, in milliseconds; 0 turns them off.
+   */
+  public synchronized void setLogInterval(long interval) {
+    loginterval = interval;
+    nextlog = System.nanoTime() + interval * 1000000;
+  }
+
+  /**
+   * Returns the log line: the estimated hit ratio at each of getSizes.
+   */
+  public synchronized String toString() {
+    StringBuilder sb = new StringBuilder("MRC " + name + ": frames="
+        + numframes + " rate=" + String.format("%.4f", getSampleRate())
+        + " sampled=" + sampled + " hitratio");
+    for (int size : getSizes()) {
+      sb.append(String.format(" %d=%.3f", size, getHitRatio(size)));
+    }
+    return sb.toString();
+  }
+
+} // public class MissRatioCurve
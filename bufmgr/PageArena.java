@@ -0,0 +1,76 @@
+package bufmgr;
+
+import global.GlobalConst;
+import global.Page;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Off-heap memory for the frames of a buffer pool.  The frames are laid out
+ * back to back in direct buffers, so the pool's page contents are neither
+ * on the Java heap nor traced by the garbage collector, however large the
+ * pool.  A single ByteBuffer can address at most 2 GB, so the arena is made
+ * of chunks of at most CHUNK_FRAMES frames each; within a chunk, frame memory
+ * is contiguous.  Each frame is handed out as a Page view over its slice.
+ * The arena can grow by adding chunks; it never gives memory back.
+ */
+class PageArena implements GlobalConst {
+
+  /** Most frames per chunk (1 GB of pages). */
+  static final int CHUNK_FRAMES = (1 << 30) / PAGE_SIZE;
+
+  /** The chunks, in frame order. */
+  private ByteBuffer[] chunks;
+
+  /** The first frame in each chunk. */
+  private int[] firsts;
+
+  /** Number of frames in the arena. */
+  private int numframes;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Allocates an arena for the given number of frames.
+   */
+  PageArena(int numframes) {
+    chunks = new ByteBuffer[0];
+    firsts = new int[0];
+    grow(numframes);
+  }
+
+  /**
+   * Adds chunks so that the arena holds at least the given number of frames.
+   */
+  void grow(int numframes) {
+    while (this.numframes < numframes) {
+      int frames = Math.min(CHUNK_FRAMES, numframes - this.numframes);
+      chunks = Arrays.copyOf(chunks, chunks.length + 1);
+      firsts = Arrays.copyOf(firsts, firsts.length + 1);
+      chunks[chunks.length - 1] = ByteBuffer.allocateDirect(frames * PAGE_SIZE);
+      firsts[firsts.length - 1] = this.numframes;
+      this.numframes += frames;
+    }
+  }
+
+  /**
+   * Gets the number of frames in the arena.
+   */
+  int getNumFrames() {
+    return numframes;
+  }
+
+  /**
+   * Makes a page that is a view over the given frame's memory.
+   */
+  Page newPage(int frameno) {
+    int chunk = chunks.length - 1;
+    while (firsts[chunk] > frameno) {
+      chunk--;
+    }
+    return new Page(chunks[chunk].slice((frameno - firsts[chunk]) * PAGE_SIZE,
+        PAGE_SIZE));
+  }
+
+} // class PageArena implements GlobalConst
@@ -0,0 +1,288 @@
+package bufmgr;
+
+import diskmgr.AsyncIO;
+import global.GlobalConst;
+import global.Minibase;
+import global.PageId;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A background thread that writes dirty, unpinned frames to disk before the
+ * replacement policy gets to them, so that a miss rarely has to write out
+ * its victim before it can read.  Each round the cleaner asks the policy
+ * which frames it will take next (see ReplacementPolicy.getNextVictims), or,
+ * for a policy that sweeps the frames like a clock, looks at the frames just
+ * ahead of its hand (see ReplacementPolicy.getHand), and cleans those.  If
+ * the dirty frames are more than the high watermark, it keeps sweeping the
+ * pool until they are down to the low watermark.  Between rounds it sleeps,
+ * and a miss that had to write its victim wakes it early.  A write that fails
+ * is logged, and the page is left dirty for a later round.<br><br>
+ *
+ * A frame is held while it is written (see BufMgr.holdDirty), like
+ * flushPage, so an eviction can't refill it mid-write, and the page's
+ * stripe stays free for pins; its dirty bit is cleared before the write, so
+ * a page changed in the meantime is written again later.  The cleaner never
+ * pins, so it is invisible to pinPage, freePage and newPage.  With an
+ * asynchronous I/O engine (see DiskMgr.startAsyncIO), the cleaner submits
+ * the write and goes on to the next frame; the engine's queue depth bounds
+ * the writes in flight.  The watermarks are fractions of the pool, and
+ * follow it when it is resized.
+ */
+public class PageCleaner extends Thread implements GlobalConst {
+
+  /** Default fraction of dirty frames below which a sweep stops. */
+  public static final double DEFAULT_LOW_WATERMARK = 0.1;
+
+  /** Default fraction of dirty frames above which a sweep starts. */
+  public static final double DEFAULT_HIGH_WATERMARK = 0.3;
+
+  /** Default fraction of the frames cleaned ahead of the hand each round. */
+  public static final double DEFAULT_LOOKAHEAD = 0.05;
+
+  /** Default time between rounds, in milliseconds. */
+  public static final long DEFAULT_INTERVAL = 10;
+
+  /** Where failed writes are reported. */
+  protected static final Logger LOG = Logger.getLogger("bufmgr");
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager whose frames are cleaned. */
+  protected BufMgr buf;
+
+  /** Fraction of dirty frames at which a sweep stops. */
+  protected double low;
+
+  /** Fraction of dirty frames at which a sweep starts. */
+  protected double high;
+
+  /** Time between rounds, in milliseconds. */
+  protected long interval;
+
+  /** Where the cleaner sweeps from next, for policies without a hand. */
+  protected int cursor;
+
+  /** The frames the policy will take next, as last listed. */
+  protected int[] victims = new int[0];
+
+  /** Cleared to stop the thread. */
+  protected volatile boolean running;
+
+  /** Set when a miss has asked for an early round. */
+  protected boolean wakeup;
+
+  /** Number of pages the cleaner has written. */
+  protected volatile long writes;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a cleaner for the given buffer manager, with the given
+   * watermarks as fractions of the frames.
+   *
+   * @throws IllegalArgumentException unless 0 <= low <= high <= 1
+   */
+  public PageCleaner(BufMgr buf, double low, double high) {
+    super("PageCleaner");
+    if ((low < 0) || (low > high) || (high > 1)) {
+      throw new IllegalArgumentException("Invalid cleaner watermarks");
+    }
+    this.buf = buf;
+    this.low = low;
+    this.high = high;
+    this.interval = DEFAULT_INTERVAL;
+    this.running = true;
+    setDaemon(true);
+  }
+
+  /**
+   * Cleans until stopped.
+   */
+  public void run() {
+
+    while (running) {
+
+      // keep the frames the policy will pick next clean; the pool may have
+      // been resized since the last round
+      int numframes = buf.getNumFrames();
+      int lookahead = Math.max(1, (int) (DEFAULT_LOOKAHEAD * numframes));
+      int low = (int) (this.low * numframes);
+      int high = (int) Math.ceil(this.high * numframes);
+      if (victims.length != lookahead) {
+        victims = new int[lookahead];
+      }
+      ReplacementPolicy replacer = buf.getReplacer();
+      int start = cursor % numframes;
+      int n = replacer.getNextVictims(victims);
+      if (n >= 0) {
+        for (int i = 0; running && (i < n); i++) {
+          cleanFrame(victims[i], false);
+        }
+      } else {
+        int hand = replacer.getHand();
+        if ((hand != -1) && (hand < numframes)) {
+          start = hand;
+        }
+        clean(start, lookahead, true);
+      }
+
+      // too many dirty frames; sweep on from the hand, or from where the last
+      // round left off, until there are few enough
+      int dirty = getNumDirty();
+      int frameno = start;
+      for (int count = 0; running && (dirty > high) && (count < numframes);
+          count++) {
+        if (cleanFrame(frameno, false)) {
+          dirty--;
+          if (dirty <= low) {
+            break;
+          }
+        }
+        frameno = (frameno + 1 == numframes) ? 0 : frameno + 1;
+      }
+      cursor = (start + lookahead) % numframes;
+
+      // sleep until the next round, or until a miss asks for one
+      synchronized (this) {
+        if (!wakeup && running) {
+          try {
+            wait(interval);
+          } catch (InterruptedException exc) {
+            // stop() interrupts only after clearing running
+          }
+        }
+        wakeup = false;
+      }
+
+    } // while
+
+  } // public void run()
+
+  /**
+   * Cleans the dirty frames among the given number of frames, starting at
+   * the given one.
+   */
+  protected void clean(int start, int count, boolean unreferenced) {
+    int numframes = buf.getNumFrames();
+    int frameno = start;
+    for (int i = 0; running && (i < count); i++) {
+      cleanFrame(frameno, unreferenced);
+      frameno = (frameno + 1 == numframes) ? 0 : frameno + 1;
+    }
+  }
+
+  /**
+   * Writes the given frame if it holds a dirty page that no one has pinned.
+   *
+   * @param unreferenced true to skip frames whose reference bit is set, i.e.
+   * that the hand will pass over once more
+   * @return true if the frame was written
+   */
+  protected boolean cleanFrame(int frameno, boolean unreferenced) {
+
+    // the pool may have shrunk under the round
+    FrameDesc[] frametab = buf.frametab;
+    if (frameno >= frametab.length) {
+      return false;
+    }
+    FrameDesc fdesc = frametab[frameno];
+    int pid = fdesc.getPage_number();
+    if ((pid == INVALID_PAGEID) || !fdesc.getDirty()
+        || (fdesc.getPin_count() != 0)
+        || (unreferenced && fdesc.getReference_bit())) {
+      return false;
+    }
+
+    // hold the frame, so that it can't be refilled until its write is done
+    if (!buf.holdDirty(pid, frameno)) {
+      return false;
+    }
+    AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+    if (aio != null) {
+      try {
+        aio.write(new PageId(pid), buf.bufpool[frameno]).whenComplete(
+            (page, exc) -> {
+          if (exc == null) {
+            buf.flushes.increment();
+          } else {
+            fdesc.setDirty(true);
+            LOG.log(Level.WARNING, "Cannot clean page " + pid, exc);
+          }
+          buf.unhold(fdesc);
+        });
+      } catch (IllegalStateException exc) {
+        // the engine was stopped meanwhile
+        fdesc.setDirty(true);
+        buf.unhold(fdesc);
+        return false;
+      }
+      writes++;
+      return true;
+    }
+    try {
+      Minibase.DiskManager.write_page(new PageId(pid), buf.bufpool[frameno]);
+    } catch (RuntimeException exc) {
+      // keep the page dirty, and the cleaner running
+      fdesc.setDirty(true);
+      LOG.log(Level.WARNING, "Cannot clean page " + pid, exc);
+      return false;
+    } finally {
+      buf.unhold(fdesc);
+    }
+    writes++;
+    buf.flushes.increment();
+    return true;
+
+  } // protected boolean cleanFrame(int frameno, boolean unreferenced)
+
+  /**
+   * Asks for a round as soon as possible.
+   */
+  public synchronized void wake() {
+    wakeup = true;
+    notify();
+  }
+
+  /**
+   * Stops the thread and waits for it to finish its current write.
+   */
+  public void shutdown() {
+    running = false;
+    wake();
+    try {
+      join();
+    } catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Counts the dirty frames.
+   */
+  public int getNumDirty() {
+    int count = 0;
+    for (FrameDesc fdesc : buf.frametab) {
+      if (fdesc.getDirty()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Gets the number of pages the cleaner has written.
+   */
+  public long getWrites() {
+    return writes;
+  }
+
+  /**
+   * Sets the time between rounds, in milliseconds.
+   */
+  public void setInterval(long interval) {
+    this.interval = interval;
+  }
+
+} // public class PageCleaner extends Thread implements GlobalConst
@@ -0,0 +1,187 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * Maps page ids to frame numbers.  This is an open-addressing hash table of
+ * primitive ints with linear probing; keys and values are stored side by
+ * side in one array, so a lookup neither boxes nor follows pointers.
+ * Removal shifts the rest of the probe sequence back instead of leaving
+ * tombstones, so lookups never slow down as pages come and go.<br><br>
+ *
+ * A PageTable is not thread-safe; the buffer manager guards each one with
+ * its own monitor, except for peek.
+ */
+public class PageTable {
+
+  /** Key of an empty slot (pids are never negative in the page table). */
+  public static final int EMPTY = -1;
+
+  /** Value returned for a key that is not in the table. */
+  public static final int NOT_FOUND = -1;
+
+  /** Keys at even indexes, values at the following odd indexes. */
+  private int[] table;
+
+  /** Number of slots minus 1; the slot count is a power of 2. */
+  private int mask;
+
+  /** Shift that keeps the top bits of the hash, one per slot index bit. */
+  private int shift;
+
+  /** Number of entries in the table. */
+  private int size;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a table that holds the given number of entries without growing.
+   */
+  public PageTable(int expected) {
+    // keep the load factor at or below one half
+    int slots = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) << 1;
+    allocate(slots);
+  }
+
+  /**
+   * Allocates an empty table with the given number of slots.
+   */
+  private void allocate(int slots) {
+    table = new int[slots * 2];
+    Arrays.fill(table, EMPTY);
+    mask = slots - 1;
+    shift = 32 - Integer.numberOfTrailingZeros(slots);
+    size = 0;
+  }
+
+  /**
+   * Gets the home slot of the given key.
+   */
+  private int home(int key) {
+    // Fibonacci hashing: the top bits of the product are the well-mixed ones
+    return (key * 0x9E3779B9) >>> shift;
+  }
+
+  /**
+   * Gets the frame number for the given pid, or NOT_FOUND.
+   */
+  public int get(int key) {
+    int[] tab = table;
+    for (int i = home(key);; i = (i + 1) & mask) {
+      int k = tab[i << 1];
+      if (k == key) {
+        return tab[(i << 1) + 1];
+      }
+      if (k == EMPTY) {
+        return NOT_FOUND;
+      }
+    }
+  }
+
+  /**
+   * Gets the frame number for the given pid without the stripe's latch, or
+   * NOT_FOUND.  A concurrent change may make the answer stale or wrong, so
+   * the caller must check that the frame holds the page; but this never
+   * fails or loops, even on a table that is growing under it.
+   */
+  public int peek(int key) {
+    int[] tab = table;
+    int slots = tab.length >> 1;
+    int i = (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(slots));
+    for (int n = 0; n < slots; n++, i = (i + 1) & (slots - 1)) {
+      int k = tab[i << 1];
+      if (k == key) {
+        return tab[(i << 1) + 1];
+      }
+      if (k == EMPTY) {
+        return NOT_FOUND;
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * True if the table has an entry for the given pid.
+   */
+  public boolean containsKey(int key) {
+    return get(key) != NOT_FOUND;
+  }
+
+  /**
+   * Maps the given pid to the given frame number, replacing any old entry.
+   */
+  public void put(int key, int value) {
+    if ((size + 1) * 2 > mask + 1) {
+      grow();
+    }
+    int[] tab = table;
+    for (int i = home(key);; i = (i + 1) & mask) {
+      int k = tab[i << 1];
+      if (k == key) {
+        tab[(i << 1) + 1] = value;
+        return;
+      }
+      if (k == EMPTY) {
+        tab[(i << 1) + 1] = value;
+        tab[i << 1] = key;
+        size++;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Removes the entry for the given pid.
+   *
+   * @return the frame number it was mapped to, or NOT_FOUND
+   */
+  public int remove(int key) {
+
+    // find the slot
+    int[] tab = table;
+    int i = home(key);
+    while (tab[i << 1] != key) {
+      if (tab[i << 1] == EMPTY) {
+        return NOT_FOUND;
+      }
+      i = (i + 1) & mask;
+    }
+    int value = tab[(i << 1) + 1];
+
+    // shift back every later entry of the run that may not skip the hole
+    for (int j = (i + 1) & mask; tab[j << 1] != EMPTY; j = (j + 1) & mask) {
+      int h = home(tab[j << 1]);
+      boolean stays = (i <= j) ? ((i < h) && (h <= j)) : ((i < h) || (h <= j));
+      if (!stays) {
+        tab[(i << 1) + 1] = tab[(j << 1) + 1];
+        tab[i << 1] = tab[j << 1];
+        i = j;
+      }
+    }
+    tab[i << 1] = EMPTY;
+    size--;
+    return value;
+
+  } // int remove(int key)
+
+  /**
+   * Gets the number of entries in the table.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Doubles the number of slots and rehashes every entry.
+   */
+  private void grow() {
+    int[] old = table;
+    allocate((mask + 1) * 2);
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i] != EMPTY) {
+        put(old[i], old[i + 1]);
+      }
+    }
+  }
+
+} // class PageTable
@@ -0,0 +1,482 @@
+package bufmgr;
+
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A buffer manager made of several named buffer pools, each an ordinary
+ * BufMgr with its own size and replacement policy.  Every page is routed to
+ * one pool, always the same one, so each page has exactly one frame:<br>
+ * <ol>
+ * <li>pages in a run given to routeRun go to that run's pool (e.g. a temp
+ * file's pages to "temp");
+ * <li>the disk manager's metadata pages (the first page, the space map and
+ * the file library, see DiskMgr.isMetadataPage) go to the CATALOG pool, if
+ * there is one, so space map and library lookups always hit memory;
+ * <li>everything else goes to the default pool.
+ * </ol>
+ * Routes should be set before the pages are pinned; a page that is already
+ * in one pool is not moved to another, except that a library page the
+ * disk manager finds only after it was cached as data is dropped from the
+ * data pool (see reroute).  A pool reads ahead only its own
+ * pages, so a scan stops reading ahead where another pool's pages begin.<br><br>
+ *
+ * Calls that name a page go to its pool, as does newPage once it has
+ * allocated the run.  Calls about the whole buffer manager (flushAllFrames,
+ * getNumFrames, the cleaner, read-ahead, the counters, the estimator, the
+ * pin timeout) cover all the pools, including those added later for the pin
+ * timeout, except getReplacer, getEstimator, isOffHeap and resize, which
+ * are about the default pool; use getPool for the others.
+ */
+public class PooledBufMgr extends BufMgr {
+
+  /** Name of the pool that holds the disk manager's metadata pages. */
+  public static final String CATALOG = "catalog";
+
+  /** Conventional name of the pool for user data. */
+  public static final String DATA = "data";
+
+  /** Conventional name of the pool for temporary files. */
+  public static final String TEMP = "temp";
+
+  // --------------------------------------------------------------------------
+
+  /** The pools, by name, in the order they were added. */
+  protected Map<String, BufMgr> pools = new LinkedHashMap<String, BufMgr>();
+
+  /** The pool pages go to when nothing else routes them. */
+  protected BufMgr defaultpool;
+
+  /** The pool for metadata pages, or null to use the default pool. */
+  protected volatile BufMgr catalog;
+
+  /** The routed runs, sorted by first pid; replaced, never changed, so pins
+   * can search them without a lock. */
+  protected volatile Route[] routes = new Route[0];
+
+  /** A run of pages routed to a pool. */
+  protected static class Route {
+    final int first, end;
+    final BufMgr pool;
+    Route(int first, int end, BufMgr pool) {
+      this.first = first;
+      this.end = end;
+      this.pool = pool;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a buffer manager whose default pool has the given name, size
+   * and replacement policy.
+   * 
+   * @throws IllegalArgumentException if numframes or replacer is invalid
+   */
+  public PooledBufMgr(String name, int numframes, String replacer) {
+    defaultpool = addPool(name, numframes, replacer);
+  }
+
+  /**
+   * Adds a pool with the given name, size and replacement policy.  A pool
+   * named CATALOG takes over the metadata pages.
+   * 
+   * @return the new pool
+   * @throws IllegalArgumentException if the name is taken, or numframes or
+   * replacer is invalid
+   */
+  public synchronized BufMgr addPool(String name, int numframes,
+      String replacer) {
+    if (pools.containsKey(name)) {
+      throw new IllegalArgumentException("Pool " + name + " already exists");
+    }
+    BufMgr pool = new BufMgr(numframes, replacer);
+    pool.setPinTimeout(pintimeout);
+    // read-ahead and prefetch must not bring in another pool's pages
+    pool.owner = pid -> (route(pid) == pool);
+    pools.put(name, pool);
+    if (name.equals(CATALOG)) {
+      catalog = pool;
+    }
+    return pool;
+  }
+
+  /**
+   * Gets the pool with the given name, or null if there is none.
+   */
+  public synchronized BufMgr getPool(String name) {
+    return pools.get(name);
+  }
+
+  /**
+   * Gets the names of the pools, in the order they were added.
+   */
+  public synchronized String[] getPoolNames() {
+    return pools.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * Routes a run of pages to the given pool, e.g. the pages of a file.
+   * 
+   * @throws IllegalArgumentException if there is no such pool, or the run
+   * overlaps one already routed
+   */
+  public synchronized void routeRun(PageId firstpid, int run_size,
+      String name) {
+    BufMgr pool = pools.get(name);
+    if ((pool == null) || (run_size < 1)) {
+      throw new IllegalArgumentException("Invalid pool or run; route aborted");
+    }
+    int end = firstpid.pid + run_size;
+    for (Route route : routes) {
+      if ((firstpid.pid < route.end) && (route.first < end)) {
+        throw new IllegalArgumentException(
+            "Run already routed; route aborted");
+      }
+    }
+    Route[] newroutes = Arrays.copyOf(routes, routes.length + 1);
+    int i = newroutes.length - 1;
+    while ((i > 0) && (newroutes[i - 1].first > firstpid.pid)) {
+      newroutes[i] = newroutes[i - 1];
+      i--;
+    }
+    newroutes[i] = new Route(firstpid.pid, end, pool);
+    routes = newroutes;
+  }
+
+  /**
+   * Removes the route of the run starting at the given page, if there is one;
+   * its pages should no longer be in the pool.
+   */
+  public synchronized void removeRoute(PageId firstpid) {
+    for (int i = 0; i < routes.length; i++) {
+      if (routes[i].first == firstpid.pid) {
+        Route[] newroutes = new Route[routes.length - 1];
+        System.arraycopy(routes, 0, newroutes, 0, i);
+        System.arraycopy(routes, i + 1, newroutes, i, newroutes.length - i);
+        routes = newroutes;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Picks the pool for the given page.
+   */
+  protected BufMgr route(int pid) {
+
+    // routed runs first
+    Route[] routes = this.routes;
+    int lo = 0;
+    int hi = routes.length - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (routes[mid].first > pid) {
+        hi = mid - 1;
+      } else if (routes[mid].end <= pid) {
+        lo = mid + 1;
+      } else {
+        return routes[mid].pool;
+      }
+    }
+
+    // then the disk manager's own pages
+    BufMgr catalog = this.catalog;
+    if ((catalog != null) && Minibase.DiskManager.isMetadataPage(pid)) {
+      return catalog;
+    }
+    return defaultpool;
+
+  } // protected BufMgr route(int pid)
+
+  /**
+   * Gets a snapshot of the pools.
+   */
+  protected synchronized BufMgr[] allPools() {
+    return pools.values().toArray(new BufMgr[0]);
+  }
+
+  // --------------------------------------------------------------------------
+
+  public void pinPage(PageId pageno, Page mempage, int contents) {
+    route(pageno.pid).pinPage(pageno, mempage, contents);
+  }
+
+  public void unpinPage(PageId pageno, boolean dirty) {
+    route(pageno.pid).unpinPage(pageno, dirty);
+  }
+
+  public <T> T readPage(PageId pageno, Function<Page, T> reader) {
+    return route(pageno.pid).readPage(pageno, reader);
+  }
+
+  public void reroute(PageId pageno) {
+    BufMgr home = route(pageno.pid);
+    for (BufMgr pool : allPools()) {
+      if (pool != home) {
+        pool.dropPage(pageno.pid);
+      }
+    }
+  }
+
+  public void pinPage(PageId pageno, Page mempage, int contents, int latch) {
+    route(pageno.pid).pinPage(pageno, mempage, contents, latch);
+  }
+
+  public void unpinPage(PageId pageno, boolean dirty, int latch) {
+    route(pageno.pid).unpinPage(pageno, dirty, latch);
+  }
+
+  public void latchPage(PageId pageno, int latch) {
+    route(pageno.pid).latchPage(pageno, latch);
+  }
+
+  public boolean tryLatch(PageId pageno, int latch) {
+    return route(pageno.pid).tryLatch(pageno, latch);
+  }
+
+  public boolean upgradeLatch(PageId pageno) {
+    return route(pageno.pid).upgradeLatch(pageno);
+  }
+
+  public void unlatchPage(PageId pageno, int latch) {
+    route(pageno.pid).unlatchPage(pageno, latch);
+  }
+
+  /**
+   * Allocates a run as BufMgr.newPage does, and pins its first page in the
+   * pool the page is routed to.  Which pool that is depends on the pid, so
+   * the check for a full pool comes after the allocation, and the run is
+   * deallocated if it fails.
+   */
+  public PageId newPage(Page firstpg, int run_size) {
+
+    PageId firstpid = Minibase.DiskManager.allocate_page(run_size);
+    try {
+      BufMgr pool = route(firstpid.pid);
+      if ((pool.getPinTimeout() <= 0) && (pool.getNumUnpinned() == 0)) {
+        throw new IllegalStateException(
+            "All frames are pinned; newPage aborted");
+      }
+      pool.pinPage(firstpid, firstpg, PIN_ADOPT);
+    } catch (RuntimeException exc) {
+      Minibase.DiskManager.deallocate_page(firstpid, run_size);
+      throw exc;
+    }
+    return firstpid;
+
+  } // public PageId newPage(Page firstpg, int run_size)
+
+  public void freePage(PageId pageno) {
+    route(pageno.pid).freePage(pageno);
+  }
+
+  public void flushPage(PageId pageno) {
+    route(pageno.pid).flushPage(pageno);
+  }
+
+  /**
+   * Pins a run as BufMgr.pinRun does, in one go if the run is all in one
+   * pool, or else a page at a time.
+   */
+  public void pinRun(PageId first, int n, Page[] out) {
+    BufMgr pool = route(first.pid);
+    boolean onepool = true;
+    for (int i = 1; onepool && (i < n); i++) {
+      onepool = (route(first.pid + i) == pool);
+    }
+    if (onepool) {
+      pool.pinRun(first, n, out);
+      return;
+    }
+    if ((n < 1) || (out.length < n)) {
+      throw new IllegalArgumentException("Invalid run; pinRun aborted");
+    }
+    int pinned = 0;
+    try {
+      for (; pinned < n; pinned++) {
+        pinPage(new PageId(first.pid + pinned), out[pinned], PIN_DISKIO);
+      }
+    } finally {
+      if (pinned < n) {
+        for (int i = 0; i < pinned; i++) {
+          unpinPage(new PageId(first.pid + i), UNPIN_CLEAN);
+        }
+      }
+    }
+  }
+
+  /**
+   * Prefetches each pool's share of the given pages into that pool.
+   */
+  public int prefetch(PageId... pids) {
+    Map<BufMgr, PageId[]> shares = new LinkedHashMap<BufMgr, PageId[]>();
+    for (PageId pid : pids) {
+      BufMgr pool = route(pid.pid);
+      PageId[] share = shares.get(pool);
+      share = (share == null) ? new PageId[1]
+          : Arrays.copyOf(share, share.length + 1);
+      share[share.length - 1] = pid;
+      shares.put(pool, share);
+    }
+    int loaded = 0;
+    for (Map.Entry<BufMgr, PageId[]> share : shares.entrySet()) {
+      loaded += share.getKey().prefetch(share.getValue());
+    }
+    return loaded;
+  }
+
+  public void flushAllFrames() {
+    for (BufMgr pool : allPools()) {
+      pool.flushAllFrames();
+    }
+  }
+
+  public int getNumFrames() {
+    int count = 0;
+    for (BufMgr pool : allPools()) {
+      count += pool.getNumFrames();
+    }
+    return count;
+  }
+
+  public int getNumUnpinned() {
+    int count = 0;
+    for (BufMgr pool : allPools()) {
+      count += pool.getNumUnpinned();
+    }
+    return count;
+  }
+
+  public void setReadAhead(boolean readahead) {
+    for (BufMgr pool : allPools()) {
+      pool.setReadAhead(readahead);
+    }
+  }
+
+  public boolean isReadAhead() {
+    return defaultpool.isReadAhead();
+  }
+
+  /**
+   * Starts a page cleaner on each pool.
+   */
+  public synchronized void startCleaner(double low, double high) {
+    for (BufMgr pool : pools.values()) {
+      pool.startCleaner(low, high);
+    }
+  }
+
+  public synchronized void stopCleaner() {
+    for (BufMgr pool : pools.values()) {
+      pool.stopCleaner();
+    }
+  }
+
+  public PageCleaner getCleaner() {
+    return defaultpool.getCleaner();
+  }
+
+  /**
+   * Sums the counters of the pools.
+   */
+  public BufStats getStats() {
+    BufStats stats = new BufStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    for (BufMgr pool : allPools()) {
+      stats = stats.plus(pool.getStats());
+    }
+    return stats;
+  }
+
+  public void resetStats() {
+    for (BufMgr pool : allPools()) {
+      pool.resetStats();
+    }
+  }
+
+  /**
+   * Publishes the sum of the pools' counters under the given name, as
+   * BufMgr.registerMBean does, and each pool's own counters under the same
+   * name with a "pool" key added.  Pools added later are not published.
+   */
+  public synchronized ObjectName registerMBean(String name) {
+    ObjectName oname = super.registerMBean(name);
+    try {
+      for (Map.Entry<String, BufMgr> pool : pools.entrySet()) {
+        ObjectName pname = new ObjectName(oname + ",pool="
+            + ObjectName.quote(pool.getKey()));
+        register(pname, pool.getValue());
+        pool.getValue().mbean = pname;
+      }
+    } catch (JMException exc) {
+      throw new IllegalStateException("Cannot register buffer pool MBean",
+          exc);
+    }
+    return oname;
+  }
+
+  public synchronized void unregisterMBean() {
+    super.unregisterMBean();
+    for (BufMgr pool : pools.values()) {
+      pool.unregisterMBean();
+    }
+  }
+
+  /**
+   * Starts an estimator on each pool, named after the pool, so each pool's
+   * log line can be told apart.
+   */
+  public synchronized MissRatioCurve startEstimator(int maxsamples,
+      double maxrate) {
+    for (Map.Entry<String, BufMgr> pool : pools.entrySet()) {
+      BufMgr buf = pool.getValue();
+      synchronized (buf) {
+        buf.estimator = new MissRatioCurve(pool.getKey(), buf.getNumFrames(),
+            maxsamples, maxrate);
+      }
+    }
+    return getEstimator();
+  }
+
+  public synchronized void stopEstimator() {
+    for (BufMgr pool : pools.values()) {
+      pool.stopEstimator();
+    }
+  }
+
+  public MissRatioCurve getEstimator() {
+    return defaultpool.getEstimator();
+  }
+
+  /**
+   * Sets the pin timeout of every pool, and of the pools added later.
+   */
+  public synchronized void setPinTimeout(long millis) {
+    super.setPinTimeout(millis);
+    for (BufMgr pool : pools.values()) {
+      pool.setPinTimeout(millis);
+    }
+  }
+
+  public boolean isOffHeap() {
+    return defaultpool.isOffHeap();
+  }
+
+  public ReplacementPolicy getReplacer() {
+    return defaultpool.getReplacer();
+  }
+
+  public void resize(int numframes) {
+    defaultpool.resize(numframes);
+  }
+
+} // public class PooledBufMgr extends BufMgr
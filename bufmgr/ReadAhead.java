@@ -0,0 +1,91 @@
+package bufmgr;
+
+/**
+ * Sequential access detection for one thread's PIN_DISKIO pins.  Once a
+ * thread has pinned TRIGGER pages in a row, the buffer manager reads a window
+ * of the pages after it with one multi-page read, and reads the next window
+ * when the thread gets halfway through the last one.  Each time most of a
+ * window turns out to be used, the next window is twice as big, up to
+ * MAX_WINDOW; a jump elsewhere starts over.
+ */
+class ReadAhead {
+
+  /** Number of consecutive pins that make a sequential run. */
+  static final int TRIGGER = 3;
+
+  /** Size of the first window, in pages. */
+  static final int MIN_WINDOW = 4;
+
+  /** Largest window, in pages. */
+  static final int MAX_WINDOW = 128;
+
+  // --------------------------------------------------------------------------
+
+  /** The last pid pinned. */
+  int last = -1;
+
+  /** Number of consecutive pids pinned so far, ending with last. */
+  int runlen;
+
+  /** Size of the next window. */
+  int window = MIN_WINDOW;
+
+  /** First pid past the last window read, or -1 if none has been. */
+  int next = -1;
+
+  /** Number of read-ahead pages used since the last window was read. */
+  int used;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Notes a pin of the given pid, and decides whether to read ahead.
+   *
+   * @param maxwindow largest window the pool can spare
+   * @return the number of pages to read starting at start(pid), or 0
+   */
+  int access(int pid, int maxwindow) {
+
+    // extend or restart the run
+    if (pid == last + 1) {
+      runlen++;
+    } else if (pid != last) {
+      runlen = 1;
+      window = MIN_WINDOW;
+      next = -1;
+      used = 0;
+    }
+    last = pid;
+    if (runlen < TRIGGER) {
+      return 0;
+    }
+
+    // read the next window once no more than half a window is left ahead
+    if ((next != -1) && (pid + 1 + window / 2 < next)) {
+      return 0;
+    }
+    if ((next != -1) && (used >= window / 2)) {
+      window = Math.min(2 * window, MAX_WINDOW);
+    }
+    window = Math.max(1, Math.min(window, maxwindow));
+    used = 0;
+    return window;
+
+  } // int access(int pid, int maxwindow)
+
+  /**
+   * Gets the first pid of the window to read, given the pid just pinned.  The
+   * window starts after that pid, which its pin reads as a normal miss.
+   */
+  int start(int pid) {
+    return Math.max(pid + 1, next);
+  }
+
+  /**
+   * Notes that the given window has been read.
+   */
+  void read(int start, int count) {
+    next = start + count;
+  }
+
+} // class ReadAhead
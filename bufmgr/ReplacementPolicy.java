@@ -0,0 +1,104 @@
+package bufmgr;
+
+/**
+ * A page replacement policy for the buffer manager.  The buffer manager tells
+ * its policy about every pin, unpin and free, and asks it for a victim frame
+ * on every miss.  Frames are identified by their index in the buffer pool.<br><br>
+ *
+ * Policies are called from many threads at once and do their own locking.
+ * access is on the hit path, so it should be as cheap as the policy allows.
+ */
+public interface ReplacementPolicy {
+
+  /**
+   * Notifies the policy that a page was just brought into the given frame
+   * (i.e. on a miss), and pinned once.
+   */
+  public void pin(int frameno);
+
+  /**
+   * Notifies the policy that a page was read ahead into the given frame,
+   * before anyone asked for it.  The read counts as the page's first
+   * reference (its first pin will not call access), so the page should be
+   * placed as if it had been pinned once, and no warmer.
+   */
+  public default void prefetch(int frameno) {
+    pin(frameno);
+  }
+
+  /**
+   * Notifies the policy that the page in the given frame, already resident,
+   * was pinned again (i.e. on a hit).
+   */
+  public void access(int frameno);
+
+  /**
+   * Notifies the policy that a pin on the given frame was released.
+   */
+  public void unpin(int frameno);
+
+  /**
+   * Notifies the policy that the given frame is now empty, and may be handed
+   * out again by pickVictim.  The frame is still claimed during the call, so
+   * it can neither be handed out nor removed by resize until it returns.
+   */
+  public void free(int frameno);
+
+  /**
+   * Picks an unpinned frame to replace and claims it for the caller (see
+   * FrameDesc.tryClaim); empty frames should be preferred.  A frame that is
+   * returned no longer belongs to the policy until it is pinned or freed.
+   *
+   * @param pid id of the page about to be brought into the frame
+   * @return the index of the claimed frame
+   * @throws IllegalStateException if all frames are pinned
+   */
+  public int pickVictim(int pid);
+
+  /**
+   * Notifies the policy that the pool now has the given number of frames
+   * (see BufMgr.resize).  Added frames are empty.  Removed frames have been
+   * claimed and emptied by the buffer manager, and must be forgotten; no call
+   * will name them again.  By default, a policy cannot be resized.
+   *
+   * @throws UnsupportedOperationException if the policy cannot be resized;
+   * then it must not have changed
+   */
+  public default void resize(int numframes) {
+    throw new UnsupportedOperationException(
+        getClass().getSimpleName() + " cannot be resized");
+  }
+
+  /**
+   * Gets the most pages that can be read ahead at once without the policy
+   * evicting some of them before they are used.
+   */
+  public default int getReadAheadLimit() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Gets the frame pickVictim will look at next, if the policy sweeps the
+   * frames in order like a clock; the page cleaner keeps the frames after it
+   * clean.
+   *
+   * @return the frame under the hand, or -1 if the policy has no hand
+   */
+  public default int getHand() {
+    return -1;
+  }
+
+  /**
+   * Lists the frames pickVictim is likely to take next, most likely first;
+   * the page cleaner keeps them clean.  Empty and pinned frames may be
+   * listed, and are skipped.
+   *
+   * @param frames filled with frame numbers, up to its length
+   * @return the number of frames listed, or -1 if the policy sweeps the
+   * frames in order from its hand instead (see getHand)
+   */
+  public default int getNextVictims(int[] frames) {
+    return -1;
+  }
+
+} // public interface ReplacementPolicy
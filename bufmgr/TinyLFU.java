@@ -0,0 +1,293 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * W-TinyLFU admission (Einziger, Friedman and Manes) in front of CLOCK.  The
+ * pool is split into a small window, run as an LRU list, and the main pool,
+ * run by an ordinary Clock confined to the main frames.  Every page read into
+ * the pool enters the window.  When the window must give up a page, that page
+ * competes with the page CLOCK would evict from the main pool, and a
+ * count-min sketch of recent accesses decides: if the window page has been
+ * seen more often it is admitted (its frame simply joins the main pool) and
+ * the CLOCK victim is evicted instead; otherwise the window page is evicted
+ * and the main pool is left alone.  So one-off pages churn through the window
+ * and never displace pages that are used often.<br><br>
+ *
+ * Frames change sides by relabeling; no page is ever copied.  Hits on main
+ * frames only count in the sketch and set the reference bit, without a lock;
+ * hits on window frames take the policy's lock to move the frame.
+ */
+public class TinyLFU implements ReplacementPolicy {
+
+  /** Default share of the frames for the window. */
+  public static final double DEFAULT_WINDOW = 0.01;
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager whose frames are being replaced. */
+  protected BufMgr buf;
+
+  /** True for the frames in the window, false for the main pool. */
+  protected boolean[] inwindow;
+
+  /** Number of window frames; relabeling frames rarely changes it. */
+  protected int windowsize;
+
+  /** Number of window frames wanted; the window only falls short of it
+   * after a resize removes window frames. */
+  protected int windowtarget;
+
+  /** Window frames holding pages, least recently used at the tail. */
+  protected FrameList window;
+
+  /** Empty window frames. */
+  protected FrameList windowfree;
+
+  /** Victim selection for the main pool. */
+  protected Clock main;
+
+  /** Recent access frequencies, by pid. */
+  protected FrequencySketch sketch;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a W-TinyLFU policy with the default window size.
+   */
+  public TinyLFU(BufMgr buf) {
+    this(buf, (int) Math.ceil(DEFAULT_WINDOW * buf.frametab.length));
+  }
+
+  /**
+   * Constructs a W-TinyLFU policy with the given number of window frames.
+   *
+   * @throws IllegalArgumentException if windowsize is not between 1 and
+   * the number of frames
+   */
+  public TinyLFU(BufMgr buf, int windowsize) {
+    int numframes = buf.frametab.length;
+    if ((windowsize < 1) || (windowsize > numframes)) {
+      throw new IllegalArgumentException("Invalid TinyLFU window size");
+    }
+    this.buf = buf;
+    this.windowsize = windowsize;
+    windowtarget = windowsize;
+    inwindow = new boolean[numframes];
+    window = new FrameList(numframes);
+    windowfree = new FrameList(numframes);
+    for (int i = 0; i < windowsize; i++) {
+      inwindow[i] = true;
+      windowfree.addLast(i);
+    }
+    main = new Clock(buf) {
+      protected boolean eligible(int frameno) {
+        // frames the pool has just grown by are not ours until resize
+        boolean[] inwindow = TinyLFU.this.inwindow;
+        return (frameno < inwindow.length) && !inwindow[frameno];
+      }
+    };
+    sketch = new FrequencySketch(numframes);
+  }
+
+  public synchronized void pin(int frameno) {
+    windowfree.remove(frameno);
+    if (inwindow[frameno]) {
+      window.addFirst(frameno);
+    } else {
+      main.pin(frameno);
+    }
+  }
+
+  public synchronized void prefetch(int frameno) {
+    windowfree.remove(frameno);
+    if (inwindow[frameno]) {
+      window.addFirst(frameno);
+    } else {
+      main.prefetch(frameno);
+    }
+  }
+
+  public void access(int frameno) {
+    sketch.increment(buf.frametab[frameno].getPage_number());
+    if (!inwindow[frameno]) {
+      main.access(frameno);
+      return;
+    }
+    synchronized (this) {
+      if (window.contains(frameno)) {
+        window.moveToFirst(frameno);
+      }
+    }
+  }
+
+  public void unpin(int frameno) {
+  }
+
+  public synchronized void free(int frameno) {
+    if (inwindow[frameno]) {
+      window.remove(frameno);
+      if (!windowfree.contains(frameno)) {
+        windowfree.addLast(frameno);
+      }
+    } else {
+      main.free(frameno);
+    }
+  }
+
+  /**
+   * Picks the frame for the incoming page: an empty window frame if there is
+   * one, or else the frame that loses the contest between the window's LRU
+   * page and CLOCK's victim in the main pool.  While the main pool still has
+   * empty frames, the incoming page goes straight there.  The miss counts in
+   * the sketch only once a frame is claimed, so a pin that fails, or waits
+   * and tries again, does not make its page look hotter.
+   *
+   * @throws IllegalStateException if all frames are pinned
+   */
+  public synchronized int pickVictim(int pid) {
+    int frameno = claimFrame(pid);
+    sketch.increment(pid);
+    return frameno;
+  }
+
+  /**
+   * Does the work of pickVictim, apart from counting the miss.
+   */
+  protected int claimFrame(int pid) {
+
+    // an empty window frame costs nothing
+    for (int frameno = windowfree.first(); frameno != FrameList.NONE;
+        frameno = windowfree.next(frameno)) {
+      if (buf.frametab[frameno].tryClaim()) {
+        windowfree.remove(frameno);
+        return frameno;
+      }
+    }
+
+    // find CLOCK's candidate in the main pool; an empty one is simply taken
+    int victim = -1;
+    try {
+      victim = main.pickVictim(pid);
+    } catch (IllegalStateException exc) {
+      // the main pool is empty, or all pinned
+    }
+    if ((victim != -1) && (buf.frametab[victim].getPage_number() == -1)) {
+      return victim;
+    }
+    int victimfreq = (victim == -1) ? -1
+        : sketch.frequency(buf.frametab[victim].getPage_number());
+
+    // let the window's pages, oldest first, compete with it
+    for (int candidate = window.last(); candidate != FrameList.NONE;
+        candidate = window.prev(candidate)) {
+      int candfreq = sketch.frequency(buf.frametab[candidate].getPage_number());
+      if ((victim != -1) && (candfreq > victimfreq)) {
+
+        // admit the window page, and evict the main victim into the window
+        window.remove(candidate);
+        inwindow[candidate] = false;
+        main.pin(candidate);
+        inwindow[victim] = true;
+        return victim;
+
+      }
+      if (buf.frametab[candidate].tryClaim()) {
+        // the window page loses; the main pool is untouched
+        window.remove(candidate);
+        if (victim != -1) {
+          buf.frametab[victim].unclaim();
+        }
+        return candidate;
+      }
+    }
+
+    // every window page is pinned; fall back to the main victim, and trade
+    // it for the oldest window page so the window keeps its size
+    if (victim == -1) {
+      throw new IllegalStateException("All frames are pinned");
+    }
+    int oldest = window.last();
+    if (oldest != FrameList.NONE) {
+      window.remove(oldest);
+      inwindow[oldest] = false;
+      main.pin(oldest);
+    } else if (windowsize < Math.min(windowtarget, inwindow.length)) {
+      // a resize took window frames; take this one back
+      windowsize++;
+    } else {
+      // the window's frames are all being filled; the page skips it
+      return victim;
+    }
+    inwindow[victim] = true;
+    return victim;
+
+  } // protected int claimFrame(int pid)
+
+  /**
+   * Adds frames to the main pool, or forgets frames.  Window frames that are
+   * removed are taken back from the main pool by later misses, up to the
+   * window's size (or the pool's, if that is less).
+   */
+  public synchronized void resize(int numframes) {
+    int oldframes = inwindow.length;
+    for (int frameno = numframes; frameno < oldframes; frameno++) {
+      if (inwindow[frameno]) {
+        window.remove(frameno);
+        windowfree.remove(frameno);
+        windowsize--;
+      }
+    }
+    window.resize(numframes);
+    windowfree.resize(numframes);
+    inwindow = Arrays.copyOf(inwindow, numframes);
+    main.resize(numframes);
+  }
+
+  /**
+   * New pages only get into the pool through the window, so read-ahead must
+   * fit in it.  With the default window, a pool of a few hundred frames or
+   * less reads ahead only a page or two at a time.
+   */
+  public int getReadAheadLimit() {
+    return Math.max(1, windowsize / 2);
+  }
+
+  /**
+   * Gets the hand of the main pool's Clock.
+   */
+  public int getHand() {
+    return main.getHand();
+  }
+
+  /**
+   * Lists the window's LRU end, whose pages usually lose the contest, then
+   * the main frames from the Clock hand on.
+   */
+  public synchronized int getNextVictims(int[] frames) {
+    int n = window.copyFromTail(frames, 0);
+    int numframes = inwindow.length;
+    int frameno = main.getHand();
+    for (int count = 0; (count < numframes) && (n < frames.length); count++) {
+      if ((frameno < numframes) && !inwindow[frameno]) {
+        frames[n++] = frameno;
+      }
+      frameno = (frameno + 1 >= numframes) ? 0 : frameno + 1;
+    }
+    return n;
+  }
+
+  /**
+   * Gets the number of frames in the window.
+   */
+  public synchronized int getWindowSize() {
+    int count = 0;
+    for (boolean w : inwindow) {
+      if (w) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+} // public class TinyLFU implements ReplacementPolicy
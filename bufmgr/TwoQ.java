@@ -0,0 +1,270 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * 2Q replacement (Johnson and Shasha), in its full form.  A page read into
+ * the pool goes on A1in, a FIFO.  When A1in grows past Kin frames its oldest
+ * page is evicted and its pid is remembered on A1out, a FIFO of at most Kout
+ * page ids.  Only a page that misses again while it is on A1out has shown it
+ * is worth keeping: it goes on Am, an LRU list, and it is evicted from Am
+ * only when A1in is within its share.  Hits on A1in are ignored, since they
+ * are usually correlated references from the same scan.  So a page that is
+ * touched once can never push a page out of Am.<br><br>
+ *
+ * All methods are synchronized, including access, which moves Am pages.
+ */
+public class TwoQ implements ReplacementPolicy {
+
+  /** Default share of the frames for A1in. */
+  public static final double DEFAULT_KIN = 0.25;
+
+  /** Default size of A1out, relative to the number of frames. */
+  public static final double DEFAULT_KOUT = 0.5;
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager whose frames are being replaced. */
+  protected BufMgr buf;
+
+  /** Frames holding pages seen once, oldest at the tail. */
+  protected FrameList a1in;
+
+  /** Frames holding hot pages, least recently used at the tail. */
+  protected FrameList am;
+
+  /** Empty frames. */
+  protected FrameList empty;
+
+  /** Pids of pages recently evicted from A1in. */
+  protected GhostList a1out;
+
+  /** Set by pickVictim when the incoming pid was on A1out; the next pin of
+   * that frame puts it on Am. */
+  protected boolean[] ghosthit;
+
+  /** Number of frames A1in may use before it gives up its own pages. */
+  protected int kin;
+
+  /** Kin and Kout as set, relative to the number of frames, so that resizing
+   * keeps them without rounding errors piling up. */
+  protected double kinshare, koutshare;
+
+  /** Number of frames in the pool. */
+  protected int numframes;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a 2Q policy with the default queue sizes.
+   */
+  public TwoQ(BufMgr buf) {
+    this(buf, (int) (DEFAULT_KIN * buf.frametab.length),
+        (int) (DEFAULT_KOUT * buf.frametab.length));
+  }
+
+  /**
+   * Constructs a 2Q policy with the given queue sizes.
+   *
+   * @param kin number of frames A1in may use before it gives up its own pages
+   * @param kout number of pids remembered on A1out
+   * @throws IllegalArgumentException if kin or kout is negative
+   */
+  public TwoQ(BufMgr buf, int kin, int kout) {
+    if ((kin < 0) || (kout < 0)) {
+      throw new IllegalArgumentException("Invalid 2Q queue size");
+    }
+    this.buf = buf;
+    this.numframes = buf.frametab.length;
+    a1in = new FrameList(numframes);
+    am = new FrameList(numframes);
+    empty = new FrameList(numframes);
+    for (int i = 0; i < numframes; i++) {
+      empty.addLast(i);
+    }
+    a1out = new GhostList(kout);
+    ghosthit = new boolean[numframes];
+    this.kin = kin;
+    kinshare = (double) kin / numframes;
+    koutshare = (double) kout / numframes;
+  }
+
+  public synchronized void pin(int frameno) {
+    empty.remove(frameno);
+    if (ghosthit[frameno]) {
+      ghosthit[frameno] = false;
+      am.addFirst(frameno);
+    } else {
+      a1in.addFirst(frameno);
+    }
+  }
+
+  public synchronized void access(int frameno) {
+    if (am.contains(frameno)) {
+      am.moveToFirst(frameno);
+    }
+  }
+
+  public void unpin(int frameno) {
+  }
+
+  public synchronized void free(int frameno) {
+    a1in.remove(frameno);
+    am.remove(frameno);
+    ghosthit[frameno] = false;
+    if (!empty.contains(frameno)) {
+      empty.addLast(frameno);
+    }
+  }
+
+  /**
+   * Adds or forgets frames; Kin and Kout keep their share of the pool.
+   */
+  public synchronized void resize(int numframes) {
+    for (int frameno = numframes; frameno < this.numframes; frameno++) {
+      a1in.remove(frameno);
+      am.remove(frameno);
+      empty.remove(frameno);
+    }
+    a1in.resize(numframes);
+    am.resize(numframes);
+    empty.resize(numframes);
+    for (int frameno = this.numframes; frameno < numframes; frameno++) {
+      empty.addLast(frameno);
+    }
+    ghosthit = Arrays.copyOf(ghosthit, numframes);
+    this.numframes = numframes;
+    kin = (int) Math.round(kinshare * numframes);
+    a1out.setCapacity((int) Math.round(koutshare * numframes));
+  }
+
+  /**
+   * Picks an empty frame if there is one; otherwise the oldest unpinned page
+   * on A1in if A1in is over its share, and the least recently used unpinned
+   * page on Am if not.  Either list stands in for the other when all of its
+   * pages are pinned.  The incoming pid is looked up on A1out before the
+   * victim's pid goes on, since that could push it off a full A1out.
+   *
+   * @throws IllegalStateException if all frames are pinned
+   */
+  public synchronized int pickVictim(int pid) {
+
+    // an empty frame costs nothing
+    for (int frameno = empty.first(); frameno != FrameList.NONE;
+        frameno = empty.next(frameno)) {
+      if (buf.frametab[frameno].tryClaim()) {
+        empty.remove(frameno);
+        ghosthit[frameno] = a1out.remove(pid);
+        return frameno;
+      }
+    }
+
+    // take from A1in while it is over its share, else from Am
+    boolean fromA1in = (a1in.size() > kin) || (am.size() == 0);
+    int frameno = claimLast(fromA1in ? a1in : am);
+    if (frameno == FrameList.NONE) {
+      fromA1in = !fromA1in;
+      frameno = claimLast(fromA1in ? a1in : am);
+    }
+    if (frameno == FrameList.NONE) {
+      throw new IllegalStateException("All frames are pinned");
+    }
+
+    // remember pages that leave A1in, so a second miss finds them
+    ghosthit[frameno] = a1out.remove(pid);
+    if (fromA1in) {
+      a1out.add(buf.frametab[frameno].getPage_number());
+    }
+    return frameno;
+
+  } // public synchronized int pickVictim(int pid)
+
+  /**
+   * Lists the tail of the list pickVictim takes from now, then the tail of
+   * the other.
+   */
+  public synchronized int getNextVictims(int[] frames) {
+    boolean fromA1in = (a1in.size() > kin) || (am.size() == 0);
+    int n = (fromA1in ? a1in : am).copyFromTail(frames, 0);
+    return (fromA1in ? am : a1in).copyFromTail(frames, n);
+  }
+
+  /**
+   * Claims the unpinned frame nearest the tail of the given list, and removes
+   * it from the list.
+   *
+   * @return the claimed frame, or NONE if all are pinned
+   */
+  protected int claimLast(FrameList list) {
+    for (int frameno = list.last(); frameno != FrameList.NONE;
+        frameno = list.prev(frameno)) {
+      if (buf.frametab[frameno].tryClaim()) {
+        list.remove(frameno);
+        return frameno;
+      }
+    }
+    return FrameList.NONE;
+  }
+
+  /**
+   * Gets the number of frames A1in may use before it gives up its own pages.
+   */
+  public synchronized int getKin() {
+    return kin;
+  }
+
+  /**
+   * Sets the number of frames A1in may use before it gives up its own pages.
+   *
+   * @throws IllegalArgumentException if kin is negative
+   */
+  public synchronized void setKin(int kin) {
+    if (kin < 0) {
+      throw new IllegalArgumentException("Invalid 2Q queue size");
+    }
+    this.kin = kin;
+    kinshare = (double) kin / numframes;
+  }
+
+  /**
+   * Gets the number of pids remembered on A1out.
+   */
+  public synchronized int getKout() {
+    return a1out.capacity();
+  }
+
+  /**
+   * Sets the number of pids remembered on A1out.
+   *
+   * @throws IllegalArgumentException if kout is negative
+   */
+  public synchronized void setKout(int kout) {
+    if (kout < 0) {
+      throw new IllegalArgumentException("Invalid 2Q queue size");
+    }
+    a1out.setCapacity(kout);
+    koutshare = (double) kout / numframes;
+  }
+
+  /**
+   * Gets the number of frames currently on A1in.
+   */
+  public synchronized int getA1inSize() {
+    return a1in.size();
+  }
+
+  /**
+   * Gets the number of pids currently on A1out.
+   */
+  public synchronized int getA1outSize() {
+    return a1out.size();
+  }
+
+  /**
+   * Gets the number of frames currently on Am.
+   */
+  public synchronized int getAmSize() {
+    return am.size();
+  }
+
+} // public class TwoQ implements ReplacementPolicy
@@ -0,0 +1,375 @@
+package diskmgr;
+
+import global.GlobalConst;
+import global.Page;
+import global.PageId;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous page I/O for a disk manager.  Reads and writes are submitted
+ * for page ids and complete later, on one of a few I/O threads, through a
+ * CompletableFuture of the page.  Pending requests are kept sorted by pid,
+ * and the I/O threads take them in elevator order: each takes the next pid
+ * at or after the last one taken, wrapping around to the lowest (C-SCAN), so
+ * the file is swept in one direction.  A request is merged with pending
+ * requests of the same kind for the pids right after it, up to MAX_MERGE
+ * pages, into one scatter read or gather write.<br><br>
+ *
+ * At most the queue depth of requests are pending or in flight; submitting
+ * more waits for one to complete.  Requests for the same pid complete in the
+ * order they were submitted, and never run at once, so a read submitted
+ * after a write of the same page sees what was written.  A page must not be
+ * touched between its submission and its completion.  A request for an
+ * invalid pid is refused when submitted; an I/O error halts the system, as
+ * it does in the disk manager.
+ */
+public class AsyncIO implements GlobalConst {
+
+  /** Default number of I/O threads. */
+  public static final int DEFAULT_THREADS = 4;
+
+  /** Default number of requests pending or in flight at once. */
+  public static final int DEFAULT_DEPTH = 64;
+
+  /** Most requests merged into one transfer. */
+  public static final int MAX_MERGE = 32;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * A read or write of one page.
+   */
+  protected static class Request {
+
+    /** The page to read or write. */
+    final int pid;
+
+    /** True for a write. */
+    final boolean write;
+
+    /** The page's memory. */
+    final Page page;
+
+    /** Completed with the page once it is read or written. */
+    final CompletableFuture<Page> done = new CompletableFuture<Page>();
+
+    Request(int pid, boolean write, Page page) {
+      this.pid = pid;
+      this.write = write;
+      this.page = page;
+    }
+
+  } // protected static class Request
+
+  // --------------------------------------------------------------------------
+
+  /** The disk manager doing the I/O. */
+  protected DiskMgr disk;
+
+  /** Most requests pending or in flight at once. */
+  protected int depth;
+
+  /** The pending requests, keyed by pid then submission order. */
+  protected TreeMap<Long, Request> pending = new TreeMap<Long, Request>();
+
+  /** The pids of the requests in flight. */
+  protected Set<Integer> inflight = new HashSet<Integer>();
+
+  /** Number of requests pending or in flight. */
+  protected int outstanding;
+
+  /** Submission counter, to order requests for the same pid. */
+  protected long sequence;
+
+  /** Where the elevator is: the pid after the last one taken. */
+  protected int head;
+
+  /** Number of transfers done, and of requests they served. */
+  protected long transfers, completed;
+
+  /** Cleared to stop the I/O threads. */
+  protected boolean running = true;
+
+  /** The I/O threads. */
+  protected Thread[] threads;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Starts the given number of I/O threads for the given disk manager.
+   *
+   * @param depth the most requests pending or in flight at once
+   * @throws IllegalArgumentException if threads or depth is less than 1
+   */
+  public AsyncIO(DiskMgr disk, int threads, int depth) {
+    if ((threads < 1) || (depth < 1)) {
+      throw new IllegalArgumentException("Invalid I/O threads or depth");
+    }
+    this.disk = disk;
+    this.depth = depth;
+    this.threads = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      this.threads[i] = new Thread(this::serve, "AsyncIO-" + i);
+      this.threads[i].setDaemon(true);
+      this.threads[i].start();
+    }
+  }
+
+  /**
+   * Submits a read of the given page into the given memory.
+   *
+   * @return completed with mempage once it holds the page
+   * @throws IllegalArgumentException if pageno is invalid
+   * @throws IllegalStateException if the engine is shut down
+   */
+  public CompletableFuture<Page> read(PageId pageno, Page mempage) {
+    return submit(pageno.pid, false, new Page[] {mempage}).get(0);
+  }
+
+  /**
+   * Submits a write of the given memory to the given page.
+   *
+   * @return completed with mempage once it is written
+   * @throws IllegalArgumentException if pageno is invalid
+   * @throws IllegalStateException if the engine is shut down
+   */
+  public CompletableFuture<Page> write(PageId pageno, Page mempage) {
+    return submit(pageno.pid, true, new Page[] {mempage}).get(0);
+  }
+
+  /**
+   * Submits reads of a run of consecutive pages, all queued at once so that
+   * they can be merged.
+   *
+   * @return one future per page, completed with its memory
+   * @throws IllegalArgumentException if the run is invalid
+   * @throws IllegalStateException if the engine is shut down
+   */
+  public List<CompletableFuture<Page>> read(PageId firstid, Page[] mempages) {
+    return submit(firstid.pid, false, mempages);
+  }
+
+  /**
+   * Submits writes of a run of consecutive pages, all queued at once so that
+   * they can be merged.
+   *
+   * @return one future per page, completed with its memory
+   * @throws IllegalArgumentException if the run is invalid
+   * @throws IllegalStateException if the engine is shut down
+   */
+  public List<CompletableFuture<Page>> write(PageId firstid,
+      Page[] mempages) {
+    return submit(firstid.pid, true, mempages);
+  }
+
+  /**
+   * Queues requests for a run of pages, waiting while the queue is too full
+   * for them; a run longer than the depth waits for an empty queue.
+   */
+  protected synchronized List<CompletableFuture<Page>> submit(int firstpid,
+      boolean write, Page[] pages) {
+
+    if ((pages.length < 1) || (firstpid < 0)
+        || (firstpid > disk.getNumDBPages() - pages.length)) {
+      throw new IllegalArgumentException(
+          "Invalid page " + ((pages.length == 1) ? "number" : "run") + "; "
+          + (write ? "write" : "read") + " aborted");
+    }
+    boolean interrupted = false;
+    while (running && (outstanding > 0)
+        && (outstanding + pages.length > depth)) {
+      try {
+        wait();
+      } catch (InterruptedException exc) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (!running) {
+      throw new IllegalStateException("Asynchronous I/O is shut down");
+    }
+    List<CompletableFuture<Page>> futures =
+        new ArrayList<CompletableFuture<Page>>(pages.length);
+    for (int i = 0; i < pages.length; i++) {
+      Request req = new Request(firstpid + i, write, pages[i]);
+      pending.put(((long) req.pid << 32) | (sequence++ & 0xFFFFFFFFL), req);
+      futures.add(req.done);
+    }
+    outstanding += pages.length;
+    notifyAll();
+    return futures;
+
+  } // protected synchronized List<CompletableFuture<Page>> submit(...)
+
+  /**
+   * Takes the next run of requests in elevator order, waiting for one.
+   *
+   * @return the requests, for consecutive pids, or null once shut down
+   */
+  protected synchronized List<Request> take() {
+
+    while (true) {
+
+      // find the first pid at or after the head that is not in flight,
+      // wrapping around once
+      Map.Entry<Long, Request> entry = next((long) head << 32);
+      if (entry == null) {
+        entry = next(0);
+      }
+      if (entry != null) {
+
+        // take it, and the requests of the same kind for the pids after it
+        List<Request> run = new ArrayList<Request>();
+        Request req = entry.getValue();
+        do {
+          pending.remove(entry.getKey());
+          inflight.add(req.pid);
+          run.add(req);
+          entry = pending.ceilingEntry((long) (req.pid + 1) << 32);
+          if ((entry == null) || (entry.getValue().pid != req.pid + 1)
+              || (entry.getValue().write != req.write)
+              || inflight.contains(req.pid + 1)) {
+            break;
+          }
+          req = entry.getValue();
+        } while (run.size() < MAX_MERGE);
+        // req may be the next request, left pending when the run filled up
+        head = run.get(run.size() - 1).pid + 1;
+        return run;
+      }
+      if (!running && pending.isEmpty()) {
+        return null;
+      }
+      try {
+        wait();
+      } catch (InterruptedException exc) {
+        // shutdown() clears running first
+      }
+
+    } // while
+
+  } // protected synchronized List<Request> take()
+
+  /**
+   * Finds the first pending request from the given key on whose pid is not
+   * in flight; only the earliest request for a pid can be taken.
+   */
+  protected Map.Entry<Long, Request> next(long from) {
+    Map.Entry<Long, Request> entry = pending.ceilingEntry(from);
+    while ((entry != null) && inflight.contains(entry.getValue().pid)) {
+      // skip the pid's other requests
+      entry = pending.ceilingEntry((long) (entry.getValue().pid + 1) << 32);
+    }
+    return entry;
+  }
+
+  /**
+   * Runs requests until shut down; the body of each I/O thread.
+   */
+  protected void serve() {
+    List<Request> run;
+    while ((run = take()) != null) {
+
+      // one transfer for the whole run
+      Request first = run.get(0);
+      PageId firstid = new PageId(first.pid);
+      RuntimeException error = null;
+      try {
+        if (run.size() == 1) {
+          if (first.write) {
+            disk.write_page(firstid, first.page);
+          } else {
+            disk.read_page(firstid, first.page);
+          }
+        } else {
+          Page[] pages = new Page[run.size()];
+          for (int i = 0; i < pages.length; i++) {
+            pages[i] = run.get(i).page;
+          }
+          if (first.write) {
+            disk.write_pages(firstid, pages);
+          } else {
+            disk.read_pages(firstid, pages);
+          }
+        }
+      } catch (RuntimeException exc) {
+        error = exc;
+      }
+
+      // let the pids go before completing, so that a callback can submit
+      // another request for them
+      synchronized (this) {
+        for (Request req : run) {
+          inflight.remove(req.pid);
+        }
+        outstanding -= run.size();
+        transfers++;
+        completed += run.size();
+        notifyAll();
+      }
+      for (Request req : run) {
+        if (error == null) {
+          req.done.complete(req.page);
+        } else {
+          req.done.completeExceptionally(error);
+        }
+      }
+
+    } // while
+  }
+
+  /**
+   * Gets the number of requests pending or in flight.
+   */
+  public synchronized int getOutstanding() {
+    return outstanding;
+  }
+
+  /**
+   * Gets the number of transfers done; merged requests share one.
+   */
+  public synchronized long getTransfers() {
+    return transfers;
+  }
+
+  /**
+   * Gets the number of requests completed.
+   */
+  public synchronized long getCompleted() {
+    return completed;
+  }
+
+  /**
+   * Waits for the requests submitted so far to complete, then stops the
+   * I/O threads.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      running = false;
+      notifyAll();
+    }
+    boolean interrupted = false;
+    for (Thread thread : threads) {
+      while (thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+} // public class AsyncIO implements GlobalConst
@@ -43,7 +43,7 @@ class DBHeaderPage extends Page {
    * Constructor that wraps an existing header page.
    */
   public DBHeaderPage(Page page) {
-    super(page.getData());
+    super(page);
   }
 
   /**
@@ -0,0 +1,269 @@
+package diskmgr;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A disk manager that reads and writes the database file with direct I/O
+ * (O_DIRECT), bypassing the OS page cache, so that pages are cached once, in
+ * the buffer pool, rather than twice.  Direct I/O must move whole file
+ * system blocks between block-aligned memory and block-aligned offsets, so
+ * every transfer goes through an aligned scratch buffer that covers the
+ * blocks under the pages; each thread keeps its own.  A run of pages is one
+ * transfer.<br><br>
+ *
+ * When pages are smaller than blocks (PAGE_SIZE is 1 KB, and most file
+ * systems use 4 KB blocks), writing a page means reading its block, putting
+ * the page in it, and writing the block back.  The block is locked meanwhile,
+ * so that writes of neighboring pages don't undo each other.  A write that
+ * covers whole blocks locks them too, or a partial write could read a
+ * block before it and write the old bytes back after it.  Readers are not
+ * locked, since a write never changes the bytes of pages it isn't
+ * writing.  Such writes cost an extra read, so direct I/O pays off with
+ * pages at least as large as the block, and pools large enough to hold the
+ * working set.  The file system must support O_DIRECT (tmpfs doesn't).
+ */
+public class DirectDiskMgr extends DiskMgr {
+
+  /** Number of locks that written blocks are striped over. */
+  protected static final int BLOCK_LOCKS = 64;
+
+  /** Largest scratch buffer a thread keeps between transfers. */
+  protected static final int MAX_SCRATCH = 1 << 20;
+
+  // --------------------------------------------------------------------------
+
+  /** The file system's block size; transfers are aligned to it. */
+  protected int blocksize;
+
+  /** Locks for written blocks, by block number. */
+  protected final ReentrantLock[] blocklocks = new ReentrantLock[BLOCK_LOCKS];
+
+  /** Each thread's aligned scratch buffer. */
+  protected final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<>();
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a disk manager that uses direct I/O.
+   */
+  public DirectDiskMgr() {
+    for (int i = 0; i < blocklocks.length; i++) {
+      blocklocks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Opens the OS file for direct I/O, and learns its block size.
+   */
+  protected FileChannel open(File DBfile) throws IOException {
+    FileChannel channel = FileChannel.open(DBfile.toPath(),
+        StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, ExtendedOpenOption.DIRECT);
+    blocksize = (int) Files.getFileStore(DBfile.toPath()).getBlockSize();
+    return channel;
+  }
+
+  /**
+   * Tells whether the file system holding the given directory supports
+   * direct I/O, by opening a scratch file there.
+   */
+  public static boolean isSupported(File dir) {
+    try {
+      File probe = File.createTempFile("direct", ".probe", dir);
+      try {
+        FileChannel.open(probe.toPath(), StandardOpenOption.READ,
+            ExtendedOpenOption.DIRECT).close();
+        return true;
+      } finally {
+        probe.delete();
+      }
+    } catch (IOException | UnsupportedOperationException exc) {
+      return false;
+    }
+  }
+
+  /**
+   * Gets the block size of the database's file system.
+   */
+  public int getBlockSize() {
+    return blocksize;
+  }
+
+  /**
+   * Gets the calling thread's scratch buffer, aligned and cleared, with at
+   * least the given number of bytes remaining.
+   */
+  protected ByteBuffer scratch(int length) {
+    ByteBuffer buf = scratch.get();
+    if ((buf == null) || (buf.capacity() < length)) {
+      buf = ByteBuffer.allocateDirect(length + blocksize)
+          .alignedSlice(blocksize);
+      if (length <= MAX_SCRATCH) {
+        scratch.set(buf);
+      }
+    }
+    buf.clear();
+    buf.limit(length);
+    return buf;
+  }
+
+  /**
+   * Reads whole blocks from the given aligned offset until the buffer is
+   * full.  Blocks past the end of the file read as zeros.
+   */
+  protected void readBlocks(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      int n = fc.read(buf, offset);
+      if (n < 0) {
+        while (buf.hasRemaining()) {
+          buf.put((byte) 0);
+        }
+        return;
+      }
+      offset += n;
+    }
+  }
+
+  /**
+   * Reads from the OS file at the given offset until the buffer is full.
+   */
+  protected void readFully(ByteBuffer buf, long offset) throws IOException {
+    readRun(new ByteBuffer[] {buf}, offset);
+  }
+
+  /**
+   * Writes the whole buffer to the OS file at the given offset.
+   */
+  protected void writeFully(ByteBuffer buf, long offset) throws IOException {
+    writeRun(new ByteBuffer[] {buf}, offset);
+  }
+
+  /**
+   * Reads the blocks under the buffers in one transfer, and copies them out.
+   */
+  protected void readRun(ByteBuffer[] bufs, long offset) throws IOException {
+
+    // read the blocks
+    long length = 0;
+    for (ByteBuffer buf : bufs) {
+      length += buf.remaining();
+    }
+    long start = offset - offset % blocksize;
+    long end = (offset + length + blocksize - 1) / blocksize * blocksize;
+    ByteBuffer blocks = scratch((int) (end - start));
+    readBlocks(blocks, start);
+
+    // copy out the pages
+    blocks.position((int) (offset - start));
+    for (ByteBuffer buf : bufs) {
+      blocks.limit(blocks.position() + buf.remaining());
+      buf.put(blocks);
+    }
+
+  } // protected void readRun(ByteBuffer[] bufs, long offset)
+
+  /**
+   * Copies the buffers into the blocks under them, and writes those in one
+   * transfer.  Every block is locked until it is written, and a block the
+   * buffers cover only partly is read first.
+   */
+  protected void writeRun(ByteBuffer[] bufs, long offset) throws IOException {
+
+    long length = 0;
+    for (ByteBuffer buf : bufs) {
+      length += buf.remaining();
+    }
+    long start = offset - offset % blocksize;
+    long end = (offset + length + blocksize - 1) / blocksize * blocksize;
+    int span = (int) (end - start);
+    ByteBuffer blocks = scratch(span);
+
+    // only the first and last blocks can be partly covered
+    boolean head = (start != offset);
+    boolean tail = (end != offset + length);
+    int first = lockOf(start);
+    int count = Math.min(span / blocksize, BLOCK_LOCKS);
+    lockBlocks(first, count);
+    try {
+      if (head) {
+        blocks.limit(blocksize);
+        readBlocks(blocks, start);
+      }
+      if (tail && ((span > blocksize) || !head)) {
+        blocks.limit(span);
+        blocks.position(span - blocksize);
+        readBlocks(blocks, end - blocksize);
+      }
+      fillBlocks(blocks, span, bufs, (int) (offset - start));
+      writeBlocks(blocks, start);
+    } finally {
+      unlockBlocks(first, count);
+    }
+
+  } // protected void writeRun(ByteBuffer[] bufs, long offset)
+
+  /**
+   * Copies the buffers into the first span bytes of the scratch blocks at the
+   * given position, and readies the blocks to be written.
+   */
+  protected void fillBlocks(ByteBuffer blocks, int span, ByteBuffer[] bufs,
+      int at) {
+    blocks.limit(span);
+    blocks.position(at);
+    for (ByteBuffer buf : bufs) {
+      blocks.put(buf);
+    }
+    blocks.position(0);
+  }
+
+  /**
+   * Writes whole blocks at the given aligned offset.
+   */
+  protected void writeBlocks(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      offset += fc.write(buf, offset);
+    }
+  }
+
+  /**
+   * Takes the given number of block locks, from the given one on and around
+   * the stripe.  They are taken in lock number order, whatever the first
+   * block, so two writes never wait on each other in a cycle.
+   */
+  protected void lockBlocks(int first, int count) {
+    for (int i = 0; i < first + count - BLOCK_LOCKS; i++) {
+      blocklocks[i].lock();
+    }
+    for (int i = first; i < Math.min(first + count, BLOCK_LOCKS); i++) {
+      blocklocks[i].lock();
+    }
+  }
+
+  /**
+   * Lets go of the block locks taken by lockBlocks.
+   */
+  protected void unlockBlocks(int first, int count) {
+    for (int i = first; i < Math.min(first + count, BLOCK_LOCKS); i++) {
+      blocklocks[i].unlock();
+    }
+    for (int i = 0; i < first + count - BLOCK_LOCKS; i++) {
+      blocklocks[i].unlock();
+    }
+  }
+
+  /**
+   * Gets the number of the lock for the block at the given offset.
+   */
+  protected int lockOf(long offset) {
+    return (int) ((offset / blocksize) % BLOCK_LOCKS);
+  }
+
+} // public class DirectDiskMgr extends DiskMgr
@@ -7,7 +7,11 @@ import global.PageId;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <h3>Minibase Disk Manager</h3>
@@ -21,7 +25,15 @@ import java.io.RandomAccessFile;
  * <li>Groups of pages may be organized as a file, by a higher layer.
  * </ol>
  * The disk manager manages a library of entries consisting of the name of
- * a file and the page number of the first page in the file.
+ * a file and the page number of the first page in the file.<br><br>
+ *
+ * Page reads and writes may come from several threads at once (i.e. from a
+ * shared buffer manager).  Single pages are read and written at their
+ * offsets (pread and pwrite), without moving a shared file pointer, so they
+ * run in parallel; runs of pages use the channel's position, and are
+ * serialized with each other.  Allocation is serialized on the disk manager
+ * itself.  An AsyncIO engine (see startAsyncIO) can do the reads and writes
+ * on a few I/O threads instead, so that callers keep many of them in flight.
   */
 public class DiskMgr implements GlobalConst {
 
@@ -34,17 +46,29 @@ public class DiskMgr implements GlobalConst {
    * This is the name of that file. */
   protected String name;
 
-  /** Reference to the OS file. */
-  protected RandomAccessFile fp;
+  /** Channel to the OS file. */
+  protected FileChannel fc;
+
+  /** Held while a run of pages is read or written at the channel's
+   * position. */
+  protected final Object runlock = new Object();
   
   /** Database size, in pages. */
   protected int num_db_pages;
 
   /** Number of disk page reads since database construction. */
-  protected int read_cnt;
+  protected final LongAdder read_cnt = new LongAdder();
 
   /** Number of disk page writes since database construction. */
-  protected int write_cnt;
+  protected final LongAdder write_cnt = new LongAdder();
+
+  /** Ids of the library pages after the first page, as they are found, in
+   * order; a page leaves when it is deallocated.  The array is replaced, not
+   * changed, so that isMetadataPage can search it without a lock. */
+  protected volatile int[] dirpages = new int[0];
+
+  /** The asynchronous I/O engine, or null if there is none. */
+  protected volatile AsyncIO aio;
 
   // ------Manage the DB--------------------
 
@@ -65,9 +89,8 @@ public class DiskMgr implements GlobalConst {
 
     // create the database file, num_pages pages long
     try {
-      fp = new RandomAccessFile(fname, "rw");
-      fp.seek((long) (num_db_pages * PAGE_SIZE - 1));
-      fp.writeByte(0);
+      fc = open(DBfile);
+      writeFully(ByteBuffer.allocate(1), (long) num_db_pages * PAGE_SIZE - 1);
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
@@ -75,7 +98,7 @@ public class DiskMgr implements GlobalConst {
     // create and initialize the first DB page
     PageId pageId = new PageId(FIRST_PAGEID);
     DBFirstPage firstpg = new DBFirstPage();
-    Minibase.BufferManager.pinPage(pageId, firstpg, PIN_MEMCPY);
+    Minibase.BufferManager.pinPage(pageId, firstpg, PIN_ADOPT);
     firstpg.setNumDBPages(num_db_pages);
     Minibase.BufferManager.unpinPage(pageId, UNPIN_DIRTY);
 
@@ -96,8 +119,11 @@ public class DiskMgr implements GlobalConst {
     File DBfile = new File(name);
     if (!DBfile.exists())
     	throw new IllegalStateException("File "+name+" does not exist\n");
+    // the page count is on the first page; until it is read, let the file's
+    // size stand in for it
     try {
-      fp = new RandomAccessFile(fname, "rw");
+      fc = open(DBfile);
+      num_db_pages = (int) Math.min(fc.size() / PAGE_SIZE, Integer.MAX_VALUE);
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
@@ -114,19 +140,90 @@ public class DiskMgr implements GlobalConst {
 
   } // public void openDB(String fname)
 
+  /**
+   * Opens the OS file for reading and writing, creating it if need be.
+   */
+  protected FileChannel open(File DBfile) throws IOException {
+    return FileChannel.open(DBfile.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+  }
+
+  /**
+   * Forces the pages written so far out to the storage device, so that they
+   * survive a crash of the machine; the buffer manager calls this at the end
+   * of flushAllFrames.
+   */
+  public void force() {
+    try {
+      fc.force(false);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+  }
+
   /**
    * Close the database file.  Ensure that buffer contents have been
    * written to disk and close the OS file.
    */
   public void closeDB() {
     try {
+      Minibase.BufferManager.stopCleaner();
       Minibase.BufferManager.flushAllFrames();
-      fp.close();
+      stopAsyncIO();
+      Minibase.BufferManager.unregisterMBean();
+      fc.close();
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
   }
 
+  /**
+   * Starts an asynchronous I/O engine with the default number of threads and
+   * queue depth.
+   */
+  public void startAsyncIO() {
+    startAsyncIO(AsyncIO.DEFAULT_THREADS, AsyncIO.DEFAULT_DEPTH);
+  }
+
+  /**
+   * Starts an asynchronous I/O engine for the database, which the buffer
+   * manager then uses for its misses, read-ahead, prefetches and background
+   * cleaning; closeDB stops it.
+   * 
+   * @param threads number of I/O threads
+   * @param depth most requests pending or in flight at once
+   * @throws IllegalArgumentException if threads or depth is less than 1
+   * @throws IllegalStateException if an engine is already running
+   */
+  public synchronized void startAsyncIO(int threads, int depth) {
+    if (aio != null) {
+      throw new IllegalStateException("Asynchronous I/O already running");
+    }
+    aio = new AsyncIO(this, threads, depth);
+  }
+
+  /**
+   * Stops the asynchronous I/O engine, if there is one, once the requests
+   * submitted to it are done.
+   */
+  public void stopAsyncIO() {
+    AsyncIO engine;
+    synchronized (this) {
+      engine = aio;
+      aio = null;
+    }
+    if (engine != null) {
+      engine.shutdown();
+    }
+  }
+
+  /**
+   * Gets the asynchronous I/O engine, or null if there is none.
+   */
+  public AsyncIO getAsyncIO() {
+    return aio;
+  }
+
   /**
    * Destroy the database, removing the file that stores it.
    */
@@ -152,11 +249,10 @@ public class DiskMgr implements GlobalConst {
       throw new IllegalArgumentException("Invalid page number; read aborted");
     }
 
-    // seek to the correct page on disk and read it
+    // read the page at its offset, straight into the page's memory
     try {
-      fp.seek((long) (pageno.pid * PAGE_SIZE));
-      fp.read(mempage.getData());
-      read_cnt++;
+      readFully(mempage.getBuffer(), (long) pageno.pid * PAGE_SIZE);
+      read_cnt.increment();
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
@@ -177,28 +273,195 @@ public class DiskMgr implements GlobalConst {
       throw new IllegalArgumentException("Invalid page number; write aborted");
     }
 
-    // seek to the correct page on disk and write it
+    // write the page at its offset, straight from the page's memory
     try {
-      fp.seek((long) (pageno.pid * PAGE_SIZE));
-      fp.write(mempage.getData());
-      write_cnt++;
+      writeFully(mempage.getBuffer(), (long) pageno.pid * PAGE_SIZE);
+      write_cnt.increment();
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
 
   } // public void write_page(PageId pageno, Page mempage)
+
+  /**
+   * Reads a run of consecutive pages from disk with one scatter read.  Each
+   * page counts as one read.
+   * 
+   * @param firstid identifies the first page to read
+   * @param mempages output parameters to hold the contents of the pages
+   * @throws IllegalArgumentException if the run is invalid
+   */
+  public void read_pages(PageId firstid, Page[] mempages) {
+
+    // validate the run
+    if ((firstid.pid < 0)
+        || ((long) firstid.pid + mempages.length > num_db_pages)) {
+      throw new IllegalArgumentException("Invalid page run; read aborted");
+    }
+
+    // scatter the run straight into the pages' buffers
+    ByteBuffer[] bufs = new ByteBuffer[mempages.length];
+    for (int i = 0; i < bufs.length; i++) {
+      bufs[i] = mempages[i].getBuffer();
+    }
+    try {
+      readRun(bufs, (long) firstid.pid * PAGE_SIZE);
+      read_cnt.add(mempages.length);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void read_pages(PageId firstid, Page[] mempages)
+
+  /**
+   * Writes a run of consecutive pages to disk with one gather write.  Each
+   * page counts as one write.
+   * 
+   * @param firstid identifies the first page to write
+   * @param mempages hold the contents of the pages, in order
+   * @throws IllegalArgumentException if the run is invalid
+   */
+  public void write_pages(PageId firstid, Page[] mempages) {
+
+    // validate the run
+    if ((firstid.pid < 0)
+        || ((long) firstid.pid + mempages.length > num_db_pages)) {
+      throw new IllegalArgumentException("Invalid page run; write aborted");
+    }
+
+    // gather the pages straight from their buffers
+    ByteBuffer[] bufs = new ByteBuffer[mempages.length];
+    for (int i = 0; i < bufs.length; i++) {
+      bufs[i] = mempages[i].getBuffer();
+    }
+    try {
+      writeRun(bufs, (long) firstid.pid * PAGE_SIZE);
+      write_cnt.add(mempages.length);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void write_pages(PageId firstid, Page[] mempages)
+
+  /**
+   * Reads from the OS file at the given offset into the buffers, in order,
+   * until they are full.  Bytes past the end of the file read as zeros.
+   */
+  protected void readRun(ByteBuffer[] bufs, long offset) throws IOException {
+    synchronized (runlock) {
+      fc.position(offset);
+      int last = bufs.length - 1;
+      while (bufs[last].hasRemaining()) {
+        if (fc.read(bufs) < 0) {
+          // past the end of the file; the rest reads as zeros
+          for (ByteBuffer buf : bufs) {
+            while (buf.hasRemaining()) {
+              buf.put((byte) 0);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the buffers to the OS file at the given offset, in order.
+   */
+  protected void writeRun(ByteBuffer[] bufs, long offset) throws IOException {
+    long remaining = 0;
+    for (ByteBuffer buf : bufs) {
+      remaining += buf.remaining();
+    }
+    synchronized (runlock) {
+      fc.position(offset);
+      while (remaining > 0) {
+        remaining -= fc.write(bufs);
+      }
+    }
+  }
+
+  /**
+   * Reads from the OS file at the given offset until the buffer is full.
+   * Bytes past the end of the file read as zeros.
+   */
+  protected void readFully(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      int n = fc.read(buf, offset);
+      if (n < 0) {
+        while (buf.hasRemaining()) {
+          buf.put((byte) 0);
+        }
+        return;
+      }
+      offset += n;
+    }
+  }
+
+  /**
+   * Writes the whole buffer to the OS file at the given offset.
+   */
+  protected void writeFully(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      offset += fc.write(buf, offset);
+    }
+  }
   
+  /**
+   * Gets the number of pages in the database.
+   */
+  public int getNumDBPages() {
+    return num_db_pages;
+  }
+
+  /**
+   * True if the given page holds the disk manager's own metadata: the first
+   * page, the space map, or a page of the file library.  Library pages are
+   * known from the time the library is first walked to them, which is before
+   * they are pinned, so a buffer manager can route them by this test.
+   */
+  public boolean isMetadataPage(int pid) {
+    int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
+    return ((pid >= 0) && (pid <= num_map_pages))
+        || (Arrays.binarySearch(dirpages, pid) >= 0);
+  }
+
+  /**
+   * Remembers that the given page is part of the file library.  A page seen
+   * for the first time may already be cached where other pages go, so the
+   * buffer manager is told to move it (see BufMgr.reroute).
+   */
+  protected void noteDirectoryPage(PageId pageno) {
+    if ((pageno.pid == INVALID_PAGEID)
+        || (Arrays.binarySearch(dirpages, pageno.pid) >= 0)) {
+      return;
+    }
+    synchronized (this) {
+      int[] pages = dirpages;
+      int i = Arrays.binarySearch(pages, pageno.pid);
+      if (i >= 0) {
+        return;
+      }
+      i = -i - 1;
+      int[] newpages = new int[pages.length + 1];
+      System.arraycopy(pages, 0, newpages, 0, i);
+      newpages[i] = pageno.pid;
+      System.arraycopy(pages, i, newpages, i + 1, pages.length - i);
+      dirpages = newpages;
+    }
+    Minibase.BufferManager.reroute(pageno);
+  }
+
   /**
    * Gets the number of disk reads since database construction.
    */
   public int getReadCount() {
-    return read_cnt;
+    return read_cnt.intValue();
   }
   /**
    * Gets the number of disk writes since database construction.
    */
   public int getWriteCount() {
-    return write_cnt;
+    return write_cnt.intValue();
   }
 
 //-----Manage allocation and deallocation of pages -------------------
@@ -212,7 +475,7 @@ public class DiskMgr implements GlobalConst {
    * @throws IllegalStateException if there is no room for a run
    * of that length
    */
-  public PageId allocate_page(int run_size) {
+  public synchronized PageId allocate_page(int run_size) {
 
     // validate the run size
     if ((run_size < 1) || (run_size > num_db_pages)) {
@@ -241,7 +504,6 @@ public class DiskMgr implements GlobalConst {
       // Walk the page looking for a sequence of 0 bits of the appropriate
       // length. The outer loop steps through the page's bytes, the inner
       // one steps through each byte's bits.
-      byte[] pagebuf = apage.getData();
       for (int byteptr = 0; num_bits_this_page > 0
           && current_run_length < run_size; byteptr++) {
 
@@ -255,7 +517,7 @@ public class DiskMgr implements GlobalConst {
             && (current_run_length < run_size)) {
 
           // if a 1 is found
-          if ((pagebuf[byteptr] & tmpmask) != 0) {
+          if ((apage.getByteValue(byteptr) & tmpmask) != 0) {
             current_run_start += current_run_length + 1;
             current_run_length = 0;
           } else {
@@ -308,7 +570,7 @@ public class DiskMgr implements GlobalConst {
    * @param run_size number of pages to deallocate
    * @throws IllegalArgumentException if firstid or run_size is invalid
    */
-  public void deallocate_page(PageId firstid, int run_size) {
+  public synchronized void deallocate_page(PageId firstid, int run_size) {
 
     // validate the page id
     if ((firstid.pid < 0) || (firstid.pid >= num_db_pages)) {
@@ -321,8 +583,19 @@ public class DiskMgr implements GlobalConst {
       throw new IllegalArgumentException("Invalid run size; deallocate aborted");
     }
 
-    // update the space map
+    // update the space map, and forget any library pages in the run
     set_bits(firstid, run_size, 0);
+    int[] pages = dirpages;
+    int lo = Arrays.binarySearch(pages, firstid.pid);
+    int hi = Arrays.binarySearch(pages, firstid.pid + run_size);
+    lo = (lo < 0) ? -lo - 1 : lo;
+    hi = (hi < 0) ? -hi - 1 : hi;
+    if (lo < hi) {
+      int[] newpages = new int[pages.length - (hi - lo)];
+      System.arraycopy(pages, 0, newpages, 0, lo);
+      System.arraycopy(pages, hi, newpages, lo, pages.length - hi);
+      dirpages = newpages;
+    }
 
   } // public void deallocate_page(PageId firstid, int run_size)
 
@@ -361,10 +634,9 @@ public class DiskMgr implements GlobalConst {
       }
 
       // walk the page looking for 1 bits
-      byte[] pagebuf = apage.getData();
       for (int pgptr = 0; num_bits_this_page > 0; pgptr++) { // start forloop02
         for (int mask = 1; mask < 256 && num_bits_this_page > 0; mask = (mask << 1), --num_bits_this_page, ++bit_number) {
-          int bit = pagebuf[pgptr] & mask;
+          int bit = apage.getByteValue(pgptr) & mask;
           if (bit != 0) {
             count++;
           }
@@ -415,14 +687,13 @@ public class DiskMgr implements GlobalConst {
       // length. The outer loop steps through the page's bytes, the inner
       // one steps through each byte's bits.
       int pgptr = 0;
-      byte[] pagebuf = apage.getData();
       int mask;
       for (; num_bits_this_page > 0; pgptr++) { // start forloop02
 
         for (mask = 1; mask < 256 && num_bits_this_page > 0; mask = (mask << 1), --num_bits_this_page, ++bit_number) {
           // start forloop03
 
-          int bit = pagebuf[pgptr] & mask;
+          int bit = apage.getByteValue(pgptr) & mask;
           if ((bit_number % 10) == 0) {
             if ((bit_number % 50) == 0) {
               if (bit_number > 0) {
@@ -470,7 +741,6 @@ public class DiskMgr implements GlobalConst {
       // pin the space-map page
       Page pg = new Page();
       Minibase.BufferManager.pinPage(pgid, pg, PIN_DISKIO);
-      byte[] pgbuf = pg.getData();
 
       // locate the piece of the run that fits on this page
       int first_byte_no = first_bit_no / 8;
@@ -500,13 +770,13 @@ public class DiskMgr implements GlobalConst {
         byte bytemask = mask.byteValue();
 
         if (value == 1) {
-          temp = (pgbuf[cur_posi] | bytemask);
+          temp = (pg.getByteValue(cur_posi) | bytemask);
           intmask = new Integer(temp);
-          pgbuf[cur_posi] = intmask.byteValue();
+          pg.setByteValue(intmask.byteValue(), cur_posi);
         } else {
-          temp = pgbuf[cur_posi] & (255 ^ bytemask);
+          temp = pg.getByteValue(cur_posi) & (255 ^ bytemask);
           intmask = new Integer(temp);
-          pgbuf[cur_posi] = intmask.byteValue();
+          pg.setByteValue(intmask.byteValue(), cur_posi);
         }
         run_size -= num_bits_this_byte;
 
@@ -546,7 +816,8 @@ public class DiskMgr implements GlobalConst {
           "File entry already exists; add entry aborted");
     }
 
-    // search the header pages for the entry slot
+    // search the header pages for the entry slot, latching each exclusive
+    // so that concurrent adds take different slots
     boolean found = false;
     int free_slot = 0;
     DBHeaderPage hpage = new DBHeaderPage();
@@ -557,8 +828,9 @@ public class DiskMgr implements GlobalConst {
 
       // pin the next header page and get its next
       hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO);
+      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO, LATCH_EXCLUSIVE);
       nexthpid = hpage.getNextPage();
+      noteDirectoryPage(nexthpid);
 
       // search the header page for an empty entry
       int entry = 0;
@@ -576,7 +848,7 @@ public class DiskMgr implements GlobalConst {
         found = true;
       } else if (nexthpid.pid != INVALID_PAGEID) {
         // unpin before continuing loop
-        Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
+        Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN, LATCH_EXCLUSIVE);
       }
 
     } while ((nexthpid.pid != INVALID_PAGEID) && (!found));
@@ -586,15 +858,20 @@ public class DiskMgr implements GlobalConst {
 
       // allocate the new header page
       nexthpid = allocate_page();
+      noteDirectoryPage(nexthpid);
+
+      // pin and initialize the newly-allocated directory page, before
+      // anyone can find it
+      DBHeaderPage newpage = new DBHeaderPage();
+      Minibase.BufferManager.pinPage(nexthpid, newpage, PIN_NOOP,
+          LATCH_EXCLUSIVE);
+      newpage.initDefaults();
 
       // set the next-page pointer on the previous library page
       hpage.setNextPage(nexthpid);
-      Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY);
-
-      // pin the newly-allocated directory page
+      Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY, LATCH_EXCLUSIVE);
       hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_MEMCPY);
-      hpage.initDefaults();
+      hpage = newpage;
       free_slot = 0;
 
     } // if new library page
@@ -603,7 +880,7 @@ public class DiskMgr implements GlobalConst {
     // slot; "hpage" has the directory_page pointer; "free_slot" is the entry
     // number in the directory where we're going to put the new file entry.
     hpage.setFileEntry(fname, start_pageno, free_slot);
-    Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY);
+    Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY, LATCH_EXCLUSIVE);
 
   } // public void add_file_entry(String fname, PageId start_pageno)
 
@@ -631,8 +908,9 @@ public class DiskMgr implements GlobalConst {
 
       // pin the next library page and get its next
       hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO);
+      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO, LATCH_EXCLUSIVE);
       nexthpid = hpage.getNextPage();
+      noteDirectoryPage(nexthpid);
 
       // search the library page for the entry
       int entry = 0;
@@ -652,7 +930,7 @@ public class DiskMgr implements GlobalConst {
         found = true;
       } else {
         // unpin before continuing loop
-        Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
+        Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN, LATCH_EXCLUSIVE);
       }
 
     } while ((nexthpid.pid != INVALID_PAGEID) && (!found));
@@ -660,7 +938,7 @@ public class DiskMgr implements GlobalConst {
     // have to delete record at hpnum:slot
     tmppid.pid = INVALID_PAGEID;
     hpage.setFileEntry("\0", tmppid, slot);
-    Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY);
+    Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY, LATCH_EXCLUSIVE);
 
   } // public void delete_file_entry(String fname)
 
@@ -672,52 +950,38 @@ public class DiskMgr implements GlobalConst {
    */
   public PageId get_file_entry(String fname) {
 
-    // search the library pages for the entry's slot
-    boolean found = false;
-    int slot = 0;
-    DBHeaderPage hpage = new DBHeaderPage();
+    // search the library pages for the entry, reading each one without
+    // pinning it unless it changes meanwhile
     PageId hpid = new PageId();
-    PageId tmppid = new PageId();
     PageId nexthpid = new PageId(0);
     do {
 
-      // pin the next library page and get its next
+      // search the next library page and get its next
       hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO);
-      nexthpid = hpage.getNextPage();
-
-      // search the library page for the entry
-      int entry = 0;
-      String tmpname;
-      while (entry < hpage.getNumOfEntries()) {
-        tmpname = hpage.getFileEntry(tmppid, entry);
-        if ((tmppid.pid != INVALID_PAGEID)
-            && (tmpname.compareToIgnoreCase(fname) == 0)) {
-          break;
+      int[] found = Minibase.BufferManager.readPage(hpid, page -> {
+        DBHeaderPage hpage = new DBHeaderPage(page);
+        PageId tmppid = new PageId();
+        for (int entry = 0; entry < hpage.getNumOfEntries(); entry++) {
+          String tmpname = hpage.getFileEntry(tmppid, entry);
+          if ((tmppid.pid != INVALID_PAGEID)
+              && (tmpname.compareToIgnoreCase(fname) == 0)) {
+            return new int[] {tmppid.pid, INVALID_PAGEID};
+          }
         }
-        entry++;
-      }
+        return new int[] {INVALID_PAGEID, hpage.getNextPage().pid};
+      });
 
-      // verify the entry slot was found
-      if (entry < hpage.getNumOfEntries()) {
-        slot = entry;
-        found = true;
+      // return the first page id, if found
+      if (found[0] != INVALID_PAGEID) {
+        return new PageId(found[0]);
       }
+      nexthpid = new PageId(found[1]);
+      noteDirectoryPage(nexthpid);
 
-      // unpin the page before continuing or exiting loop
-      Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
-
-    } while ((nexthpid.pid != INVALID_PAGEID) && (!found));
+    } while (nexthpid.pid != INVALID_PAGEID);
 
     // return null if not found
-    if (!found) {
-      return null;
-    }
-
-    // otherwise, return the first page id
-    PageId startpid = new PageId();
-    hpage.getFileEntry(startpid, slot);
-    return startpid;
+    return null;
 
   } // public PageId get_file_entry(String fname)
 
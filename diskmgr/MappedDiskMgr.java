@@ -0,0 +1,198 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A disk manager that maps the database file into memory, for databases
+ * that fit in the OS page cache.  Reading a page is a bounds-checked copy
+ * out of the mapping, and writing one a copy into it, with no system call
+ * once the file's pages are cached; a page that is not yet cached is faulted
+ * in, and read ahead, by the kernel.  Nothing is prefaulted, so a cold start
+ * costs no more than the pages it touches.<br><br>
+ *
+ * A MappedByteBuffer can address at most 2 GB, so the file is mapped in
+ * segments of SEGMENT_SIZE bytes, each mapped the first time it is used.  A
+ * segment at the end of the file covers only what the file holds, and is
+ * mapped again, larger, when the file grows under it.  Pages are copied
+ * rather than mapped into the buffer pool, since the pool decides when a
+ * changed page reaches the file.  Writes reach the page cache at once, and
+ * force (called by flushAllFrames, and so by closeDB) pushes the mapped
+ * segments out to the device.  Java has no way to unmap a buffer, so a
+ * segment's mapping goes away when the garbage collector finds it unused.
+ */
+public class MappedDiskMgr extends DiskMgr {
+
+  /** Default size of a mapped segment (1 GB); a whole number of pages. */
+  public static final long SEGMENT_SIZE = 1L << 30;
+
+  // --------------------------------------------------------------------------
+
+  /** Size of each mapped segment, in bytes. */
+  protected final long segsize;
+
+  /** The mapped segments, in file order; null where not mapped yet.  The
+   * array is replaced, never changed, when a segment is mapped. */
+  protected volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a disk manager that maps the file in 1 GB segments.
+   */
+  public MappedDiskMgr() {
+    this(SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructs a disk manager that maps the file in segments of the given
+   * size.
+   *
+   * @throws IllegalArgumentException if segsize is not a positive number of
+   * pages, or over 2 GB
+   */
+  public MappedDiskMgr(long segsize) {
+    if ((segsize < PAGE_SIZE) || (segsize % PAGE_SIZE != 0)
+        || (segsize > Integer.MAX_VALUE)) {
+      throw new IllegalArgumentException("Invalid segment size: " + segsize);
+    }
+    this.segsize = segsize;
+  }
+
+  /**
+   * Gets a buffer over the given bytes of the file, mapping or remapping
+   * their segment if need be.
+   *
+   * @param grow true to make the file longer if it ends before the bytes
+   * @return the buffer, or null if the bytes run past the end of a segment,
+   * or, unless grow, past the end of the file
+   */
+  protected ByteBuffer region(long offset, int length, boolean grow)
+      throws IOException {
+
+    int index = (int) (offset / segsize);
+    int start = (int) (offset % segsize);
+    if (start + length > segsize) {
+      return null;
+    }
+    MappedByteBuffer[] segments = this.segments;
+    MappedByteBuffer segment =
+        (index < segments.length) ? segments[index] : null;
+    if ((segment == null) || (segment.capacity() < start + length)) {
+      segment = map(index, start + length, grow);
+      if (segment == null) {
+        return null;
+      }
+    }
+    return segment.slice(start, length);
+
+  } // protected ByteBuffer region(long offset, int length, boolean grow)
+
+  /**
+   * Maps the given segment, as far as the file goes but at least the given
+   * number of bytes, unless another thread already has.
+   *
+   * @param grow true to make the file longer if it ends before those bytes
+   * @return the mapping, or null if the file is too short and not grow
+   */
+  protected synchronized MappedByteBuffer map(int index, int needed,
+      boolean grow) throws IOException {
+
+    // another thread may have mapped it meanwhile
+    if ((index < segments.length) && (segments[index] != null)
+        && (segments[index].capacity() >= needed)) {
+      return segments[index];
+    }
+
+    // map the segment; mapping past the end of the file grows it
+    long first = index * segsize;
+    long length = Math.min(segsize, fc.size() - first);
+    if (length < needed) {
+      if (!grow) {
+        return null;
+      }
+      length = needed;
+    }
+    MappedByteBuffer segment =
+        fc.map(FileChannel.MapMode.READ_WRITE, first, length);
+    MappedByteBuffer[] newsegs = Arrays.copyOf(segments,
+        Math.max(segments.length, index + 1));
+    newsegs[index] = segment;
+    segments = newsegs;
+    return segment;
+
+  } // protected synchronized MappedByteBuffer map(int index, int needed, ...)
+
+  /**
+   * Copies from the mapped file at the given offset until the buffer is full.
+   * Bytes past the end of the file read as zeros.
+   */
+  protected void readFully(ByteBuffer buf, long offset) throws IOException {
+    ByteBuffer src = region(offset, buf.remaining(), false);
+    if (src == null) {
+      super.readFully(buf, offset);
+      return;
+    }
+    buf.put(src);
+  }
+
+  /**
+   * Copies the whole buffer into the mapped file at the given offset.
+   */
+  protected void writeFully(ByteBuffer buf, long offset) throws IOException {
+    ByteBuffer dst = region(offset, buf.remaining(), true);
+    if (dst == null) {
+      super.writeFully(buf, offset);
+      return;
+    }
+    dst.put(buf);
+  }
+
+  /**
+   * Copies from the mapped file at the given offset into the buffers, in
+   * order; each is copied on its own, so runs need no lock.
+   */
+  protected void readRun(ByteBuffer[] bufs, long offset) throws IOException {
+    for (ByteBuffer buf : bufs) {
+      int length = buf.remaining();
+      readFully(buf, offset);
+      offset += length;
+    }
+  }
+
+  /**
+   * Copies the buffers into the mapped file at the given offset, in order.
+   */
+  protected void writeRun(ByteBuffer[] bufs, long offset) throws IOException {
+    for (ByteBuffer buf : bufs) {
+      int length = buf.remaining();
+      writeFully(buf, offset);
+      offset += length;
+    }
+  }
+
+  /**
+   * Forces the mapped segments, and anything written past them, out to the
+   * storage device.
+   */
+  public void force() {
+    for (MappedByteBuffer segment : segments) {
+      if (segment != null) {
+        segment.force();
+      }
+    }
+    super.force();
+  }
+
+  /**
+   * Close the database file, and forget the mappings.
+   */
+  public void closeDB() {
+    super.closeDB();
+    segments = new MappedByteBuffer[0];
+  }
+
+} // public class MappedDiskMgr extends DiskMgr
@@ -34,7 +34,19 @@ public interface GlobalConst {
 
   /** Don't copy anything into the frame. */
   public static final int PIN_NOOP = 12;
+
+  /** Make the mempage parameter's memory the frame's, instead of copying. */
+  public static final int PIN_ADOPT = 13;
   
+  /** Pin the page without latching it. */
+  public static final int LATCH_NONE = 20;
+
+  /** Latch the page shared, to read it alongside other readers. */
+  public static final int LATCH_SHARED = 21;
+
+  /** Latch the page exclusive, to change it. */
+  public static final int LATCH_EXCLUSIVE = 22;
+
   /** Forces the page to be written to disk when unpinned. */
   public static final boolean UNPIN_DIRTY = true;
 
@@ -32,19 +32,138 @@ public class Minibase {
       boolean exists) {
 
     // simply initialize the database
-    init(dbname, num_pgs, bufpoolsize, exists);
+    init(dbname, num_pgs, bufpoolsize, BufMgr.DEFAULT_REPLACER, exists);
 
   } // constructor
 
+  /**
+   * Constructs and starts an instance of Minibase, given the configuration.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param replacer Name of the buffer pool replacement policy
+   * @param exists If the database already exists on disk
+   */
+  public Minibase(String dbname, int num_pgs, int bufpoolsize,
+      String replacer, boolean exists) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, bufpoolsize, replacer, exists);
+
+  } // constructor
+
+  /**
+   * Constructs and starts an instance of Minibase with the given buffer
+   * manager.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufmgr The buffer manager to use
+   * @param exists If the database already exists on disk
+   */
+  public Minibase(String dbname, int num_pgs, BufMgr bufmgr, boolean exists) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, bufmgr, exists);
+
+  } // constructor
+
+  /**
+   * Constructs and starts an instance of Minibase with the given disk and
+   * buffer managers.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param diskmgr The disk manager to use, e.g. a MappedDiskMgr
+   * @param bufmgr The buffer manager to use
+   * @param exists If the database already exists on disk
+   */
+  public Minibase(String dbname, int num_pgs, DiskMgr diskmgr, BufMgr bufmgr,
+      boolean exists) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, diskmgr, bufmgr, exists);
+
+  } // constructor
+
+  /**
+   * Initializes the current instance of Minibase with the given configuration.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param exists If the database already exists on disk
+   */
+  public void init(String dbname, int num_pgs, int bufpoolsize,
+      boolean exists) {
+    init(dbname, num_pgs, bufpoolsize, BufMgr.DEFAULT_REPLACER, exists);
+  }
+
+  /**
+   * Initializes the current instance of Minibase with the given configuration.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param replacer Name of the buffer pool replacement policy
+   * @param exists If the database already exists on disk
+   */
+  public void init(String dbname, int num_pgs, int bufpoolsize,
+      String replacer, boolean exists) {
+    init(dbname, num_pgs, bufpoolsize, replacer, false, exists);
+  }
+
   /**
    * Initializes the current instance of Minibase with the given configuration.
    * 
    * @param dbname Name of the data file
    * @param num_pgs Number of pages to allocate
    * @param bufpoolsize Buffer pool size (in pages)
+   * @param replacer Name of the buffer pool replacement policy
+   * @param offheap If the buffer pool's frames are kept off the Java heap
    * @param exists If the database already exists on disk
    */
   public void init(String dbname, int num_pgs, int bufpoolsize,
+      String replacer, boolean offheap, boolean exists) {
+
+    // build the buffer manager
+    BufMgr bufmgr = null;
+    try {
+      bufmgr = new BufMgr(bufpoolsize, BufMgr.DEFAULT_STRIPES, replacer,
+          offheap);
+    } catch (Exception exc) {
+      haltSystem(exc);
+    }
+    init(dbname, num_pgs, bufmgr, exists);
+
+  } // init
+
+  /**
+   * Initializes the current instance of Minibase with the given buffer
+   * manager, e.g. a PooledBufMgr set up with several pools.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufmgr The buffer manager to use
+   * @param exists If the database already exists on disk
+   */
+  public void init(String dbname, int num_pgs, BufMgr bufmgr,
+      boolean exists) {
+    init(dbname, num_pgs, new DiskMgr(), bufmgr, exists);
+  }
+
+  /**
+   * Initializes the current instance of Minibase with the given disk and
+   * buffer managers.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param diskmgr The disk manager to use, e.g. a MappedDiskMgr
+   * @param bufmgr The buffer manager to use
+   * @param exists If the database already exists on disk
+   */
+  public void init(String dbname, int num_pgs, DiskMgr diskmgr, BufMgr bufmgr,
       boolean exists) {
 
     // save the file name
@@ -52,8 +171,8 @@ public class Minibase {
 
     // load the static layers
     try {
-      DiskManager = new DiskMgr();
-      BufferManager = new BufMgr(bufpoolsize);
+      DiskManager = diskmgr;
+      BufferManager = bufmgr;
     } catch (Exception exc) {
       haltSystem(exc);
     }
@@ -70,6 +189,13 @@ public class Minibase {
       haltSystem(exc);
     }
 
+    // publish the buffer pool counters, under the database's name
+    try {
+      BufferManager.registerMBean(dbname);
+    } catch (Exception exc) {
+      haltSystem(exc);
+    }
+
   } // init
 
   /**
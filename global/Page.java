@@ -1,13 +1,21 @@
 package global;
 
+import java.nio.ByteBuffer;
+
 /**
- * Image of a disk page in memory.
+ * Image of a disk page in memory.  A page is normally backed by its own byte
+ * array, but it may instead be a view over PAGE_SIZE bytes of a larger
+ * buffer (i.e. a frame of an off-heap buffer pool).  A view has no byte
+ * array, so its contents must be reached through the accessors.
  */
 public class Page implements GlobalConst {
 
-  /** The actual byte array for the page. */
+  /** The actual byte array for the page, or null for a view. */
   protected byte[] data;
 
+  /** The memory this page is a view of, or null if it has a byte array. */
+  protected ByteBuffer buffer;
+
   // --------------------------------------------------------------------------
 
   /**
@@ -24,13 +32,57 @@ public class Page implements GlobalConst {
     setData(data);
   }
 
+  /**
+   * Constructor that makes a view over the next PAGE_SIZE bytes of the given
+   * buffer, i.e. from its position.
+   * 
+   * @throws IllegalArgumentException if fewer than PAGE_SIZE bytes remain
+   */
+  public Page(ByteBuffer buffer) {
+    if (buffer.remaining() < PAGE_SIZE) {
+      throw new IllegalArgumentException("Invalid page buffer size");
+    }
+    this.buffer = buffer.slice(buffer.position(), PAGE_SIZE);
+  }
+
+  /**
+   * Constructor that shares the given page's memory (see setPage).
+   */
+  public Page(Page page) {
+    setPage(page);
+  }
+
   /**
    * Get accessor for the data byte array.
+   * 
+   * @throws IllegalStateException if the page is a view, with no byte array
    */
   public byte[] getData() {
+    if (data == null) {
+      throw new IllegalStateException(
+          "Page is a view over a buffer; use its accessors");
+    }
     return data;
   }
 
+  /**
+   * True if the page is a view over a buffer rather than a byte array.
+   */
+  public boolean isView() {
+    return data == null;
+  }
+
+  /**
+   * Gets a buffer over the page's memory, positioned at its start, with
+   * PAGE_SIZE bytes remaining.  Writing to the buffer writes to the page.
+   */
+  public ByteBuffer getBuffer() {
+    if (data != null) {
+      return ByteBuffer.wrap(data);
+    }
+    return buffer.duplicate();
+  }
+
   /**
    * Set accessor for the data byte array.
    * 
@@ -42,28 +94,64 @@ public class Page implements GlobalConst {
           "Invalid page buffer size"));
     }
     this.data = data;
+    this.buffer = null;
   }
 
   /**
-   * Sets this page's data array to share the given page's data array.
+   * Sets this page's data array to share the given page's data array (or
+   * buffer, if it is a view).
    */
   public void setPage(Page page) {
     this.data = page.data;
+    this.buffer = page.buffer;
   }
 
   /**
    * Copies the contents of the given page's buffer into this page's buffer.
    */
   public void copyPage(Page page) {
-    System.arraycopy(page.data, 0, this.data, 0, PAGE_SIZE);
+    if ((page.data != null) && (this.data != null)) {
+      System.arraycopy(page.data, 0, this.data, 0, PAGE_SIZE);
+    } else if (this.data != null) {
+      page.buffer.get(0, this.data, 0, PAGE_SIZE);
+    } else if (page.data != null) {
+      this.buffer.put(0, page.data, 0, PAGE_SIZE);
+    } else if (page.buffer != this.buffer) {
+      this.buffer.put(0, page.buffer, 0, PAGE_SIZE);
+    }
   }
 
   // --------------------------------------------------------------------------
+  // Views use ByteBuffer's big-endian accessors, which match Convert's layout.
+
+  /**
+   * Gets a byte at the given page offset.
+   */
+  public byte getByteValue(int offset) {
+    if (data == null) {
+      return buffer.get(offset);
+    }
+    return data[offset];
+  }
+
+  /**
+   * Sets a byte at the given page offset.
+   */
+  public void setByteValue(byte value, int offset) {
+    if (data == null) {
+      buffer.put(offset, value);
+    } else {
+      data[offset] = value;
+    }
+  }
 
   /**
    * Gets a char at the given page offset.
    */
   public char getCharValue(int offset) {
+    if (data == null) {
+      return (char) buffer.get(offset);
+    }
     return Convert.getCharValue(offset, data);
   }
 
@@ -71,13 +159,20 @@ public class Page implements GlobalConst {
    * Sets a char at the given page offset.
    */
   public void setCharValue(char value, int offset) {
-    Convert.setCharValue(value, offset, data);
+    if (data == null) {
+      buffer.put(offset, (byte) value);
+    } else {
+      Convert.setCharValue(value, offset, data);
+    }
   }
 
   /**
    * Gets a short at the given page offset.
    */
   public short getShortValue(int offset) {
+    if (data == null) {
+      return buffer.getShort(offset);
+    }
     return Convert.getShortValue(offset, data);
   }
 
@@ -85,13 +180,20 @@ public class Page implements GlobalConst {
    * Sets a short at the given page offset.
    */
   public void setShortValue(short value, int offset) {
-    Convert.setShortValue(value, offset, data);
+    if (data == null) {
+      buffer.putShort(offset, value);
+    } else {
+      Convert.setShortValue(value, offset, data);
+    }
   }
 
   /**
    * Gets an int at the given page offset.
    */
   public int getIntValue(int offset) {
+    if (data == null) {
+      return buffer.getInt(offset);
+    }
     return Convert.getIntValue(offset, data);
   }
 
@@ -99,13 +201,20 @@ public class Page implements GlobalConst {
    * Sets an int at the given page offset.
    */
   public void setIntValue(int value, int offset) {
-    Convert.setIntValue(value, offset, data);
+    if (data == null) {
+      buffer.putInt(offset, value);
+    } else {
+      Convert.setIntValue(value, offset, data);
+    }
   }
 
   /**
    * Gets a float at the given page offset.
    */
   public float getFloatValue(int offset) {
+    if (data == null) {
+      return buffer.getFloat(offset);
+    }
     return Convert.getFloatValue(offset, data);
   }
 
@@ -113,13 +222,23 @@ public class Page implements GlobalConst {
    * Sets a float at the given page offset.
    */
   public void setFloatValue(float value, int offset) {
-    Convert.setFloatValue(value, offset, data);
+    if (data == null) {
+      buffer.putFloat(offset, value);
+    } else {
+      Convert.setFloatValue(value, offset, data);
+    }
   }
 
   /**
    * Gets a string at the given page offset, given the maximum length.
    */
   public String getStringValue(int offset, int length) {
+    if (data == null) {
+      length = Math.min(length, PAGE_SIZE - offset);
+      byte[] ba = new byte[length];
+      buffer.get(offset, ba, 0, length);
+      return Convert.getStringValue(0, ba, length);
+    }
     return Convert.getStringValue(offset, data, length);
   }
 
@@ -127,7 +246,12 @@ public class Page implements GlobalConst {
    * Sets a string at the given page offset.
    */
   public void setStringValue(String value, int offset) {
-    Convert.setStringValue(value, offset, data);
+    if (data == null) {
+      byte[] ba = value.getBytes();
+      buffer.put(offset, ba, 0, ba.length);
+    } else {
+      Convert.setStringValue(value, offset, data);
+    }
   }
 
 } // public class Page implements GlobalConst
@@ -20,7 +20,11 @@ class BMTest extends TestDriver {
 
     // create a clean Minibase instance.  This requires pinning and unpinning
 	// the first page of the database.
+    // the replacement policy may be given on the command line
     BMTest bmt = new BMTest();
+    if (argv.length > 0) {
+      bmt.BUF_REPLACER = argv[0];
+    }
     bmt.create_minibase();
 
     // run all the test cases
@@ -0,0 +1,997 @@
+package tests;
+
+import bufmgr.BufMgr;
+import bufmgr.TwoQ;
+import diskmgr.AsyncIO;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test suite for sharing the bufmgr layer between threads.
+ */
+class BMTestConcurrent extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer manager concurrency tests";
+
+  /** Number of worker threads. */
+  private static final int NUM_THREADS = 8;
+
+  /** Number of pins made by each worker thread. */
+  private static final int PINS_PER_THREAD = 20000;
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    // create a clean Minibase instance.  This requires pinning and unpinning
+    // the first page of the database.
+    // the replacement policy may be given on the command line
+    BMTestConcurrent bmt = new BMTestConcurrent();
+    if (argv.length > 0) {
+      bmt.BUF_REPLACER = argv[0];
+    }
+    bmt.create_minibase();
+
+    // run all the test cases
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+    status &= bmt.test1();
+    status &= bmt.test2();
+    status &= bmt.test3();
+    status &= bmt.test4();
+    status &= bmt.test5();
+    status &= bmt.test6();
+    status &= bmt.test7();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   *
+   */
+  protected boolean test1() {
+
+    System.out.print("\n  Test 1 pins and reads pages from several threads\n");
+
+    // Allocate more pages than there are frames, so the threads miss as well
+    final int toAlloc = 3 * Minibase.BufferManager.getNumFrames();
+    Page pg = new Page();
+    final PageId firstPid;
+    boolean status1 = PASS;
+
+    System.out.print("  - Allocate and write " + toAlloc + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc);
+      System.err.print(" new pages in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    PageId pid = new PageId();
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      Convert.setIntValue(pid.pid + 77777, 0, pg.getData());
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+
+    // Each thread pins random pages, checks them and unpins them
+    System.out.print("  - Pin, check and unpin random pages from "
+        + NUM_THREADS + " threads\n");
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] workers = new Thread[NUM_THREADS];
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int seed = t;
+      workers[t] = new Thread() {
+        public void run() {
+          Random rand = new Random(seed);
+          Page page = new Page();
+          PageId pageno = new PageId();
+          for (int i = 0; i < PINS_PER_THREAD; i++) {
+            pageno.pid = firstPid.pid + rand.nextInt(toAlloc);
+            try {
+              Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+            } catch (IllegalStateException exc) {
+              // every frame was pinned at that instant; try another page
+              continue;
+            }
+            if (Convert.getIntValue(0, page.getData()) != pageno.pid + 77777) {
+              errors.incrementAndGet();
+            }
+            Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException exc) {
+        status1 = FAIL;
+      }
+    }
+    if (errors.get() > 0) {
+      status1 = FAIL;
+      System.err.print("*** Read wrong data " + errors.get() + " times\n");
+    }
+
+    //Are all frames unpinned?
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status1 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+
+    //Free the allocated pages
+    if (status1 == PASS) {
+      System.out.print("  - Free the allocated pages\n");
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        try {
+          Minibase.BufferManager.freePage(pid);
+        } catch (Exception e) {
+          status1 = FAIL;
+          System.err.print("*** Error freeing page " + pid.pid + "\n");
+          e.printStackTrace();
+        }
+      }
+    }
+
+    if (status1 == PASS)
+      System.out.print("  Test 1 completed successfully.\n");
+
+    return status1;
+
+  } // protected boolean test1 ()
+
+  /**
+   *
+   */
+  protected boolean test2() {
+
+    System.out.print("\n  Test 2 dirties pages from several threads while "
+        + "the page cleaner runs\n");
+
+    final int toAlloc = 3 * Minibase.BufferManager.getNumFrames();
+    Page pg = new Page();
+    final PageId firstPid;
+    boolean status2 = PASS;
+
+    System.out.print("  - Allocate and write " + toAlloc + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc);
+      System.err.print(" new pages in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    PageId pid = new PageId();
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      Convert.setIntValue(pid.pid + 77777, 0, pg.getData());
+      Convert.setIntValue(0, 4, pg.getData());
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+
+    // Each thread bumps a counter on its own share of the pages
+    System.out.print("  - Start the page cleaner\n");
+    Minibase.BufferManager.startCleaner();
+    System.out.print("  - Pin, update and unpin random pages from "
+        + NUM_THREADS + " threads\n");
+    final int[] counts = new int[toAlloc];
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] workers = new Thread[NUM_THREADS];
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int seed = t;
+      workers[t] = new Thread() {
+        public void run() {
+          Random rand = new Random(seed);
+          Page page = new Page();
+          PageId pageno = new PageId();
+          for (int i = 0; i < PINS_PER_THREAD; i++) {
+            int index = rand.nextInt(toAlloc / NUM_THREADS) * NUM_THREADS + seed;
+            pageno.pid = firstPid.pid + index;
+            try {
+              Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+            } catch (IllegalStateException exc) {
+              continue;
+            }
+            byte[] data = page.getData();
+            if ((Convert.getIntValue(0, data) != pageno.pid + 77777)
+                || (Convert.getIntValue(4, data) != counts[index])) {
+              errors.incrementAndGet();
+            }
+            Convert.setIntValue(++counts[index], 4, data);
+            Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException exc) {
+        status2 = FAIL;
+      }
+    }
+    long writes = Minibase.BufferManager.getCleaner().getWrites();
+    Minibase.BufferManager.stopCleaner();
+    if (errors.get() > 0) {
+      status2 = FAIL;
+      System.err.print("*** Read wrong data " + errors.get() + " times\n");
+    }
+    if (writes == 0) {
+      status2 = FAIL;
+      System.err.print("*** The page cleaner wrote no pages\n");
+    }
+
+    // Everything should be on disk after a flush
+    System.out.print("  - Flush and check the pages on disk\n");
+    Minibase.BufferManager.flushAllFrames();
+    Page diskpg = new Page();
+    for (int i = 0; (status2 == PASS) && (i < toAlloc); i++) {
+      pid.pid = firstPid.pid + i;
+      Minibase.DiskManager.read_page(pid, diskpg);
+      if (Convert.getIntValue(4, diskpg.getData()) != counts[i]) {
+        status2 = FAIL;
+        System.err.print("*** Page " + pid.pid + " is stale on disk\n");
+      }
+    }
+
+    //Free the allocated pages
+    if (status2 == PASS) {
+      System.out.print("  - Free the allocated pages\n");
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        try {
+          Minibase.BufferManager.freePage(pid);
+        } catch (Exception e) {
+          status2 = FAIL;
+          System.err.print("*** Error freeing page " + pid.pid + "\n");
+          e.printStackTrace();
+        }
+      }
+    }
+
+    if (status2 == PASS)
+      System.out.print("  Test 2 completed successfully.\n");
+
+    return status2;
+
+  } // protected boolean test2 ()
+
+  /**
+   *
+   */
+  protected boolean test3() {
+
+    System.out.print("\n  Test 3 resizes the pool while threads pin pages\n");
+
+    final int numframes = Minibase.BufferManager.getNumFrames();
+    final int toAlloc = 3 * numframes;
+    Page pg = new Page();
+    final PageId firstPid;
+    boolean status3 = PASS;
+
+    System.out.print("  - Allocate and write " + toAlloc + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc);
+      System.err.print(" new pages in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    PageId pid = new PageId();
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      Convert.setIntValue(pid.pid + 55555, 0, pg.getData());
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+
+    // Each thread pins random pages, checks them, dirties some and unpins
+    System.out.print("  - Grow and shrink the pool under " + NUM_THREADS
+        + " threads\n");
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] workers = new Thread[NUM_THREADS];
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int seed = t;
+      workers[t] = new Thread() {
+        public void run() {
+          Random rand = new Random(seed);
+          Page page = new Page();
+          PageId pageno = new PageId();
+          for (int i = 0; i < PINS_PER_THREAD; i++) {
+            pageno.pid = firstPid.pid + rand.nextInt(toAlloc);
+            try {
+              Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+            } catch (IllegalStateException exc) {
+              continue;
+            }
+            if (Convert.getIntValue(0, page.getData()) != pageno.pid + 55555) {
+              errors.incrementAndGet();
+            }
+            Minibase.BufferManager.unpinPage(pageno, rand.nextBoolean());
+          }
+        }
+      };
+      workers[t].start();
+    }
+    int kin = (Minibase.BufferManager.getReplacer() instanceof TwoQ)
+        ? ((TwoQ) Minibase.BufferManager.getReplacer()).getKin() : 0;
+    int[] sizes = { 2 * numframes, numframes / 2, 4 * numframes, NUM_THREADS + 2,
+        numframes };
+    for (int size : sizes) {
+      Minibase.BufferManager.resize(size);
+      if (Minibase.BufferManager.getNumFrames() != size) {
+        status3 = FAIL;
+        System.err.print("*** Pool has the wrong size after resizing to "
+            + size + "\n");
+      }
+      Thread.yield();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException exc) {
+        status3 = FAIL;
+      }
+    }
+    if (errors.get() > 0) {
+      status3 = FAIL;
+      System.err.print("*** Read wrong data " + errors.get() + " times\n");
+    }
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status3 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+    if ((Minibase.BufferManager.getReplacer() instanceof TwoQ)
+        && (((TwoQ) Minibase.BufferManager.getReplacer()).getKin() != kin)) {
+      status3 = FAIL;
+      System.err.print("*** 2Q's Kin drifted over the resizes\n");
+    }
+
+    // a frame that stays pinned fails a shrink, which leaves the pool whole
+    if (status3 == PASS) {
+      System.out.print("  - Shrink the pool while every frame is pinned\n");
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numframes;
+          pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      }
+      try {
+        Minibase.BufferManager.resize(numframes / 2);
+        status3 = FAIL;
+        System.err.print("*** The pool shrank under pinned frames\n");
+      } catch (IllegalStateException exc) {
+        System.out.print("   --> Failed as expected \n");
+      }
+      if (Minibase.BufferManager.getNumFrames() != numframes) {
+        status3 = FAIL;
+        System.err.print("*** The failed shrink changed the pool size\n");
+      }
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numframes;
+          pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        if (Convert.getIntValue(0, pg.getData()) != pid.pid + 55555) {
+          status3 = FAIL;
+          System.err.print("*** Page " + pid.pid + " was lost\n");
+        }
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+      Minibase.BufferManager.resize(numframes / 2);
+      Minibase.BufferManager.resize(numframes);
+      if ((Minibase.BufferManager.getNumFrames() != numframes)
+          || (Minibase.BufferManager.getNumUnpinned() != numframes)) {
+        status3 = FAIL;
+        System.err.print("*** The pool did not shrink and grow back\n");
+      }
+    }
+
+    //Free the allocated pages
+    if (status3 == PASS) {
+      System.out.print("  - Free the allocated pages\n");
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        try {
+          Minibase.BufferManager.freePage(pid);
+        } catch (Exception e) {
+          status3 = FAIL;
+          System.err.print("*** Error freeing page " + pid.pid + "\n");
+          e.printStackTrace();
+        }
+      }
+    }
+
+    if (status3 == PASS)
+      System.out.print("  Test 3 completed successfully.\n");
+
+    return status3;
+
+  } // protected boolean test3 ()
+
+  /**
+   *
+   */
+  protected boolean test4() {
+
+    System.out.print("\n  Test 4 waits for frames when all are pinned\n");
+
+    final int numframes = Minibase.BufferManager.getNumFrames();
+    final int toAlloc = numframes + 3;
+    Page pg = new Page();
+    final PageId firstPid;
+    boolean status4 = PASS;
+
+    System.out.print("  - Allocate " + toAlloc + " pages, and pin " + numframes
+        + " of them\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc);
+      System.err.print(" new pages in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    PageId pid = new PageId();
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numframes; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+    }
+
+    // Two threads wait in turn for a frame
+    System.out.print("  - Start two threads that wait for frames\n");
+    Minibase.BufferManager.setPinTimeout(10000);
+    final AtomicInteger order = new AtomicInteger();
+    final int[] finished = new int[2];
+    Thread[] waiters = new Thread[2];
+    long waits = Minibase.BufferManager.getStats().getPinWaits();
+    for (int t = 0; t < waiters.length; t++) {
+      final int id = t;
+      waiters[t] = new Thread() {
+        public void run() {
+          try {
+            Minibase.BufferManager.pinPage(
+                new PageId(firstPid.pid + numframes + id), new Page(), PIN_NOOP);
+            finished[id] = order.incrementAndGet();
+          } catch (IllegalStateException exc) {
+            finished[id] = -1;
+          }
+        }
+      };
+      waiters[t].start();
+      // let each get in line before the next
+      while (Minibase.BufferManager.getStats().getPinWaits() < waits + t + 1) {
+        Thread.yield();
+      }
+    }
+
+    // Each unpin lets the first thread in line go
+    System.out.print("  - Unpin pages, and check the threads get frames in"
+        + " order\n");
+    try {
+      for (int t = 0; t < waiters.length; t++) {
+        Minibase.BufferManager.unpinPage(new PageId(firstPid.pid + t),
+            UNPIN_CLEAN);
+        waiters[t].join(5000);
+        if (finished[t] != t + 1) {
+          status4 = FAIL;
+          System.err.print("*** Thread " + t + " finished " + finished[t]
+              + ", not " + (t + 1) + "\n");
+        }
+        if ((t + 1 < waiters.length) && !waiters[t + 1].isAlive()) {
+          status4 = FAIL;
+          System.err.print("*** Thread " + (t + 1) + " did not wait\n");
+        }
+      }
+    } catch (InterruptedException exc) {
+      status4 = FAIL;
+    }
+
+    // With every frame still pinned, a pin gives up after the timeout
+    System.out.print("  - Time out waiting for a frame\n");
+    Minibase.BufferManager.setPinTimeout(100);
+    long start = System.currentTimeMillis();
+    try {
+      pid.pid = firstPid.pid + numframes + 2;
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      status4 = FAIL;
+      System.err.print("*** Pinned a page with every frame pinned\n");
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+    } catch (IllegalStateException exc) {
+      if (System.currentTimeMillis() - start < 100) {
+        status4 = FAIL;
+        System.err.print("*** Gave up before the timeout\n");
+      }
+    }
+    if (Minibase.BufferManager.getStats().getPinWaitTime() < 100) {
+      status4 = FAIL;
+      System.err.print("*** The wait time was not recorded: "
+          + Minibase.BufferManager.getStats() + "\n");
+    }
+    Minibase.BufferManager.setPinTimeout(0);
+
+    // Unpin and free the pages
+    for (pid.pid = firstPid.pid + waiters.length;
+        pid.pid < firstPid.pid + numframes + waiters.length; pid.pid++) {
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+    }
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status4 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status4 == PASS)
+      System.out.print("  Test 4 completed successfully.\n");
+
+    return status4;
+
+  } // protected boolean test4 ()
+
+  /**
+   * Reads a page without pinning it while another thread changes it.
+   */
+  protected boolean test5() {
+
+    System.out.print("\n  Test 5 reads a page without pinning it while it"
+        + " changes\n");
+
+    final int numwrites = 20000;
+    Page pg = new Page();
+    final PageId pid;
+    boolean status5 = PASS;
+
+    System.out.print("  - Allocate a page, and start " + NUM_THREADS
+        + " threads reading it\n");
+    try {
+      pid = Minibase.BufferManager.newPage(pg, 1);
+      pg.setIntValue(0, 0);
+      pg.setIntValue(0, 4);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate a new page in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    long hits = Minibase.BufferManager.getStats().getHits();
+    final AtomicInteger torn = new AtomicInteger();
+    final AtomicInteger reads = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread[] readers = new Thread[NUM_THREADS];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        public void run() {
+          while (!done.get()) {
+            int[] pair = Minibase.BufferManager.readPage(pid,
+                page -> new int[] {page.getIntValue(0), page.getIntValue(4)});
+            if (pair[0] != pair[1]) {
+              torn.incrementAndGet();
+            }
+            reads.incrementAndGet();
+          }
+        }
+      };
+      readers[t].start();
+    }
+
+    // The writer changes both values together
+    System.out.print("  - Write the page " + numwrites + " times, and check"
+        + " no read sees half a write\n");
+    for (int i = 1; i <= numwrites; i++) {
+      Minibase.BufferManager.latchPage(pid, LATCH_EXCLUSIVE);
+      pg.setIntValue(i, 0);
+      pg.setIntValue(i, 4);
+      Minibase.BufferManager.unlatchPage(pid, LATCH_EXCLUSIVE);
+    }
+    Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    done.set(true);
+    try {
+      for (Thread reader : readers) {
+        reader.join();
+      }
+    } catch (InterruptedException exc) {
+      status5 = FAIL;
+    }
+    if (torn.get() != 0) {
+      status5 = FAIL;
+      System.err.print("*** " + torn.get() + " of " + reads.get()
+          + " reads saw half a write\n");
+    }
+    if (Minibase.BufferManager.getStats().getHits() - hits < reads.get()) {
+      status5 = FAIL;
+      System.err.print("*** Some reads were not counted as hits\n");
+    }
+
+    // An unpinned page can still be read, but not latched
+    System.out.print("  - Read the page when it is not pinned\n");
+    int value = Minibase.BufferManager.readPage(pid, page -> page.getIntValue(4));
+    if (value != numwrites) {
+      status5 = FAIL;
+      System.err.print("*** Read " + value + ", not " + numwrites + "\n");
+    }
+    try {
+      Minibase.BufferManager.latchPage(pid, LATCH_EXCLUSIVE);
+      status5 = FAIL;
+      System.err.print("*** Latched a page that is not pinned\n");
+    } catch (IllegalArgumentException exc) {
+      // expected
+    }
+
+    // Reads that don't pin race with evictions and resizes, and must still
+    // read the right page
+    System.out.print("  - Read pages without pinning them while the pool"
+        + " shrinks and grows\n");
+    final int numframes = Minibase.BufferManager.getNumFrames();
+    final int toAlloc = 2 * numframes;
+    final PageId first = Minibase.BufferManager.newPage(pg, toAlloc);
+    Minibase.BufferManager.unpinPage(first, UNPIN_CLEAN);
+    PageId pageno = new PageId();
+    for (pageno.pid = first.pid; pageno.pid < first.pid + toAlloc;
+        pageno.pid++) {
+      Minibase.BufferManager.pinPage(pageno, pg, PIN_NOOP);
+      pg.setIntValue(pageno.pid, 0);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+    }
+    final AtomicInteger wrong = new AtomicInteger();
+    final AtomicBoolean stop = new AtomicBoolean();
+    for (int t = 0; t < readers.length; t++) {
+      final int seed = t;
+      readers[t] = new Thread() {
+        public void run() {
+          Random rand = new Random(seed);
+          while (!stop.get()) {
+            PageId p = new PageId(first.pid + rand.nextInt(toAlloc));
+            try {
+              if (Minibase.BufferManager.readPage(p, page -> page.getIntValue(0))
+                  != p.pid) {
+                wrong.incrementAndGet();
+              }
+            } catch (RuntimeException exc) {
+              wrong.incrementAndGet();
+              exc.printStackTrace();
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+    for (int i = 0; i < 20; i++) {
+      Minibase.BufferManager.resize(Math.max(NUM_THREADS + 2, numframes / 4));
+      Minibase.BufferManager.resize(numframes);
+    }
+    stop.set(true);
+    try {
+      for (Thread reader : readers) {
+        reader.join();
+      }
+    } catch (InterruptedException exc) {
+      status5 = FAIL;
+    }
+    if (wrong.get() != 0) {
+      status5 = FAIL;
+      System.err.print("*** " + wrong.get() + " reads failed or read the wrong"
+          + " page\n");
+    }
+    for (pageno.pid = first.pid; pageno.pid < first.pid + toAlloc;
+        pageno.pid++) {
+      Minibase.BufferManager.freePage(pageno);
+    }
+
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status5 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+    Minibase.BufferManager.freePage(pid);
+
+    if (status5 == PASS)
+      System.out.print("  Test 5 completed successfully.\n");
+
+    return status5;
+
+  } // protected boolean test5 ()
+
+  /**
+   * Latches pages shared and exclusive.
+   */
+  protected boolean test6() {
+
+    System.out.print("\n  Test 6 latches pages shared and exclusive\n");
+
+    Page pg = new Page();
+    final PageId pid;
+    boolean status6 = PASS;
+
+    System.out.print("  - Allocate a page, and latch it shared in "
+        + NUM_THREADS + " threads at once\n");
+    try {
+      pid = Minibase.BufferManager.newPage(pg, 1);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate a new page in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    final CountDownLatch holding = new CountDownLatch(NUM_THREADS);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread[] readers = new Thread[NUM_THREADS];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        public void run() {
+          Minibase.BufferManager.pinPage(pid, new Page(), PIN_DISKIO,
+              LATCH_SHARED);
+          holding.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException exc) {
+            // let go
+          }
+          Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN, LATCH_SHARED);
+        }
+      };
+      readers[t].start();
+    }
+    try {
+      if (!holding.await(5000, TimeUnit.MILLISECONDS)) {
+        status6 = FAIL;
+        System.err.print("*** Readers waited for each other\n");
+      }
+    } catch (InterruptedException exc) {
+      status6 = FAIL;
+    }
+
+    // With readers holding it, a writer and an upgrade must not get in
+    System.out.print("  - Try to latch it exclusive, and to upgrade, while"
+        + " others hold it shared\n");
+    Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+    if (Minibase.BufferManager.tryLatch(pid, LATCH_EXCLUSIVE)) {
+      status6 = FAIL;
+      System.err.print("*** Latched exclusive alongside readers\n");
+      Minibase.BufferManager.unlatchPage(pid, LATCH_EXCLUSIVE);
+    }
+    if (!Minibase.BufferManager.tryLatch(pid, LATCH_SHARED)) {
+      status6 = FAIL;
+      System.err.print("*** Could not latch shared alongside readers\n");
+    } else {
+      if (Minibase.BufferManager.upgradeLatch(pid)) {
+        status6 = FAIL;
+        System.err.print("*** Upgraded alongside readers\n");
+        Minibase.BufferManager.unlatchPage(pid, LATCH_EXCLUSIVE);
+        Minibase.BufferManager.latchPage(pid, LATCH_SHARED);
+      }
+    }
+    release.countDown();
+    try {
+      for (Thread reader : readers) {
+        reader.join();
+      }
+    } catch (InterruptedException exc) {
+      status6 = FAIL;
+    }
+
+    // Alone, the reader can upgrade, and then keeps other latches out
+    System.out.print("  - Upgrade when the readers are gone\n");
+    if (!Minibase.BufferManager.upgradeLatch(pid)) {
+      status6 = FAIL;
+      System.err.print("*** Could not upgrade a latch held alone\n");
+    } else {
+      if (Minibase.BufferManager.tryLatch(pid, LATCH_SHARED)) {
+        status6 = FAIL;
+        System.err.print("*** Latched shared alongside a writer\n");
+        Minibase.BufferManager.unlatchPage(pid, LATCH_SHARED);
+      }
+      try {
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+        status6 = FAIL;
+        System.err.print("*** Unpinned the last pin of a latched page\n");
+      } catch (IllegalArgumentException exc) {
+        // expected
+      }
+      Minibase.BufferManager.unlatchPage(pid, LATCH_EXCLUSIVE);
+    }
+    Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status6 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+    Minibase.BufferManager.freePage(pid);
+
+    if (status6 == PASS)
+      System.out.print("  Test 6 completed successfully.\n");
+
+    return status6;
+
+  } // protected boolean test6 ()
+
+  /**
+   * Pins pages while flushAllFrames holds every unpinned frame for writing.
+   */
+  protected boolean test7() {
+
+    System.out.print("\n  Test 7 pins pages while every frame is being"
+        + " flushed\n");
+
+    // A pool of its own, so that nothing else has a frame in it
+    final int numframes = 8;
+    final int numpinners = 2;
+    final int toAlloc = numframes + numpinners;
+    final BufMgr pool = new BufMgr(numframes, BUF_REPLACER);
+    Page pg = new Page();
+    final PageId firstPid;
+    boolean status7 = PASS;
+
+    System.out.print("  - Allocate and write " + toAlloc + " pages through a"
+        + " pool of " + numframes + " frames\n");
+    try {
+      firstPid = pool.newPage(pg, toAlloc);
+      pool.unpinPage(firstPid, UNPIN_CLEAN);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc);
+      System.err.print(" new pages in the database.\n");
+      e.printStackTrace();
+      return false;
+    }
+    PageId pid = new PageId();
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      pool.pinPage(pid, pg, PIN_NOOP);
+      Convert.setIntValue(pid.pid + 33333, 0, pg.getData());
+      pool.unpinPage(pid, UNPIN_DIRTY);
+    }
+    pool.flushAllFrames();
+
+    // Fill the pool with dirty pages; a pass may evict some of them for the
+    // others (e.g. 2Q's A1in), so go over them until they are all in
+    pool.setReadAhead(false);
+    for (int pass = 0; (pass < 10) && (pool.getStats().getNumDirty() < numframes);
+        pass++) {
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numframes;
+          pid.pid++) {
+        pool.pinPage(pid, pg, PIN_DISKIO);
+        Convert.setIntValue(1, 4, pg.getData());
+        pool.unpinPage(pid, UNPIN_DIRTY);
+      }
+    }
+    if (pool.getStats().getNumDirty() != numframes) {
+      System.err.print("*** Could not fill the pool with dirty pages\n");
+      return false;
+    }
+
+    // Park the engine's only I/O thread in a completion callback, so the
+    // flush's writes wait in its queue with their frames held
+    System.out.print("  - Flush the pool with the I/O engine stalled\n");
+    Minibase.DiskManager.startAsyncIO(1, 4 * numframes);
+    AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+    final Thread self = Thread.currentThread();
+    final CountDownLatch gate = new CountDownLatch(1);
+    final AtomicBoolean stalled = new AtomicBoolean();
+    while (!stalled.get()) {
+      // the callback runs here if the read is already done
+      CompletableFuture<Page> read = aio.read(firstPid, new Page());
+      read.thenRun(() -> {
+        if (Thread.currentThread() != self) {
+          stalled.set(true);
+          try {
+            gate.await();
+          } catch (InterruptedException exc) {
+            // let the engine go
+          }
+        }
+      });
+      read.join();
+    }
+    int queued = aio.getOutstanding();
+    Thread flusher = new Thread() {
+      public void run() {
+        pool.flushAllFrames();
+      }
+    };
+    flusher.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while ((aio.getOutstanding() < queued + numframes)
+        && (System.currentTimeMillis() < deadline)) {
+      Thread.yield();
+    }
+    if (aio.getOutstanding() < queued + numframes) {
+      status7 = FAIL;
+      System.err.print("*** The flush did not write every frame\n");
+    }
+
+    // Every frame is unpinned, but held; pins must wait for the writes
+    System.out.print("  - Pin other pages from " + numpinners
+        + " threads, then let the writes finish\n");
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] pinners = new Thread[numpinners];
+    for (int t = 0; t < pinners.length; t++) {
+      final PageId pageno = new PageId(firstPid.pid + numframes + t);
+      pinners[t] = new Thread() {
+        public void run() {
+          Page page = new Page();
+          try {
+            pool.pinPage(pageno, page, PIN_DISKIO);
+          } catch (IllegalStateException exc) {
+            failures.incrementAndGet();
+            return;
+          }
+          if (Convert.getIntValue(0, page.getData()) != pageno.pid + 33333) {
+            errors.incrementAndGet();
+          }
+          pool.unpinPage(pageno, UNPIN_CLEAN);
+        }
+      };
+      pinners[t].start();
+    }
+    try {
+      Thread.sleep(100);
+      if (failures.get() > 0) {
+        status7 = FAIL;
+        System.err.print("*** " + failures.get() + " pins found no frame while"
+            + " the frames were only being written\n");
+      }
+      gate.countDown();
+      flusher.join();
+      for (Thread pinner : pinners) {
+        pinner.join();
+      }
+    } catch (InterruptedException exc) {
+      status7 = FAIL;
+    }
+    Minibase.DiskManager.stopAsyncIO();
+    if (errors.get() > 0) {
+      status7 = FAIL;
+      System.err.print("*** Read wrong data " + errors.get() + " times\n");
+    }
+
+    // The flush left every page on disk
+    Page diskpg = new Page();
+    for (pid.pid = firstPid.pid; (status7 == PASS)
+        && (pid.pid < firstPid.pid + numframes); pid.pid++) {
+      Minibase.DiskManager.read_page(pid, diskpg);
+      if ((Convert.getIntValue(0, diskpg.getData()) != pid.pid + 33333)
+          || (Convert.getIntValue(4, diskpg.getData()) != 1)) {
+        status7 = FAIL;
+        System.err.print("*** Page " + pid.pid + " is stale on disk\n");
+      }
+    }
+
+    //Are all frames unpinned?
+    if (pool.getNumFrames() != pool.getNumUnpinned()){
+      status7 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+
+    //Free the allocated pages
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      pool.freePage(pid);
+    }
+
+    if (status7 == PASS)
+      System.out.print("  Test 7 completed successfully.\n");
+
+    return status7;
+
+  } // protected boolean test7 ()
+
+} // class BMTestConcurrent extends TestDriver
@@ -1,10 +1,27 @@
 package tests;
 
+import bufmgr.ARC;
+import bufmgr.BufMgr;
+import bufmgr.BufStats;
+import bufmgr.MidpointLRU;
+import bufmgr.MissRatioCurve;
+import bufmgr.PageCleaner;
+import bufmgr.PageTable;
+import bufmgr.PooledBufMgr;
 import global.Convert;
 import global.Minibase;
 import global.Page;
 import global.PageId;
 
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * Test suite for the bufmgr layer.
  */
@@ -20,7 +37,11 @@ class BMTestExtra extends TestDriver {
 
     // create a clean Minibase instance.  This requires pinning and unpinning
 	// the first page of the database.
+	// the replacement policy may be given on the command line
 	BMTestExtra bmt = new BMTestExtra();
+	if (argv.length > 0) {
+	  bmt.BUF_REPLACER = argv[0];
+	}
 	bmt.create_minibase();
 
     // run all the test cases
@@ -28,6 +49,18 @@ class BMTestExtra extends TestDriver {
     boolean status = PASS;
     status &= bmt.test4();
     status &= bmt.test5();
+    status &= bmt.test6();
+    status &= bmt.test7();
+    status &= bmt.test8();
+    status &= bmt.test9();
+    status &= bmt.test10();
+    status &= bmt.test11();
+    status &= bmt.test12();
+    status &= bmt.test13();
+    status &= bmt.test14();
+    status &= bmt.test15();
+    status &= bmt.test16();
+    status &= bmt.test17();
 
     // display the final results
     System.out.println();
@@ -386,4 +419,1345 @@ class BMTestExtra extends TestDriver {
 
 	  } // protected boolean test5 ()
 
+  /**
+   * 
+   */
+  protected boolean test6() {
+
+    System.out.print("\n  Test 6 tests pinRun and prefetch functions\n");
+
+    // Allocate and write a run of pages, then push them out of the pool
+    boolean status6 = PASS;
+    int runSize = Minibase.BufferManager.getNumFrames() / 4;
+    int toAlloc = 2 * Minibase.BufferManager.getNumFrames();
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+
+    System.out.print("  - Allocate and write " + toAlloc + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+        Convert.setIntValue(pid.pid + 99999, 0, pg.getData());
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate and write the pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Pin the first pages as a run; they were pushed out by the later ones
+    System.out.print("  - Pin a run of " + runSize + " pages\n");
+    Page[] run = new Page[runSize];
+    for (int i = 0; i < runSize; i++) {
+      run[i] = new Page();
+    }
+    try {
+      Minibase.BufferManager.pinRun(firstPid, runSize, run);
+    } catch (Exception e) {
+      System.err.print("*** Could not pin the run\n");
+      e.printStackTrace();
+      return false;
+    }
+    for (int i = 0; i < runSize; i++) {
+      if (Convert.getIntValue(0, run[i].getData()) != firstPid.pid + i + 99999) {
+        status6 = FAIL;
+        System.err.print("*** Read wrong data from page " + (firstPid.pid + i)
+            + " of the run\n");
+        break;
+      }
+    }
+    if (Minibase.BufferManager.getNumUnpinned()
+        != Minibase.BufferManager.getNumFrames() - runSize) {
+      status6 = FAIL;
+      System.err.print("*** pinRun pinned the wrong number of pages\n");
+    }
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + runSize; pid.pid++) {
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+    }
+
+    // Prefetch every other page of the second half; pinning the ones it read
+    // (it may skip some, if the policy limits read-ahead) must not read again
+    if (status6 == PASS) {
+      System.out.print("  - Prefetch pages, then pin them\n");
+      int half = firstPid.pid + toAlloc / 2;
+      PageId[] pids = new PageId[runSize / 2];
+      for (int i = 0; i < pids.length; i++) {
+        pids[i] = new PageId(half + 2 * (pids.length - 1 - i));
+      }
+      int loaded = Minibase.BufferManager.prefetch(pids);
+      if (loaded == 0) {
+        status6 = FAIL;
+        System.err.print("*** prefetch read no pages\n");
+      }
+      if (Minibase.BufferManager.getNumUnpinned()
+          != Minibase.BufferManager.getNumFrames()) {
+        status6 = FAIL;
+        System.err.print("*** prefetch left pages pinned\n");
+      }
+      int reads = Minibase.DiskManager.getReadCount();
+      for (int i = 0; (status6 == PASS) && (i < loaded); i++) {
+        Minibase.BufferManager.pinPage(pids[i], pg, PIN_DISKIO);
+        if (Convert.getIntValue(0, pg.getData()) != pids[i].pid + 99999) {
+          status6 = FAIL;
+          System.err.print("*** Read wrong data from page " + pids[i].pid + "\n");
+        }
+        Minibase.BufferManager.unpinPage(pids[i], UNPIN_CLEAN);
+      }
+      if ((status6 == PASS) && (Minibase.DiskManager.getReadCount() != reads)) {
+        status6 = FAIL;
+        System.err.print("*** Prefetched pages were read again\n");
+      }
+    }
+
+    // Prefetch one page as many times as the limit allows, then another;
+    // the copies must not use up the limit, nor be read more than once
+    int limit = Math.min(Minibase.BufferManager.getNumFrames() / 2,
+        Minibase.BufferManager.getReplacer().getReadAheadLimit());
+    if ((status6 == PASS) && (limit >= 2)) {
+      System.out.print("  - Prefetch a page " + limit
+          + " times, then another page\n");
+      int numFrames = Minibase.BufferManager.getNumFrames();
+      Minibase.BufferManager.resize(1);
+      Minibase.BufferManager.resize(numFrames);
+      PageId[] pids = new PageId[limit + 1];
+      for (int i = 0; i < limit; i++) {
+        pids[i] = new PageId(firstPid.pid + 1);
+      }
+      pids[limit] = new PageId(firstPid.pid + 3);
+      int reads = Minibase.DiskManager.getReadCount();
+      int loaded = Minibase.BufferManager.prefetch(pids);
+      if ((loaded != 2) || (Minibase.DiskManager.getReadCount() != reads + 2)) {
+        status6 = FAIL;
+        System.err.print("*** prefetch loaded " + loaded + " pages in "
+            + (Minibase.DiskManager.getReadCount() - reads)
+            + " reads, instead of 2\n");
+      }
+    }
+
+    //Free the allocated pages
+    if (status6 == PASS) {
+      System.out.print("  - Free the allocated pages\n");
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        try {
+          Minibase.BufferManager.freePage(pid);
+        } catch (Exception e) {
+          status6 = FAIL;
+          System.err.print("*** Error freeing page " + pid.pid + "\n");
+          e.printStackTrace();
+        }
+      }
+    }
+
+    if (status6 == PASS)
+      System.out.print("  Test 6 completed successfully.\n");
+
+    return status6;
+
+  } // protected boolean test6 ()
+
+  /**
+   * 
+   */
+  protected boolean test7() {
+
+    System.out.print("\n  Test 7 keeps metadata pages in a catalog pool\n");
+
+    // Start over with a data pool and a small catalog pool
+    boolean status7 = PASS;
+    System.out.print("  - Create a database with data and catalog pools\n");
+    PooledBufMgr pooled = new PooledBufMgr(PooledBufMgr.DATA, BUF_SIZE,
+        BUF_REPLACER);
+    pooled.addPool(PooledBufMgr.CATALOG, 16, "Clock");
+    new Minibase(DB_PATH, DB_SIZE, pooled, false);
+
+    // Fill more than one library page, and use the space map
+    int numFiles = 30;
+    int toAlloc = 3 * BUF_SIZE;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (int i = 0; i < numFiles; i++) {
+        Minibase.DiskManager.add_file_entry("bmtest7_" + i,
+            new PageId(firstPid.pid + i));
+      }
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate pages and files\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Scan more data pages than there are data frames
+    System.out.print("  - Write and read " + toAlloc + " data pages\n");
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      Convert.setIntValue(pid.pid + 44444, 0, pg.getData());
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      if (Convert.getIntValue(0, pg.getData()) != pid.pid + 44444) {
+        status7 = FAIL;
+        System.err.print("*** Read wrong data from page " + pid.pid + "\n");
+        break;
+      }
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+    }
+
+    // Library lookups and allocation must not have to read from disk
+    if (status7 == PASS) {
+      System.out.print("  - Look up files and allocate pages\n");
+      int reads = Minibase.DiskManager.getReadCount();
+      for (int i = 0; i < numFiles; i++) {
+        PageId entry = Minibase.DiskManager.get_file_entry("bmtest7_" + i);
+        if ((entry == null) || (entry.pid != firstPid.pid + i)) {
+          status7 = FAIL;
+          System.err.print("*** Wrong library entry for file " + i + "\n");
+          break;
+        }
+      }
+      PageId extra = Minibase.DiskManager.allocate_page(5);
+      Minibase.DiskManager.deallocate_page(extra, 5);
+      if (Minibase.DiskManager.getReadCount() != reads) {
+        status7 = FAIL;
+        System.err.print("*** Metadata pages were read from disk\n");
+      }
+    }
+
+    // A pin timeout covers newPage, and pools added later
+    if (status7 == PASS) {
+      System.out.print("  - Wait in newPage for a frame of the data pool\n");
+      pooled.setPinTimeout(5000);
+      pooled.addPool(PooledBufMgr.TEMP, 1, "Clock");
+      if ((pooled.getPinTimeout() != 5000)
+          || (pooled.getPool(PooledBufMgr.TEMP).getPinTimeout() != 5000)) {
+        status7 = FAIL;
+        System.err.print("*** The pin timeout was not kept\n");
+      }
+      int numData = pooled.getPool(PooledBufMgr.DATA).getNumFrames();
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numData; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      }
+      final PageId last = new PageId(firstPid.pid + numData - 1);
+      Thread unpinner = new Thread() {
+        public void run() {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException exc) {
+            // unpin now
+          }
+          Minibase.BufferManager.unpinPage(last, UNPIN_CLEAN);
+        }
+      };
+      unpinner.start();
+      try {
+        PageId extra = Minibase.BufferManager.newPage(new Page(), 1);
+        Minibase.BufferManager.unpinPage(extra, UNPIN_CLEAN);
+        Minibase.BufferManager.freePage(extra);
+      } catch (IllegalStateException exc) {
+        status7 = FAIL;
+        System.err.print("*** newPage did not wait for a frame\n");
+      }
+      try {
+        unpinner.join();
+      } catch (InterruptedException exc) {
+        status7 = FAIL;
+      }
+      for (pid.pid = firstPid.pid; pid.pid < last.pid; pid.pid++) {
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+      pooled.setPinTimeout(0);
+    }
+
+    // A scan of the data pool reads ahead up to the temp pool's run, but
+    // never into it; emptying the data pool first makes every page a read
+    if (status7 == PASS) {
+      System.out.print("  - Scan up to a temp run, and read none of it\n");
+      int scan = BUF_SIZE / 2;
+      PageId temp = new PageId(firstPid.pid + scan);
+      pooled.routeRun(temp, BUF_SIZE / 4, PooledBufMgr.TEMP);
+      BufMgr data = pooled.getPool(PooledBufMgr.DATA);
+      data.resize(1);
+      data.resize(BUF_SIZE);
+      int reads = Minibase.DiskManager.getReadCount();
+      for (pid.pid = firstPid.pid; pid.pid < temp.pid; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+      if (Minibase.DiskManager.getReadCount() - reads > scan) {
+        status7 = FAIL;
+        System.err.print("*** Read " + (Minibase.DiskManager.getReadCount()
+            - reads) + " pages to scan " + scan + "\n");
+      }
+      pooled.removeRoute(temp);
+    }
+
+    // Reopen the database, cache a library page as data before the library
+    // is walked to it, and make sure the walk moves it to the catalog pool
+    if (status7 == PASS) {
+      System.out.print("  - Move a library page cached as data to the catalog\n");
+      int libpid = firstPid.pid + toAlloc;
+      while ((libpid < DB_SIZE) && !Minibase.DiskManager.isMetadataPage(libpid)) {
+        libpid++;
+      }
+      Minibase.DiskManager.closeDB();
+      pooled = new PooledBufMgr(PooledBufMgr.DATA, BUF_SIZE, BUF_REPLACER);
+      pooled.addPool(PooledBufMgr.CATALOG, 16, "Clock");
+      new Minibase(DB_PATH, DB_SIZE, pooled, true);
+      PageId lib = new PageId(libpid);
+      if ((libpid == DB_SIZE) || Minibase.DiskManager.isMetadataPage(libpid)) {
+        status7 = FAIL;
+        System.err.print("*** Library page " + libpid + " known too soon\n");
+      } else {
+        Minibase.BufferManager.pinPage(lib, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(lib, UNPIN_DIRTY);
+        PageId entry = Minibase.DiskManager.get_file_entry("bmtest7_"
+            + (numFiles - 1));
+        if ((entry == null) || (entry.pid != firstPid.pid + numFiles - 1)) {
+          status7 = FAIL;
+          System.err.print("*** Wrong entry for the last file\n");
+        }
+        try {
+          pooled.getPool(PooledBufMgr.DATA).flushPage(lib);
+          status7 = FAIL;
+          System.err.print("*** Library page " + libpid
+              + " is still in the data pool\n");
+        } catch (IllegalArgumentException exc) {
+          // expected
+        }
+      }
+    }
+
+    // Clean up
+    if (status7 == PASS) {
+      System.out.print("  - Delete the files and free the pages\n");
+      try {
+        for (int i = 0; i < numFiles; i++) {
+          Minibase.DiskManager.delete_file_entry("bmtest7_" + i);
+        }
+        for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+          Minibase.BufferManager.freePage(pid);
+        }
+      } catch (Exception e) {
+        status7 = FAIL;
+        System.err.print("*** Error cleaning up\n");
+        e.printStackTrace();
+      }
+    }
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status7 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+
+    if (status7 == PASS)
+      System.out.print("  Test 7 completed successfully.\n");
+
+    return status7;
+
+  } // protected boolean test7 ()
+
+  /**
+   * 
+   */
+  protected boolean test8() {
+
+    System.out.print("\n  Test 8 tests the buffer pool counters and MBean\n");
+
+    // Allocate more pages than there are frames
+    boolean status8 = PASS;
+    int numFrames = Minibase.BufferManager.getNumFrames();
+    int toAlloc = 2 * numFrames;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+
+    System.out.print("  - Allocate " + toAlloc + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Write them all twice, and count
+    System.out.print("  - Write the pages twice, and check the counters\n");
+    boolean readahead = Minibase.BufferManager.isReadAhead();
+    Minibase.BufferManager.setReadAhead(false);
+    Minibase.BufferManager.resetStats();
+    BufStats stats = Minibase.BufferManager.getStats();
+    if ((stats.getHits() != 0) || (stats.getMisses() != 0)
+        || (stats.getEvictions() != 0) || (stats.getFlushes() != 0)) {
+      status8 = FAIL;
+      System.err.print("*** The counters were not reset: " + stats + "\n");
+    }
+    long misses1 = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      if (pass == 0) {
+        misses1 = Minibase.BufferManager.getStats().getMisses();
+      }
+    }
+    stats = Minibase.BufferManager.getStats();
+    long misses2 = stats.getMisses() - misses1;
+    if (stats.getHits() + stats.getMisses() != 2 * toAlloc) {
+      status8 = FAIL;
+      System.err.print("*** Hits and misses don't add up to the pins: "
+          + stats + "\n");
+    }
+    if ((misses1 < toAlloc - numFrames) || (misses2 < toAlloc - numFrames)) {
+      status8 = FAIL;
+      System.err.print("*** Too few misses: " + stats + "\n");
+    }
+    if ((stats.getEvictions() < stats.getMisses() - numFrames)
+        || (stats.getDirtyEvictions() < misses2 - numFrames)) {
+      status8 = FAIL;
+      System.err.print("*** Too few evictions: " + stats + "\n");
+    }
+    if (stats.getNumPinned() != 0) {
+      status8 = FAIL;
+      System.err.print("*** Wrong number of pinned frames: " + stats + "\n");
+    }
+
+    // Flushing writes exactly the dirty frames
+    int dirty = stats.getNumDirty();
+    long flushes = stats.getFlushes();
+    Minibase.BufferManager.flushAllFrames();
+    stats = Minibase.BufferManager.getStats();
+    if ((dirty == 0) || (stats.getFlushes() - flushes != dirty)
+        || (stats.getNumDirty() != 0)) {
+      status8 = FAIL;
+      System.err.print("*** Flushed " + (stats.getFlushes() - flushes)
+          + " of " + dirty + " dirty frames\n");
+    }
+    Minibase.BufferManager.setReadAhead(readahead);
+
+    // The MBean shows the same counters, and can reset them
+    System.out.print("  - Read and reset the counters through JMX\n");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("minibase:type=BufMgr,name="
+          + ObjectName.quote(DB_PATH));
+      if (!((Long) server.getAttribute(name, "Misses")).equals(
+          stats.getMisses())) {
+        status8 = FAIL;
+        System.err.print("*** The MBean shows different counters\n");
+      }
+      if (Minibase.BufferManager instanceof PooledBufMgr) {
+        ObjectName pool = new ObjectName(name + ",pool="
+            + ObjectName.quote(PooledBufMgr.DATA));
+        if ((Long) server.getAttribute(pool, "Hits") == 0) {
+          status8 = FAIL;
+          System.err.print("*** The data pool's MBean shows no hits\n");
+        }
+      }
+      server.invoke(name, "resetStats", null, null);
+      if (Minibase.BufferManager.getStats().getHits() != 0) {
+        status8 = FAIL;
+        System.err.print("*** The MBean did not reset the counters\n");
+      }
+    } catch (Exception e) {
+      status8 = FAIL;
+      System.err.print("*** Could not use the MBean\n");
+      e.printStackTrace();
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status8 == PASS)
+      System.out.print("  Test 8 completed successfully.\n");
+
+    return status8;
+
+  } // protected boolean test8 ()
+
+  /**
+   * 
+   */
+  protected boolean test9() {
+
+    System.out.print("\n  Test 9 tests the miss ratio curve estimator\n");
+
+    // Allocate a loop of pages that fits in half the pool
+    boolean status9 = PASS;
+    int numFrames = Minibase.BufferManager.getNumFrames();
+    int loop = numFrames / 2;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+
+    System.out.print("  - Allocate " + loop + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, loop);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + loop + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Pin the loop over and over, sampling every page
+    System.out.print("  - Pin the pages in a loop, and estimate the curve\n");
+    MissRatioCurve mrc = Minibase.BufferManager.startEstimator(
+        MissRatioCurve.DEFAULT_SAMPLES, 1.0);
+    mrc.setLogInterval(0);
+    for (int i = 0; i < 20; i++) {
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + loop; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+    }
+
+    // An LRU pool smaller than the loop never hits; one that holds it does
+    int[] sizes = mrc.getSizes();
+    numFrames = mrc.getNumFrames();
+    if ((sizes[0] != numFrames / 4) || (sizes[sizes.length - 1] != 4 * numFrames)) {
+      status9 = FAIL;
+      System.err.print("*** Wrong pool sizes estimated\n");
+    }
+    if (mrc.getHitRatio(loop - 1) > 0.01) {
+      status9 = FAIL;
+      System.err.print("*** Estimated hits in a pool smaller than the loop: "
+          + mrc + "\n");
+    }
+    for (int size : new int[] { loop, numFrames, 4 * numFrames }) {
+      if (mrc.getHitRatio(size) < 0.9) {
+        status9 = FAIL;
+        System.err.print("*** Estimated misses in a pool of " + size
+            + " frames: " + mrc + "\n");
+      }
+    }
+    System.out.print("  - " + mrc + "\n");
+    Minibase.BufferManager.stopEstimator();
+    if (Minibase.BufferManager.getEstimator() != null) {
+      status9 = FAIL;
+      System.err.print("*** The estimator did not stop\n");
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + loop; pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status9 == PASS)
+      System.out.print("  Test 9 completed successfully.\n");
+
+    return status9;
+
+  } // protected boolean test9 ()
+
+  /**
+   * Scans pages with PIN_DISKIO from an empty pool, and checks that the scan
+   * reads ahead of itself.  The window is capped by the policy's read-ahead
+   * limit, which for TinyLFU is half its admission window; in a small pool
+   * that is a page or two, so the scan still hits but reads little at once.
+   */
+  protected boolean test10() {
+
+    System.out.print("\n  Test 10 tests sequential read-ahead\n");
+
+    // Start over with a plain pool, and write more pages than fit in it
+    boolean status10 = PASS;
+    System.out.print("  - Create a database, and write " + 2 * BUF_SIZE
+        + " pages\n");
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, BUF_REPLACER, false);
+    int scan = 2 * BUF_SIZE;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, scan);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + scan; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+        Convert.setIntValue(pid.pid + 55555, 0, pg.getData());
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate and write " + scan + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Empty the pool, then scan; the third pin in a row reads its own page,
+    // then the first window after it (4 pages, or the limit if less), and
+    // the windows then grow
+    int limit = Math.min(BUF_SIZE / 4,
+        Minibase.BufferManager.getReplacer().getReadAheadLimit());
+    int window = Math.min(4, limit);
+    System.out.print("  - Scan the pages, reading ahead up to " + limit
+        + " at a time\n");
+    Minibase.BufferManager.setReadAhead(true);
+    Minibase.BufferManager.resize(1);
+    Minibase.BufferManager.resize(BUF_SIZE);
+    Minibase.BufferManager.resetStats();
+    int reads = Minibase.DiskManager.getReadCount();
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + scan; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      if (Convert.getIntValue(0, pg.getData()) != pid.pid + 55555) {
+        status10 = FAIL;
+        System.err.print("*** Read wrong data back from page " + pid.pid + "\n");
+      }
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      if ((pid.pid == firstPid.pid + 2) && (Minibase.DiskManager
+          .getReadCount() - reads < 3 + window)) {
+        status10 = FAIL;
+        System.err.print("*** Read " + (Minibase.DiskManager.getReadCount()
+            - reads) + " pages by the third pin, with a window of " + window
+            + "\n");
+      }
+    }
+
+    // Only the pins up to the one that saw the run miss, and the last window
+    // or so read ahead is all that goes unused
+    BufStats stats = Minibase.BufferManager.getStats();
+    reads = Minibase.DiskManager.getReadCount() - reads;
+    System.out.print("  - " + stats + ", " + reads + " pages read\n");
+    if (stats.getMisses() != 3) {
+      status10 = FAIL;
+      System.err.print("*** " + stats.getMisses() + " of " + scan
+          + " pins missed\n");
+    }
+    if ((reads < scan) || (reads > scan + 2 * limit)) {
+      status10 = FAIL;
+      System.err.print("*** Read " + reads + " pages to scan " + scan + "\n");
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + scan; pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status10 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+
+    if (status10 == PASS)
+      System.out.print("  Test 10 completed successfully.\n");
+
+    return status10;
+
+  } // protected boolean test10 ()
+
+  /**
+   * Checks that newPage's PIN_ADOPT gives the caller's array to the frame
+   * only when no other frame has it and the pool is on the heap.
+   */
+  protected boolean test11() {
+
+    System.out.print("\n  Test 11 tests adopting new pages' memory\n");
+
+    // A new page's array becomes its frame's
+    boolean status11 = PASS;
+    System.out.print("  - Adopt a new page's array\n");
+    byte[] data = new byte[PAGE_SIZE];
+    Convert.setIntValue(66666, 0, data);
+    Page pg = new Page(data);
+    PageId adopted = Minibase.BufferManager.newPage(pg, 1);
+    if (pg.getData() != data) {
+      status11 = FAIL;
+      System.err.print("*** The frame did not adopt the page's array\n");
+    }
+    Minibase.BufferManager.unpinPage(adopted, UNPIN_DIRTY);
+    Page frame = new Page();
+    Minibase.BufferManager.pinPage(adopted, frame, PIN_DISKIO);
+    if ((frame.getData() != data) || (frame.getIntValue(0) != 66666)) {
+      status11 = FAIL;
+      System.err.print("*** The adopted array does not serve the frame\n");
+    }
+
+    // The same array again, already behind a frame, is copied
+    System.out.print("  - Copy an array already behind a frame\n");
+    Page again = new Page(data);
+    PageId copied = Minibase.BufferManager.newPage(again, 1);
+    again.setIntValue(77777, 0);
+    if ((again.getData() == data) || (frame.getIntValue(0) != 66666)) {
+      status11 = FAIL;
+      System.err.print("*** Two frames share one array\n");
+    }
+    Minibase.BufferManager.unpinPage(copied, UNPIN_DIRTY);
+    Minibase.BufferManager.unpinPage(adopted, UNPIN_CLEAN);
+
+    // A view has no array to adopt, so it is copied
+    System.out.print("  - Copy a view page\n");
+    ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+    buffer.putInt(0, 88888);
+    Page view = new Page(buffer);
+    PageId viewed = Minibase.BufferManager.newPage(view, 1);
+    buffer.putInt(0, 0);
+    if ((view.getData() == buffer.array()) || (view.getIntValue(0) != 88888)) {
+      status11 = FAIL;
+      System.err.print("*** The view page was not copied\n");
+    }
+    Minibase.BufferManager.unpinPage(viewed, UNPIN_DIRTY);
+
+    // Off-heap frames are views over the arena, so they always copy
+    System.out.print("  - Copy a new page into an off-heap pool\n");
+    BufMgr offheap = new BufMgr(8, 1, BUF_REPLACER, true);
+    data = new byte[PAGE_SIZE];
+    Convert.setIntValue(99999, 0, data);
+    pg = new Page(data);
+    PageId offpid = offheap.newPage(pg, 1);
+    pg.setIntValue(11111, 0);
+    if (!pg.isView() || (Convert.getIntValue(0, data) != 99999)) {
+      status11 = FAIL;
+      System.err.print("*** The off-heap pool adopted the page's array\n");
+    }
+    offheap.unpinPage(offpid, UNPIN_DIRTY);
+    offheap.flushAllFrames();
+
+    // Everything written reads back from disk
+    int[][] expect = { { adopted.pid, 66666 }, { copied.pid, 77777 },
+        { viewed.pid, 88888 }, { offpid.pid, 11111 } };
+    Minibase.BufferManager.flushAllFrames();
+    Page disk = new Page();
+    for (int[] page : expect) {
+      Minibase.DiskManager.read_page(new PageId(page[0]), disk);
+      if (disk.getIntValue(0) != page[1]) {
+        status11 = FAIL;
+        System.err.print("*** Read wrong data back from page " + page[0] + "\n");
+      }
+    }
+
+    // Clean up
+    offheap.freePage(offpid);
+    for (PageId pid : new PageId[] { adopted, copied, viewed }) {
+      Minibase.BufferManager.freePage(pid);
+    }
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status11 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+
+    if (status11 == PASS)
+      System.out.print("  Test 11 completed successfully.\n");
+
+    return status11;
+
+  } // protected boolean test11 ()
+
+  /**
+   * Runs pins, evictions, the file library and resizing on a pool whose
+   * frames are off the Java heap.
+   */
+  protected boolean test12() {
+
+    System.out.print("\n  Test 12 tests an off-heap buffer pool\n");
+
+    // Start over with an off-heap pool, and fill more than one library page
+    boolean status12 = PASS;
+    System.out.print("  - Create a database with an off-heap pool\n");
+    new Minibase(DB_PATH, DB_SIZE, new BufMgr(BUF_SIZE, BufMgr.DEFAULT_STRIPES,
+        BUF_REPLACER, true), false);
+    if (!Minibase.BufferManager.isOffHeap()) {
+      status12 = FAIL;
+      System.err.print("*** The pool is not off-heap\n");
+    }
+    int numFiles = 30;
+    int toAlloc = 3 * BUF_SIZE;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (int i = 0; i < numFiles; i++) {
+        Minibase.DiskManager.add_file_entry("bmtest12_" + i,
+            new PageId(firstPid.pid + i));
+      }
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate pages and files\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Write more pages than there are frames, so that dirty pages are evicted
+    System.out.print("  - Write " + toAlloc + " pages, and read them back\n");
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      pg.setIntValue(pid.pid + 12121, 0);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+    for (pid.pid = firstPid.pid; status12 == PASS
+        && pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      if (!pg.isView() || (pg.getIntValue(0) != pid.pid + 12121)) {
+        status12 = FAIL;
+        System.err.print("*** Read wrong data back from page " + pid.pid + "\n");
+      }
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+    }
+
+    // The library lives in metadata pages, which go through the pool too
+    System.out.print("  - Look up " + numFiles + " files\n");
+    for (int i = 0; status12 == PASS && i < numFiles; i++) {
+      PageId entry = Minibase.DiskManager.get_file_entry("bmtest12_" + i);
+      if ((entry == null) || (entry.pid != firstPid.pid + i)) {
+        status12 = FAIL;
+        System.err.print("*** Wrong entry for file bmtest12_" + i + "\n");
+      }
+    }
+
+    // Dirty the pages, shrink the pool, and grow it past its first size
+    for (int numFrames : new int[] { BUF_SIZE / 2, 2 * BUF_SIZE }) {
+      System.out.print("  - Resize the pool to " + numFrames + " frames\n");
+      int first = firstPid.pid + toAlloc - Minibase.BufferManager.getNumFrames();
+      for (pid.pid = first; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        pg.setIntValue(pid.pid + numFrames, 0);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      Minibase.BufferManager.resize(numFrames);
+      if (Minibase.BufferManager.getNumFrames() != numFrames) {
+        status12 = FAIL;
+        System.err.print("*** The pool has " + Minibase.BufferManager
+            .getNumFrames() + " frames\n");
+      }
+      for (pid.pid = firstPid.pid; status12 == PASS
+          && pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        int expect = pid.pid + ((pid.pid < first) ? 12121 : numFrames);
+        if (pg.getIntValue(0) != expect) {
+          status12 = FAIL;
+          System.err.print("*** Read wrong data back from page " + pid.pid
+              + "\n");
+        }
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+
+      // put the dirtied pages back, for the next round
+      for (pid.pid = first; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        pg.setIntValue(pid.pid + 12121, 0);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+    }
+
+    // Clean up
+    if (status12 == PASS) {
+      System.out.print("  - Delete the files and free the pages\n");
+      try {
+        for (int i = 0; i < numFiles; i++) {
+          Minibase.DiskManager.delete_file_entry("bmtest12_" + i);
+        }
+        for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+          Minibase.BufferManager.freePage(pid);
+        }
+      } catch (Exception e) {
+        status12 = FAIL;
+        System.err.print("*** Error cleaning up\n");
+        e.printStackTrace();
+      }
+    }
+    if (Minibase.BufferManager.getNumFrames() != Minibase.BufferManager.getNumUnpinned()){
+      status12 = FAIL;
+      System.err.print("*** Some frames are still pinned\n");
+    }
+
+    if (status12 == PASS)
+      System.out.print("  Test 12 completed successfully.\n");
+
+    return status12;
+
+  } // protected boolean test12 ()
+
+  /**
+   * Runs one workload, a hot set that fits in the pool broken up by scans of
+   * pages used once, under Clock and under the scan-resistant policies, and
+   * checks that each of them keeps more of the hot set than Clock does.  Each
+   * scan sweeps Clock's hand around the pool and clears the hot pages' bits.
+   * The hot set misses again after the first scan, which puts it on 2Q's Am;
+   * later scans only cycle A1in.  LRU-K evicts the scanned pages first,
+   * since they have no Kth reference.  Midpoint holds the scans in its old
+   * sublist, ARC holds them in T1 since no ghost hit moves its target p
+   * toward recency, and TinyLFU's admission keeps pages seen once out of
+   * its main pool.
+   */
+  protected boolean test13() {
+
+    System.out.print("\n  Test 13 tests scan resistance against Clock\n");
+
+    // Allocate a hot set of half the pool, and a scan the size of the pool
+    // each time the hot set is broken up
+    boolean status13 = PASS;
+    int hot = BUF_SIZE / 2;
+    int scan = BUF_SIZE;
+    int rounds = 5;
+    int toAlloc = hot + rounds * scan;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    System.out.print("  - Allocate " + toAlloc + " pages\n");
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toAlloc);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + toAlloc + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Run the same pins through a new pool under each policy
+    String[] policies = { "Clock", "LRUK", "2Q", "ARC", "TinyLFU", "Midpoint" };
+    long[] hits = new long[policies.length];
+    for (int p = 0; p < policies.length; p++) {
+      BufMgr pool = new BufMgr(BUF_SIZE, policies[p]);
+      pool.setReadAhead(false);
+      if (pool.getReplacer() instanceof MidpointLRU) {
+        // the test pins faster than any dwell time; make the run repeatable
+        ((MidpointLRU) pool.getReplacer()).setDwellTime(0);
+      }
+      for (int r = 0; r <= rounds; r++) {
+        for (int i = 0; i < 3; i++) {
+          for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + hot; pid.pid++) {
+            pool.pinPage(pid, pg, PIN_DISKIO);
+            pool.unpinPage(pid, UNPIN_CLEAN);
+          }
+        }
+        int first = firstPid.pid + hot + r * scan;
+        for (pid.pid = first; (r < rounds) && (pid.pid < first + scan); pid.pid++) {
+          pool.pinPage(pid, pg, PIN_DISKIO);
+          pool.unpinPage(pid, UNPIN_CLEAN);
+        }
+      }
+      hits[p] = pool.getStats().getHits();
+      System.out.print("  - " + policies[p] + ": " + pool.getStats() + "\n");
+    }
+    for (int p = 1; p < policies.length; p++) {
+      if (hits[p] <= hits[0]) {
+        status13 = FAIL;
+        System.err.print("*** " + policies[p] + " got " + hits[p]
+            + " hits, and Clock " + hits[0] + "\n");
+      }
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toAlloc; pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status13 == PASS)
+      System.out.print("  Test 13 completed successfully.\n");
+
+    return status13;
+
+  } // protected boolean test13 ()
+
+  /**
+   * Checks that an ARC pick that fails because every frame is pinned leaves
+   * the ghost lists and the target p as they were, and that the same miss
+   * adapts them once it gets a frame.
+   */
+  protected boolean test14() {
+
+    System.out.print("\n  Test 14 tests ARC picks while all frames are pinned\n");
+
+    // Allocate twice as many pages as frames
+    boolean status14 = PASS;
+    int numFrames = 8;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, 2 * numFrames);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + 2 * numFrames + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Fill T1 and T2 with half the pool each, and B1 with what T1 gave up
+    System.out.print("  - Fill T1, T2 and B1, and pin every frame\n");
+    BufMgr pool = new BufMgr(numFrames, "ARC");
+    pool.setReadAhead(false);
+    ARC arc = (ARC) pool.getReplacer();
+    int half = numFrames / 2;
+    int[] pins = new int[2 * numFrames];
+    int n = 0;
+    for (int i = 0; i < numFrames; i++) {
+      pins[n++] = i;
+    }
+    for (int i = 0; i < half; i++) {
+      pins[n++] = i;
+    }
+    for (int i = numFrames; i < numFrames + half; i++) {
+      pins[n++] = i;
+    }
+    for (int i = 0; i < n; i++) {
+      pid.pid = firstPid.pid + pins[i];
+      pool.pinPage(pid, pg, PIN_DISKIO);
+      pool.unpinPage(pid, UNPIN_CLEAN);
+    }
+    if ((arc.getT1Size() != half) || (arc.getT2Size() != half)
+        || (arc.getB1Size() != half) || (arc.getB2Size() != 0)
+        || (arc.getTarget() != 0)) {
+      System.err.print("*** Wrong ARC lists to start with\n");
+      return false;
+    }
+    PageId[] resident = new PageId[numFrames];
+    for (int i = 0; i < numFrames; i++) {
+      resident[i] = new PageId(firstPid.pid + ((i < half) ? i : half + i));
+      pool.pinPage(resident[i], pg, PIN_DISKIO);
+    }
+
+    // Fail picks for a new pid and for a ghost on B1
+    System.out.print("  - Fail to pin a new page, and a page on B1\n");
+    int[] misses = { firstPid.pid + numFrames + half, firstPid.pid + half };
+    for (int miss : misses) {
+      for (int i = 0; i < 3; i++) {
+        try {
+          pool.pinPage(new PageId(miss), pg, PIN_DISKIO);
+          status14 = FAIL;
+          System.err.print("*** Pinned page " + miss + " with no frames free\n");
+        } catch (IllegalStateException exc) {
+          // expected
+        }
+      }
+      if ((arc.getB1Size() != half) || (arc.getB2Size() != 0)
+          || (arc.getTarget() != 0)) {
+        status14 = FAIL;
+        System.err.print("*** Failed picks for page " + miss + " left B1="
+            + arc.getB1Size() + " B2=" + arc.getB2Size() + " p="
+            + arc.getTarget() + "\n");
+      }
+    }
+
+    // Once a frame is free, the ghost hit moves p and leaves B1 (pinning
+    // the resident pages again moved them all to T2, so T2 gives the frame)
+    System.out.print("  - Pin the page on B1 once a frame is free\n");
+    for (PageId res : resident) {
+      pool.unpinPage(res, UNPIN_CLEAN);
+    }
+    pool.pinPage(new PageId(misses[1]), pg, PIN_DISKIO);
+    pool.unpinPage(new PageId(misses[1]), UNPIN_CLEAN);
+    if ((arc.getTarget() != 1) || (arc.getB1Size() != half - 1)
+        || (arc.getB2Size() != 1)) {
+      status14 = FAIL;
+      System.err.print("*** The ghost hit left B1=" + arc.getB1Size() + " B2="
+          + arc.getB2Size() + " p=" + arc.getTarget() + "\n");
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + 2 * numFrames; pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status14 == PASS)
+      System.out.print("  Test 14 completed successfully.\n");
+
+    return status14;
+
+  } // protected boolean test14 ()
+
+  /**
+   * Checks that the page cleaner cleans the frames each list policy will
+   * evict next, so that the next misses need not write their victims.
+   */
+  protected boolean test15() {
+
+    System.out.print("\n  Test 15 tests that the cleaner cleans the next victims\n");
+
+    // Allocate one and a half pools of pages, and a few more to miss on
+    boolean status15 = PASS;
+    int numFrames = BUF_SIZE;
+    int toWrite = numFrames + numFrames / 2;
+    int lookahead = Math.max(1, (int) (PageCleaner.DEFAULT_LOOKAHEAD * numFrames));
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, toWrite + lookahead);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + (toWrite + lookahead)
+          + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Write the pages, so the frames reused first hold the newest pages and
+    // the next victims sit in the middle of the pool
+    for (String policy : new String[] { "LRUK", "2Q", "ARC", "Midpoint" }) {
+      System.out.print("  - " + policy + ": write " + toWrite
+          + " pages, clean, and miss " + lookahead + " times\n");
+      BufMgr pool = new BufMgr(numFrames, policy);
+      pool.setReadAhead(false);
+      for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toWrite; pid.pid++) {
+        pool.pinPage(pid, pg, PIN_NOOP);
+        pool.unpinPage(pid, UNPIN_DIRTY);
+      }
+
+      // Clean without sweeping, until the cleaner has written its lookahead
+      pool.startCleaner(1.0, 1.0);
+      long deadline = System.currentTimeMillis() + 5000;
+      while ((pool.getCleaner().getWrites() < lookahead)
+          && (System.currentTimeMillis() < deadline)) {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException exc) {
+          break;
+        }
+      }
+      pool.stopCleaner();
+
+      // The misses find their victims clean
+      pool.resetStats();
+      for (pid.pid = firstPid.pid + toWrite;
+          pid.pid < firstPid.pid + toWrite + lookahead; pid.pid++) {
+        pool.pinPage(pid, pg, PIN_NOOP);
+        pool.unpinPage(pid, UNPIN_CLEAN);
+      }
+      if (pool.getStats().getDirtyEvictions() != 0) {
+        status15 = FAIL;
+        System.err.print("*** " + policy + ": " + pool.getStats()
+            .getDirtyEvictions() + " of " + lookahead
+            + " victims were dirty\n");
+      }
+      pool.flushAllFrames();
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + toWrite + lookahead;
+        pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status15 == PASS)
+      System.out.print("  Test 15 completed successfully.\n");
+
+    return status15;
+
+  } // protected boolean test15 ()
+
+  /**
+   * Checks the page table against a HashMap through growth, collisions and
+   * removals, and that peek keeps answering while the table changes under
+   * it.  Removal shifts entries back instead of leaving tombstones, so a
+   * key must still be found after any key ahead of it on its run is gone.
+   */
+  protected boolean test16() {
+
+    System.out.print("\n  Test 16 tests the page table\n");
+
+    // Put enough random keys in a small table to grow it and collide often
+    boolean status16 = PASS;
+    int numKeys = 4 * BUF_SIZE;
+    Random random = new Random(16);
+    PageTable table = new PageTable(4);
+    Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    System.out.print("  - Put " + numKeys + " keys, and replace some\n");
+    for (int i = 0; i < numKeys; i++) {
+      int key = random.nextInt(numKeys * 4);
+      table.put(key, i);
+      expected.put(key, i);
+    }
+    if (!sameAs(table, expected, numKeys * 4)) {
+      status16 = FAIL;
+    }
+
+    // Remove keys in random order, checking every key after each round
+    System.out.print("  - Remove the keys in random order\n");
+    Integer[] keys = expected.keySet().toArray(new Integer[0]);
+    for (int i = keys.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      Integer swap = keys[i];
+      keys[i] = keys[j];
+      keys[j] = swap;
+    }
+    for (int i = 0; (status16 == PASS) && (i < keys.length); i++) {
+      if (table.remove(keys[i]) != expected.remove(keys[i])) {
+        status16 = FAIL;
+        System.err.print("*** Removing key " + keys[i]
+            + " returned the wrong frame\n");
+      }
+      if (table.remove(keys[i]) != PageTable.NOT_FOUND) {
+        status16 = FAIL;
+        System.err.print("*** Key " + keys[i] + " was removed twice\n");
+      }
+      if ((i % BUF_SIZE == 0) && !sameAs(table, expected, numKeys * 4)) {
+        status16 = FAIL;
+      }
+    }
+    if ((status16 == PASS) && (table.size() != 0)) {
+      status16 = FAIL;
+      System.err.print("*** The empty table has size " + table.size() + "\n");
+    }
+
+    // Peek from another thread while the table grows and shrinks
+    if (status16 == PASS) {
+      System.out.print("  - Peek while another thread puts and removes\n");
+      final PageTable shared = new PageTable(4);
+      final int range = numKeys;
+      final boolean[] failed = { false };
+      Thread peeker = new Thread() {
+        public void run() {
+          Random keys = new Random(17);
+          try {
+            while (!isInterrupted()) {
+              shared.peek(keys.nextInt(range));
+            }
+          } catch (RuntimeException exc) {
+            failed[0] = true;
+            exc.printStackTrace();
+          }
+        }
+      };
+      peeker.start();
+      for (int r = 0; r < 10; r++) {
+        for (int key = 0; key < range; key++) {
+          shared.put(key, key);
+        }
+        for (int key = 0; key < range; key += 2) {
+          shared.remove(key);
+        }
+      }
+      peeker.interrupt();
+      try {
+        peeker.join(5000);
+      } catch (InterruptedException exc) {
+        status16 = FAIL;
+      }
+      if (failed[0] || peeker.isAlive()) {
+        status16 = FAIL;
+        System.err.print("*** Peek failed or did not return\n");
+      }
+      for (int key = 0; (status16 == PASS) && (key < range); key++) {
+        int frame = (key % 2 == 0) ? PageTable.NOT_FOUND : key;
+        if (shared.peek(key) != frame) {
+          status16 = FAIL;
+          System.err.print("*** Peek found " + shared.peek(key) + " for key "
+              + key + " instead of " + frame + "\n");
+        }
+      }
+    }
+
+    if (status16 == PASS)
+      System.out.print("  Test 16 completed successfully.\n");
+
+    return status16;
+
+  } // protected boolean test16 ()
+
+  /**
+   * True if the table maps every key below the given bound as the expected
+   * map does, through both get and peek; reports the first difference.
+   */
+  private boolean sameAs(PageTable table, Map<Integer, Integer> expected,
+      int bound) {
+    if (table.size() != expected.size()) {
+      System.err.print("*** The table has " + table.size() + " keys instead of "
+          + expected.size() + "\n");
+      return false;
+    }
+    for (int key = 0; key < bound; key++) {
+      Integer value = expected.get(key);
+      int frame = (value == null) ? PageTable.NOT_FOUND : value;
+      if ((table.get(key) != frame) || (table.peek(key) != frame)
+          || (table.containsKey(key) != (value != null))) {
+        System.err.print("*** Key " + key + " maps to " + table.get(key)
+            + " instead of " + frame + "\n");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks that Clock's hand keeps its place between misses: each miss on a
+   * full pool of unreferenced frames takes the frame after the last victim,
+   * so the pages just read in survive the misses that follow.  A hand that
+   * started over at frame 0 would clear the newest page's bit on one miss
+   * and evict it on the next.
+   */
+  protected boolean test17() {
+
+    System.out.print("\n  Test 17 tests that Clock's hand keeps its place\n");
+
+    // Allocate a pool's worth of pages, and a few more to miss on
+    boolean status17 = PASS;
+    int numFrames = 16;
+    int misses = numFrames / 2;
+    Page pg = new Page();
+    PageId firstPid = new PageId();
+    PageId pid = new PageId();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, numFrames + misses);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      Minibase.BufferManager.flushAllFrames();
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + (numFrames + misses)
+          + " pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // Fill the pool; the first miss then clears every bit and takes frame 0
+    System.out.print("  - Fill the pool, and miss " + misses + " times\n");
+    BufMgr pool = new BufMgr(numFrames, "Clock");
+    pool.setReadAhead(false);
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numFrames; pid.pid++) {
+      pool.pinPage(pid, pg, PIN_DISKIO);
+      pool.unpinPage(pid, UNPIN_CLEAN);
+    }
+    for (int i = 0; i < misses; i++) {
+      pid.pid = firstPid.pid + numFrames + i;
+      pool.pinPage(pid, pg, PIN_DISKIO);
+      pool.unpinPage(pid, UNPIN_CLEAN);
+      if (pool.getReplacer().getHand() != i + 1) {
+        status17 = FAIL;
+        System.err.print("*** Miss " + i + " left the hand at "
+            + pool.getReplacer().getHand() + " instead of " + (i + 1) + "\n");
+        break;
+      }
+    }
+
+    // Every page read in by a miss is still resident
+    if (status17 == PASS) {
+      System.out.print("  - Pin the pages the misses read in\n");
+      pool.resetStats();
+      for (pid.pid = firstPid.pid + numFrames;
+          pid.pid < firstPid.pid + numFrames + misses; pid.pid++) {
+        pool.pinPage(pid, pg, PIN_DISKIO);
+        pool.unpinPage(pid, UNPIN_CLEAN);
+      }
+      if (pool.getStats().getMisses() != 0) {
+        status17 = FAIL;
+        System.err.print("*** " + pool.getStats().getMisses()
+            + " of the pages just read in were evicted\n");
+      }
+    }
+
+    // Clean up
+    for (pid.pid = firstPid.pid; pid.pid < firstPid.pid + numFrames + misses;
+        pid.pid++) {
+      Minibase.BufferManager.freePage(pid);
+    }
+
+    if (status17 == PASS)
+      System.out.print("  Test 17 completed successfully.\n");
+
+    return status17;
+
+  } // protected boolean test17 ()
+
 } // class BMTest extends TestDriver
@@ -0,0 +1,177 @@
+package tests;
+
+import bufmgr.BufMgr;
+import diskmgr.DirectDiskMgr;
+import diskmgr.DiskMgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of the disk manager's I/O modes under buffer pool pressure:
+ * several threads pin random pages of a database much larger than the pool,
+ * changing some, so that most pins miss and many evictions write.  It runs
+ * with plain (buffered) I/O, then with direct I/O, and prints the time and
+ * the disk traffic of each; the pages are checked at the end of each run.
+ * Buffered I/O is served from the OS page cache once the file is in it, so
+ * it shows the cost of the copies, and direct I/O the cost of the device.
+ * Pass the replacement policy, and optionally the number of pins per thread.
+ */
+class DMBench extends TestDriver {
+
+  /** The display name of the benchmark. */
+  private static final String TEST_NAME = "disk manager benchmark";
+
+  /** Number of pages touched, many times the pool size. */
+  private static final int NUM_PAGES = 16384;
+
+  /** Number of threads pinning pages. */
+  private static final int NUM_THREADS = 4;
+
+  /** Percent of pins that change the page. */
+  private static final int WRITE_PERCENT = 30;
+
+  /** Number of pins made by each thread. */
+  private int pinsPerThread = 50000;
+
+  /**
+   * Benchmark entry point; runs both modes.
+   */
+  public static void main(String argv[]) {
+
+    DMBench bench = new DMBench();
+    if (argv.length > 0) {
+      bench.BUF_REPLACER = argv[0];
+    }
+    if (argv.length > 1) {
+      bench.pinsPerThread = Integer.parseInt(argv[1]);
+    }
+    bench.DB_SIZE = NUM_PAGES + 1000;
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+    status &= bench.run("buffered", new DiskMgr());
+    if (DirectDiskMgr.isSupported(new File(bench.DB_PATH).getAbsoluteFile()
+        .getParentFile())) {
+      status &= bench.run("direct", new DirectDiskMgr());
+    } else {
+      System.out.println("\n  Direct I/O is not supported here; skipped");
+    }
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " runs completed successfully!");
+    }
+
+  } // public static void main(String argv[])
+
+  /**
+   * Runs the workload with the given disk manager, and prints its costs.
+   */
+  protected boolean run(String mode, DiskMgr diskmgr) {
+
+    System.out.print("\n  Run " + mode + ": " + NUM_THREADS + " threads, "
+        + pinsPerThread + " pins each, " + NUM_PAGES + " pages, "
+        + BUF_SIZE + " frames\n");
+    new Minibase(DB_PATH, DB_SIZE, diskmgr, new BufMgr(BUF_SIZE, BUF_REPLACER),
+        false);
+
+    // write every page once, so that each holds its own pid
+    System.out.print("  - Allocate and write the pages\n");
+    Page pg = new Page();
+    final PageId first = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+    Minibase.BufferManager.unpinPage(first, UNPIN_CLEAN);
+    PageId pid = new PageId();
+    for (pid.pid = first.pid; pid.pid < first.pid + NUM_PAGES; pid.pid++) {
+      Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+      pg.setIntValue(pid.pid, 0);
+      pg.setIntValue(0, 4);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+    Minibase.BufferManager.flushAllFrames();
+
+    // pin random pages, bumping a count on some
+    System.out.print("  - Pin random pages, changing " + WRITE_PERCENT
+        + "% of them\n");
+    final AtomicInteger bad = new AtomicInteger();
+    final int[][] changes = new int[NUM_THREADS][NUM_PAGES];
+    int reads = Minibase.DiskManager.getReadCount();
+    int writes = Minibase.DiskManager.getWriteCount();
+    long start = System.nanoTime();
+    Thread[] threads = new Thread[NUM_THREADS];
+    for (int t = 0; t < threads.length; t++) {
+      final int id = t;
+      threads[t] = new Thread() {
+        public void run() {
+          Random random = new Random(74 + id);
+          Page page = new Page();
+          PageId pageno = new PageId();
+          for (int i = 0; i < pinsPerThread; i++) {
+            int n = random.nextInt(NUM_PAGES);
+            pageno.pid = first.pid + n;
+            boolean write = (random.nextInt(100) < WRITE_PERCENT);
+            Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO,
+                write ? LATCH_EXCLUSIVE : LATCH_SHARED);
+            if (page.getIntValue(0) != pageno.pid) {
+              bad.incrementAndGet();
+            }
+            if (write) {
+              page.setIntValue(page.getIntValue(4) + 1, 4);
+              changes[id][n]++;
+            }
+            Minibase.BufferManager.unpinPage(pageno, write,
+                write ? LATCH_EXCLUSIVE : LATCH_SHARED);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    boolean status = PASS;
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException exc) {
+      status = FAIL;
+    }
+    Minibase.BufferManager.flushAllFrames();
+    long elapsed = System.nanoTime() - start;
+    reads = Minibase.DiskManager.getReadCount() - reads;
+    writes = Minibase.DiskManager.getWriteCount() - writes;
+
+    // check every page and its count
+    for (pid.pid = first.pid; pid.pid < first.pid + NUM_PAGES; pid.pid++) {
+      int expect = 0;
+      for (int t = 0; t < NUM_THREADS; t++) {
+        expect += changes[t][pid.pid - first.pid];
+      }
+      Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      if ((pg.getIntValue(0) != pid.pid) || (pg.getIntValue(4) != expect)) {
+        bad.incrementAndGet();
+      }
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+    }
+    if (bad.get() > 0) {
+      status = FAIL;
+      System.err.print("*** " + bad.get() + " pages read back wrong\n");
+    }
+
+    long pins = (long) NUM_THREADS * pinsPerThread;
+    System.out.printf("  *** Time:            %d ms%n", elapsed / 1000000);
+    System.out.printf("  *** Pins per second: %.0f%n", pins * 1e9 / elapsed);
+    System.out.println("  *** Disk reads:      " + reads);
+    System.out.println("  *** Disk writes:     " + writes);
+    System.out.println("  *** " + Minibase.BufferManager.getStats());
+    Minibase.DiskManager.destroyDB();
+    return status;
+
+  } // protected boolean run(String mode, DiskMgr diskmgr)
+
+} // class DMBench extends TestDriver
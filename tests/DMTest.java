@@ -1,10 +1,20 @@
 package tests;
 
+import bufmgr.BufMgr;
+import diskmgr.AsyncIO;
+import diskmgr.DirectDiskMgr;
+import diskmgr.DiskMgr;
+import diskmgr.MappedDiskMgr;
 import global.Convert;
 import global.Minibase;
 import global.Page;
 import global.PageId;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Test suite for the diskmgr layer.
  */
@@ -32,6 +42,10 @@ class DMTest extends TestDriver {
     status &= dbt.test2();
     status &= dbt.test3();
     status &= dbt.test4();
+    status &= dbt.test5();
+    status &= dbt.test6();
+    status &= dbt.test7();
+    status &= dbt.test8();
 
     // display the final results
     System.out.println();
@@ -673,4 +687,377 @@ class DMTest extends TestDriver {
 
   } // protected boolean test4()
 
+  /**
+   * Reads and writes pages past 2 GB into the file.
+   */
+  protected boolean test5() {
+
+    System.out.print("\n  Test 5 reads and writes pages past 2 GB into"
+        + " the file:\n");
+
+    boolean status = PASS;
+
+    // a sparse file, so only the pages written take space
+    int firstBig = (int) ((1L << 31) / PAGE_SIZE);
+    System.out.print("  - Create a database of " + (firstBig + 16)
+        + " pages\n");
+    Minibase.DiskManager.closeDB();
+    DB_SIZE = firstBig + 16;
+    create_minibase();
+
+    System.out.print("  - Write pages on both sides of 2 GB, and read them"
+        + " back\n");
+    int[] pids = {firstBig - 1, firstBig, firstBig + 15};
+    Page page = new Page();
+    try {
+      for (int pid : pids) {
+        Convert.setIntValue(pid, 0, page.getData());
+        Convert.setIntValue(pid, PAGE_SIZE - 4, page.getData());
+        Minibase.DiskManager.write_page(new PageId(pid), page);
+      }
+      for (int pid : pids) {
+        Minibase.DiskManager.read_page(new PageId(pid), page);
+        if ((Convert.getIntValue(0, page.getData()) != pid)
+            || (Convert.getIntValue(PAGE_SIZE - 4, page.getData()) != pid)) {
+          status = FAIL;
+          System.err.print("*** Page " + pid + " did not read back\n");
+        }
+      }
+      Minibase.DiskManager.read_page(new PageId(firstBig - 2), page);
+      if (Convert.getIntValue(0, page.getData()) != 0) {
+        status = FAIL;
+        System.err.print("*** A page that was not written is not empty\n");
+      }
+    } catch (Exception e) {
+      status = FAIL;
+      System.err.print("*** Could not read or write past 2 GB\n");
+      e.printStackTrace();
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS) {
+      System.out.print("  Test 5 completed successfully.\n");
+    }
+
+    return status;
+
+  } // protected boolean test5()
+
+  /**
+   * Reads and writes pages through a mapped file.
+   */
+  protected boolean test6() {
+
+    System.out.print("\n  Test 6 reads and writes pages through a mapped"
+        + " file:\n");
+
+    // small segments, so that runs cross them
+    final int segpages = 64;
+    System.out.print("  - Create a database mapped in segments of "
+        + segpages + " pages\n");
+    DB_SIZE = 1000;
+    new Minibase(DB_PATH, DB_SIZE, new MappedDiskMgr(segpages * PAGE_SIZE),
+        new BufMgr(BUF_SIZE, BUF_REPLACER), false);
+
+    System.out.print("  - Write a run across a segment boundary, and read it"
+        + " back a page at a time\n");
+    boolean status = checkRun(new PageId(segpages - 4));
+
+    if (status == PASS) {
+      System.out.print("  Test 6 completed successfully.\n");
+    }
+
+    return status;
+
+  } // protected boolean test6()
+
+  /**
+   * Reads and writes pages with direct I/O.
+   */
+  protected boolean test7() {
+
+    System.out.print("\n  Test 7 reads and writes pages with direct I/O:\n");
+
+    if (!DirectDiskMgr.isSupported(new File(DB_PATH).getAbsoluteFile()
+        .getParentFile())) {
+      System.out.print("  - Direct I/O is not supported here; skipped\n");
+      return PASS;
+    }
+    System.out.print("  - Create a database with direct I/O\n");
+    DB_SIZE = 1000;
+    new Minibase(DB_PATH, DB_SIZE, new DirectDiskMgr(),
+        new BufMgr(BUF_SIZE, BUF_REPLACER), false);
+
+    // start and end mid-block, to update the blocks around the run
+    System.out.print("  - Write a run that starts and ends inside blocks, and"
+        + " read it back a page at a time\n");
+    boolean status = checkRun(new PageId(61));
+
+    if (status == PASS) {
+      System.out.print("  Test 7 completed successfully.\n");
+    }
+
+    return status;
+
+  } // protected boolean test7()
+
+  /**
+   * Reads and writes pages through the asynchronous I/O engine.
+   */
+  protected boolean test8() {
+
+    System.out.print("\n  Test 8 reads and writes pages asynchronously:\n");
+
+    System.out.print("  - Create a database with one I/O thread\n");
+    DB_SIZE = 1000;
+    final List<Integer> written = new ArrayList<Integer>();
+    DiskMgr recorder = new DiskMgr() {
+      // note the first pid of each write, in the order they are done
+      public void write_page(PageId pageno, Page mempage) {
+        synchronized (written) {
+          written.add(pageno.pid);
+        }
+        super.write_page(pageno, mempage);
+      }
+      public void write_pages(PageId firstid, Page[] mempages) {
+        synchronized (written) {
+          written.add(firstid.pid);
+        }
+        super.write_pages(firstid, mempages);
+      }
+    };
+    new Minibase(DB_PATH, DB_SIZE, recorder,
+        new BufMgr(BUF_SIZE, BUF_REPLACER), false);
+    Minibase.DiskManager.startAsyncIO(1, 16);
+    AsyncIO aio = Minibase.DiskManager.getAsyncIO();
+
+    boolean status = PASS;
+    try {
+
+      // a run submitted at once is one transfer
+      System.out.print("  - Write a run of 8 pages in one submission\n");
+      Page[] run = new Page[8];
+      for (int i = 0; i < run.length; i++) {
+        run[i] = new Page();
+        Convert.setIntValue(100 + i, 0, run[i].getData());
+      }
+      long transfers = aio.getTransfers();
+      CompletableFuture.allOf(aio.write(new PageId(100), run)
+          .toArray(new CompletableFuture<?>[0])).join();
+      if (aio.getTransfers() - transfers != 1) {
+        status = FAIL;
+        System.err.print("*** The run was not merged into one write\n");
+      }
+
+      // a run longer than MAX_MERGE is split, and the elevator goes on from
+      // the first page left over, before a page further on
+      System.out.print("  - Write a run longer than the merge limit, and a"
+          + " page past it\n");
+      Page[] longrun = new Page[AsyncIO.MAX_MERGE + 1];
+      for (int i = 0; i < longrun.length; i++) {
+        longrun[i] = new Page();
+      }
+      written.clear();
+      List<CompletableFuture<Page>> longdone =
+          aio.write(new PageId(300), longrun);
+      CompletableFuture<Page> past = aio.write(new PageId(500), new Page());
+      CompletableFuture.allOf(longdone.toArray(new CompletableFuture<?>[0]))
+          .join();
+      past.join();
+      int left = 300 + AsyncIO.MAX_MERGE;
+      synchronized (written) {
+        if (!written.contains(left)
+            || (written.indexOf(left) > written.indexOf(500))) {
+          status = FAIL;
+          System.err.print("*** The elevator skipped the rest of the run\n");
+        }
+      }
+
+      // single pages out of order, with two writes and a read of one pid
+      System.out.print("  - Write 16 pages out of order, then rewrite and"
+          + " read one\n");
+      List<CompletableFuture<Page>> done =
+          new ArrayList<CompletableFuture<Page>>();
+      for (int i = 0; i < 16; i++) {
+        int pid = 200 + (i * 7) % 16;
+        Page page = new Page();
+        Convert.setIntValue(pid, 0, page.getData());
+        done.add(aio.write(new PageId(pid), page));
+      }
+      Page rewrite = new Page();
+      Convert.setIntValue(-200, 0, rewrite.getData());
+      done.add(aio.write(new PageId(200), rewrite));
+      Page reread = new Page();
+      CompletableFuture<Page> read = aio.read(new PageId(200), reread);
+      CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+      if (Convert.getIntValue(0, read.join().getData()) != -200) {
+        status = FAIL;
+        System.err.print("*** The read did not see the writes before it\n");
+      }
+      Page[] back = new Page[16];
+      for (int i = 0; i < back.length; i++) {
+        back[i] = new Page();
+      }
+      List<CompletableFuture<Page>> reads = aio.read(new PageId(200), back);
+      CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]))
+          .join();
+      for (int i = 1; i < back.length; i++) {
+        if (Convert.getIntValue(0, reads.get(i).join().getData()) != 200 + i) {
+          status = FAIL;
+          System.err.print("*** Page " + (200 + i) + " did not read back\n");
+        }
+      }
+      if (aio.getOutstanding() != 0) {
+        status = FAIL;
+        System.err.print("*** Requests are still outstanding\n");
+      }
+
+      System.out.print("  - Submit a read past the end of the database\n");
+      try {
+        aio.read(new PageId(DB_SIZE), new Page());
+        status = FAIL;
+        System.err.print("*** The read was not refused\n");
+      } catch (IllegalArgumentException exc) {
+        System.out.print("   --> Failed as expected \n");
+      }
+
+      // the buffer manager's misses, prefetches and cleaner go through it
+      System.out.print("  - Write " + (BUF_SIZE * 3) + " pages through the"
+          + " buffer pool, with a cleaner, and prefetch half of them\n");
+      Minibase.BufferManager.startCleaner();
+      Page pg = new Page();
+      PageId first = Minibase.BufferManager.newPage(pg, BUF_SIZE * 3);
+      Minibase.BufferManager.unpinPage(first, UNPIN_CLEAN);
+      PageId pid = new PageId();
+      for (int i = 0; i < BUF_SIZE * 3; i++) {
+        pid.pid = first.pid + i;
+        Minibase.BufferManager.pinPage(pid, pg, PIN_NOOP);
+        Convert.setIntValue(pid.pid, 0, pg.getData());
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      PageId[] half = new PageId[BUF_SIZE / 2];
+      for (int i = 0; i < half.length; i++) {
+        half[i] = new PageId(first.pid + i * 2);
+      }
+      Minibase.BufferManager.prefetch(half);
+      for (int i = 0; i < BUF_SIZE * 3; i++) {
+        pid.pid = first.pid + i;
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        if (Convert.getIntValue(0, pg.getData()) != pid.pid) {
+          status = FAIL;
+          System.err.print("*** Page " + pid.pid + " read back wrong\n");
+        }
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+      Minibase.BufferManager.stopCleaner();
+      Minibase.BufferManager.flushAllFrames();
+      runStart = first;
+
+    } catch (Exception e) {
+      status = FAIL;
+      System.err.print("*** Could not read or write asynchronously\n");
+      e.printStackTrace();
+    }
+
+    System.out.print("  - Close the database, and reopen it without the"
+        + " engine\n");
+    Minibase.DiskManager.closeDB();
+    if (Minibase.DiskManager.getAsyncIO() != null) {
+      status = FAIL;
+      System.err.print("*** Closing did not stop the engine\n");
+    }
+    load_minibase();
+    try {
+      Page page = new Page();
+      for (int i = 0; i < BUF_SIZE * 3; i++) {
+        Minibase.DiskManager.read_page(new PageId(runStart.pid + i), page);
+        if (Convert.getIntValue(0, page.getData()) != runStart.pid + i) {
+          status = FAIL;
+          System.err.print("*** Page " + (runStart.pid + i)
+              + " was not written to the file\n");
+        }
+      }
+    } catch (Exception e) {
+      status = FAIL;
+      System.err.print("*** Could not read the file back\n");
+      e.printStackTrace();
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS) {
+      System.out.print("  Test 8 completed successfully.\n");
+    }
+
+    return status;
+
+  } // protected boolean test8()
+
+  /**
+   * Writes a run of pages and a file entry with the current disk manager,
+   * reads them back, and checks they reached the file by reopening it with
+   * a plain disk manager; then destroys the database.
+   */
+  protected boolean checkRun(PageId first) {
+
+    boolean status = PASS;
+    Page[] run = new Page[8];
+    PageId pgid = new PageId();
+    try {
+      for (int i = 0; i < run.length; i++) {
+        run[i] = new Page();
+        Convert.setIntValue(first.pid + i, 0, run[i].getData());
+        Convert.setIntValue(first.pid + i, PAGE_SIZE - 4, run[i].getData());
+      }
+      Minibase.DiskManager.write_pages(first, run);
+      Page page = new Page();
+      for (int i = -1; i <= run.length; i++) {
+        Minibase.DiskManager.read_page(new PageId(first.pid + i), page);
+        int expect = ((i >= 0) && (i < run.length)) ? first.pid + i : 0;
+        if ((Convert.getIntValue(0, page.getData()) != expect)
+            || (Convert.getIntValue(PAGE_SIZE - 4, page.getData())
+                != expect)) {
+          status = FAIL;
+          System.err.print("*** Page " + (first.pid + i)
+              + " did not read back\n");
+        }
+      }
+      pgid = Minibase.DiskManager.allocate_page();
+      Minibase.DiskManager.add_file_entry("checkrun", pgid);
+    } catch (Exception e) {
+      status = FAIL;
+      System.err.print("*** Could not read or write the file\n");
+      e.printStackTrace();
+    }
+
+    System.out.print("  - Close the database, and reopen it with plain I/O\n");
+    Minibase.DiskManager.closeDB();
+    load_minibase();
+    try {
+      Page[] back = new Page[run.length];
+      for (int i = 0; i < back.length; i++) {
+        back[i] = new Page();
+      }
+      Minibase.DiskManager.read_pages(first, back);
+      for (int i = 0; i < back.length; i++) {
+        if (Convert.getIntValue(0, back[i].getData()) != first.pid + i) {
+          status = FAIL;
+          System.err.print("*** Page " + (first.pid + i)
+              + " was not written to the file\n");
+        }
+      }
+      PageId entry = Minibase.DiskManager.get_file_entry("checkrun");
+      if ((entry == null) || (entry.pid != pgid.pid)) {
+        status = FAIL;
+        System.err.print("*** The file entry was not written to the file\n");
+      }
+    } catch (Exception e) {
+      status = FAIL;
+      System.err.print("*** Could not read the file back\n");
+      e.printStackTrace();
+    }
+    Minibase.DiskManager.destroyDB();
+    return status;
+
+  } // protected boolean checkRun(PageId first)
+
 } // class DMTest extends TestDriver
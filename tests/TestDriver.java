@@ -1,5 +1,6 @@
 package tests;
 
+import bufmgr.BufStats;
 import global.GlobalConst;
 import global.Minibase;
 
@@ -30,6 +31,9 @@ class TestDriver implements GlobalConst {
   /** Default buffer pool size (in pages) */
   protected int BUF_SIZE = 100;
 
+  /** Default buffer pool replacement policy. */
+  protected String BUF_REPLACER = "Clock";
+
   // --------------------------------------------------------------------------
 
   /** Random generator; use the same seed to make tests deterministic. */
@@ -50,6 +54,10 @@ class TestDriver implements GlobalConst {
 
     public int pinned;
 
+    public long hits;
+
+    public long misses;
+
   } // protected class CountData
 
   /**
@@ -72,7 +80,7 @@ class TestDriver implements GlobalConst {
    */
   protected void create_minibase() {
     System.out.println("Creating database...\n");
-    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false);
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, BUF_REPLACER, false);
   }
 
   /**
@@ -80,7 +88,7 @@ class TestDriver implements GlobalConst {
    */
   protected void load_minibase() {
     System.out.println("Loading database...\n" );
-    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, true);
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, BUF_REPLACER, true);
   }
 
   // --------------------------------------------------------------------------
@@ -115,6 +123,9 @@ class TestDriver implements GlobalConst {
     data.writes = Minibase.DiskManager.getWriteCount();
     data.allocs = Minibase.DiskManager.getAllocCount();
     data.pinned = BUF_SIZE - Minibase.BufferManager.getNumUnpinned();
+    BufStats stats = Minibase.BufferManager.getStats();
+    data.hits = stats.getHits();
+    data.misses = stats.getMisses();
 
   } // protected void saveCounts(String desc)
 
@@ -132,6 +143,11 @@ class TestDriver implements GlobalConst {
         + (Minibase.DiskManager.getWriteCount() - data.writes));
     System.out.println("  *** Net total pages:  "
         + (Minibase.DiskManager.getAllocCount() - data.allocs));
+    BufStats stats = Minibase.BufferManager.getStats();
+    long hits = stats.getHits() - data.hits;
+    long pins = hits + stats.getMisses() - data.misses;
+    System.out.println("  *** Buffer hit ratio: "
+        + ((pins == 0) ? "-" : String.format("%.3f", (double) hits / pins)));
     int numbufs = Minibase.BufferManager.getNumFrames();
     System.out
         .println("  *** Remaining Pinned: "